@@ -9,4 +9,14 @@ import java.util.List;
 public interface AStarGraph<Vertex> {
     List<WeightedEdge<Vertex>> neighbors(Vertex v);
     double estimatedDistanceToGoal(Vertex s, Vertex goal);
+
+    /**
+     * Calls VISITOR once for every outgoing edge of V. Graphs that can walk their
+     * edges in place should override this so that no list is built per call.
+     */
+    default void forEachNeighbor(Vertex v, EdgeVisitor<Vertex> visitor) {
+        for (WeightedEdge<Vertex> e : neighbors(v)) {
+            visitor.visit(e.from(), e.to(), e.weight());
+        }
+    }
 }
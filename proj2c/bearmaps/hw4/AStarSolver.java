@@ -1,7 +1,6 @@
 package bearmaps.hw4;
 
-import bearmaps.proj2ab.DoubleMapPQ;
-import bearmaps.proj2ab.ArrayHeapMinPQ;
+import bearmaps.proj2ab.DaryHeapMinPQ;
 import edu.princeton.cs.algs4.Stopwatch;
 
 import java.util.ArrayList;
@@ -11,6 +10,9 @@ import java.util.List;
 
 public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex>
 {
+    /** How many dequeues happen between two looks at the clock. */
+    public static final int TIMEOUT_CHECK_INTERVAL = 64;
+
     public SolverOutcome outcome;
     public double solutionWeight;
     public LinkedList<Vertex> solution;
@@ -18,47 +20,64 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex>
     public int numDequeOperation;
 
     public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout) {
+        this(input, start, end, timeout, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Searches for the shortest path from START to END, giving up with a TIMEOUT
+     * outcome once more than TIMEOUT seconds have passed or MAXSTATESEXPLORED
+     * vertices have been dequeued. The clock is only read every
+     * TIMEOUT_CHECK_INTERVAL dequeues, so a search may overrun its timeout by
+     * that many dequeues.
+     */
+    public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout,
+                       int maxStatesExplored) {
         Stopwatch sw = new Stopwatch();
+        long startNanos = System.nanoTime();
+        long timeoutNanos = (long) (timeout * 1e9);
+        boolean aborted = false;
         numDequeOperation = 0;
 
         LinkedList<Vertex> path = new LinkedList<>();
-        ArrayHeapMinPQ<Vertex> pq = new ArrayHeapMinPQ<>();
+        DaryHeapMinPQ<Vertex> pq = new DaryHeapMinPQ<>();
         pq.add(start, input.estimatedDistanceToGoal(start, end));
 
         Vertex smallest;
-        ArrayList<WeightedEdge<Vertex>> edge;
         HashMap<Vertex, Double> distTo = new HashMap<>(); // <to, distanceFromStartToCurrentVertex>
         HashMap<Vertex, Vertex> edgeTo = new HashMap<>(); // <to, from>
         distTo.put(start, 0.0);
 
-        while(pq.size() > 0 && !pq.getSmallest().equals(end)) {
-            smallest = pq.removeSmallest();
-            numDequeOperation += 1;
-            edge = (ArrayList<WeightedEdge<Vertex>>) input.neighbors(smallest);
-
-            // relax edge
-            for (WeightedEdge<Vertex> i: edge) {
+        // relax edge
+        EdgeVisitor<Vertex> relax = (p, q, w) -> {
+            double distToQ = distTo.get(p) + w;
+            Double oldDistToQ = distTo.get(q);
 
-                Vertex p = i.from();
-                Vertex q = i.to();
-                double w = i.weight();
+            if (oldDistToQ == null || distToQ < oldDistToQ) {
+                distTo.put(q, distToQ);
+                edgeTo.put(q, p);
 
-                if(!distTo.containsKey(q) || distTo.get(p) + w < distTo.get(q)){
-                    distTo.put(q, distTo.get(p) + w);
-
-                    if(pq.contains(q)) {
-                        edgeTo.replace(q, p);
-                        pq.changePriority(q, distTo.get(q) + input.estimatedDistanceToGoal(q, end));
-                    } else {
-                        edgeTo.put(q, p);
-                        pq.add(q, distTo.get(q) + input.estimatedDistanceToGoal(q, end));
-                    }
+                if (pq.contains(q)) {
+                    pq.changePriority(q, distToQ + input.estimatedDistanceToGoal(q, end));
+                } else {
+                    pq.add(q, distToQ + input.estimatedDistanceToGoal(q, end));
                 }
             }
+        };
+
+        while(pq.size() > 0 && !pq.getSmallest().equals(end)) {
+            if (numDequeOperation >= maxStatesExplored
+                    || (numDequeOperation % TIMEOUT_CHECK_INTERVAL == 0
+                        && System.nanoTime() - startNanos > timeoutNanos)) {
+                aborted = true;
+                break;
+            }
+            smallest = pq.removeSmallest();
+            numDequeOperation += 1;
+            input.forEachNeighbor(smallest, relax);
         }
         timeSpent = sw.elapsedTime();
 
-        if (timeSpent > timeout || pq.size() == 0) {
+        if (aborted || timeSpent > timeout || pq.size() == 0) {
             outcome = (pq.size() == 0) ? SolverOutcome.UNSOLVABLE : SolverOutcome.TIMEOUT;
             solutionWeight = 0;
             solution = new LinkedList<>();
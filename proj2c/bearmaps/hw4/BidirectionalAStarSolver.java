@@ -0,0 +1,178 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.DaryHeapMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Bidirectional A*: one search runs forward from the start and one runs backward
+ * from the goal until their frontiers meet. On long routes each search only has to
+ * cover about half the distance, so far fewer vertices get explored than with
+ * AStarSolver.
+ *
+ * The backward search walks neighbors() as well, so the graph must be symmetric
+ * (every edge u -> v has a twin v -> u with the same weight), which is true for
+ * StreetMapGraph. Both searches use the average potential
+ * p(v) = (h(v, end) - h(v, start)) / 2 forward and -p(v) backward, which keeps the
+ * two searches consistent with each other, and the solver stops once the two
+ * smallest priorities add up to at least the best path found so far.
+ */
+public class BidirectionalAStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
+    private SolverOutcome outcome;
+    private double solutionWeight;
+    private List<Vertex> solution;
+    private double timeSpent;
+    private int numDequeOperation;
+
+    /* one direction of the search */
+    private class Search {
+        final DaryHeapMinPQ<Vertex> pq = new DaryHeapMinPQ<>();
+        final HashMap<Vertex, Double> distTo = new HashMap<>();
+        final HashMap<Vertex, Vertex> edgeTo = new HashMap<>();
+        final HashMap<Vertex, Double> edgeWeight = new HashMap<>();  // weight of the edge to edgeTo
+        final int sign;  // +1 forward, -1 backward
+
+        Search(Vertex source, int sign) {
+            this.sign = sign;
+            distTo.put(source, 0.0);
+            pq.add(source, potential(source));
+        }
+
+        double potential(Vertex v) {
+            return sign * (graph.estimatedDistanceToGoal(v, end)
+                    - graph.estimatedDistanceToGoal(v, start)) / 2;
+        }
+    }
+
+    private final AStarGraph<Vertex> graph;
+    private final Vertex start;
+    private final Vertex end;
+    private Vertex meet;
+    private double best = Double.POSITIVE_INFINITY;
+
+    public BidirectionalAStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end,
+                                    double timeout) {
+        this(input, start, end, timeout, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Searches for the shortest path from START to END, giving up with a TIMEOUT
+     * outcome once more than TIMEOUT seconds have passed or MAXSTATESEXPLORED
+     * vertices have been dequeued by the two searches together.
+     */
+    public BidirectionalAStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end,
+                                    double timeout, int maxStatesExplored) {
+        Stopwatch sw = new Stopwatch();
+        long startNanos = System.nanoTime();
+        long timeoutNanos = (long) (timeout * 1e9);
+        boolean aborted = false;
+        this.graph = input;
+        this.start = start;
+        this.end = end;
+        numDequeOperation = 0;
+
+        Search forward = new Search(start, 1);
+        Search backward = new Search(end, -1);
+        if (start.equals(end)) {
+            meet = start;
+            best = 0;
+        }
+
+        while (forward.pq.size() > 0 && backward.pq.size() > 0
+                && forward.pq.smallestPriority() + backward.pq.smallestPriority() < best) {
+            if (numDequeOperation >= maxStatesExplored
+                    || (numDequeOperation % AStarSolver.TIMEOUT_CHECK_INTERVAL == 0
+                        && System.nanoTime() - startNanos > timeoutNanos)) {
+                aborted = true;
+                break;
+            }
+            if (forward.pq.smallestPriority() <= backward.pq.smallestPriority()) {
+                expand(forward, backward);
+            } else {
+                expand(backward, forward);
+            }
+            numDequeOperation += 1;
+        }
+        timeSpent = sw.elapsedTime();
+
+        if (aborted || timeSpent > timeout || meet == null) {
+            outcome = (meet == null && !aborted) ? SolverOutcome.UNSOLVABLE : SolverOutcome.TIMEOUT;
+            solutionWeight = 0;
+            solution = new ArrayList<>();
+            return;
+        }
+
+        LinkedList<Vertex> path = new LinkedList<>();
+        for (Vertex v = meet; v != null; v = forward.edgeTo.get(v)) {
+            path.addFirst(v);
+        }
+        // sum the second half edge by edge from the meeting point, so the total adds up
+        // in the same order as a one-directional search would
+        double weight = forward.distTo.get(meet);
+        for (Vertex v = meet; backward.edgeTo.get(v) != null; v = backward.edgeTo.get(v)) {
+            weight += backward.edgeWeight.get(v);
+            path.addLast(backward.edgeTo.get(v));
+        }
+        outcome = SolverOutcome.SOLVED;
+        solutionWeight = weight;
+        solution = path;
+    }
+
+    /** Settles the smallest vertex of SEARCH and relaxes its edges. */
+    private void expand(Search search, Search other) {
+        Vertex smallest = search.pq.removeSmallest();
+        double distToSmallest = search.distTo.get(smallest);
+        graph.forEachNeighbor(smallest, (p, q, w) -> {
+            double distToQ = distToSmallest + w;
+            Double oldDistToQ = search.distTo.get(q);
+            if (oldDistToQ == null || distToQ < oldDistToQ) {
+                search.distTo.put(q, distToQ);
+                search.edgeTo.put(q, p);
+                search.edgeWeight.put(q, w);
+                double priority = distToQ + search.potential(q);
+                if (search.pq.contains(q)) {
+                    search.pq.changePriority(q, priority);
+                } else {
+                    search.pq.add(q, priority);
+                }
+
+                Double otherDistToQ = other.distTo.get(q);
+                if (otherDistToQ != null && distToQ + otherDistToQ < best) {
+                    best = distToQ + otherDistToQ;
+                    meet = q;
+                }
+            }
+        });
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Vertex> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    /*** The total number of priority queue dequeue operations, in both directions. ***/
+    @Override
+    public int numStatesExplored() {
+        return numDequeOperation;
+    }
+
+    /*** The total time spent in seconds by the constructor. ***/
+    @Override
+    public double explorationTime() {
+        return timeSpent;
+    }
+}
@@ -0,0 +1,10 @@
+package bearmaps.hw4;
+
+/**
+ * Callback for visiting the outgoing edges of a vertex one at a time, without
+ * collecting them into a list first.
+ */
+@FunctionalInterface
+public interface EdgeVisitor<Vertex> {
+    void visit(Vertex from, Vertex to, double weight);
+}
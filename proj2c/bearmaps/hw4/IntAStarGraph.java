@@ -0,0 +1,26 @@
+package bearmaps.hw4;
+
+/**
+ * Represents a graph whose vertices are the ints 0 .. numVertices() - 1, so that
+ * solvers can keep per-vertex state in plain arrays.
+ */
+public interface IntAStarGraph {
+    int numVertices();
+    void forEachNeighbor(int v, IntEdgeVisitor visitor);
+    double estimatedDistanceToGoal(int s, int goal);
+
+    /**
+     * Returns a hash of the vertex count and every edge of G, for telling whether
+     * data precomputed for one graph still fits another.
+     */
+    static long fingerprint(IntAStarGraph g) {
+        long[] hash = {g.numVertices()};
+        for (int v = 0; v < g.numVertices(); v += 1) {
+            g.forEachNeighbor(v, (p, q, w) -> {
+                hash[0] = hash[0] * 31 + q;
+                hash[0] = hash[0] * 31 + Double.doubleToLongBits(w);
+            });
+        }
+        return hash[0];
+    }
+}
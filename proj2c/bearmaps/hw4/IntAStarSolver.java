@@ -0,0 +1,265 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.IndexedIntMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A* solver for IntAStarGraphs. Unlike AStarSolver, one instance is meant to answer
+ * many queries on the same graph: distTo and edgeTo are flat arrays allocated once,
+ * and instead of clearing them between queries every entry carries the number of
+ * the query that last wrote it, so entries from older queries read as unvisited.
+ *
+ * Not thread safe; use one instance per thread.
+ */
+public class IntAStarSolver implements ShortestPathsSolver<Integer> {
+    private final IntAStarGraph graph;
+    private final IndexedIntMinPQ pq;
+    private final double[] distTo;
+    private final int[] edgeTo;
+    private final int[] epochOf;    // distTo[v] and edgeTo[v] are only valid if epochOf[v] == epoch
+    private int epoch;
+    private final IntEdgeVisitor relax = this::relax;
+
+    /* state of the current query, read by relax(); ends is null for a query with one end */
+    private int end;
+    private int[] ends;
+    private double[] endDistances;
+
+    private SolverOutcome outcome;
+    private double solutionWeight;
+    private int[] solution;
+    private double timeSpent;
+    private int numDequeOperation;
+
+    public IntAStarSolver(IntAStarGraph graph) {
+        this.graph = graph;
+        int n = graph.numVertices();
+        pq = new IndexedIntMinPQ(n);
+        distTo = new double[n];
+        edgeTo = new int[n];
+        epochOf = new int[n];
+        epoch = 0;
+    }
+
+    public IntAStarSolver(IntAStarGraph graph, int start, int end, double timeout) {
+        this(graph);
+        solve(start, end, timeout);
+    }
+
+    /**
+     * Finds the shortest path from START to END, replacing the results of any
+     * previous query.
+     */
+    public void solve(int start, int end, double timeout) {
+        solve(start, end, timeout, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the shortest path from START to END like solve(start, end, timeout),
+     * but gives up with a TIMEOUT outcome as soon as more than TIMEOUT seconds have
+     * passed or MAXSTATESEXPLORED vertices have been dequeued. The clock is read
+     * every AStarSolver.TIMEOUT_CHECK_INTERVAL dequeues.
+     */
+    public void solve(int start, int end, double timeout, int maxStatesExplored) {
+        Stopwatch sw = new Stopwatch();
+        long startNanos = System.nanoTime();
+        long timeoutNanos = (long) (timeout * 1e9);
+        boolean aborted = false;
+        nextEpoch();
+        pq.clear();
+        numDequeOperation = 0;
+        this.end = end;
+        this.ends = null;
+
+        visit(start, 0.0, -1);
+        pq.add(start, graph.estimatedDistanceToGoal(start, end));
+
+        while (pq.size() > 0 && pq.getSmallest() != end) {
+            if (numDequeOperation >= maxStatesExplored
+                    || (numDequeOperation % AStarSolver.TIMEOUT_CHECK_INTERVAL == 0
+                        && System.nanoTime() - startNanos > timeoutNanos)) {
+                aborted = true;
+                break;
+            }
+            int smallest = pq.removeSmallest();
+            numDequeOperation += 1;
+            graph.forEachNeighbor(smallest, relax);
+        }
+        timeSpent = sw.elapsedTime();
+
+        if (aborted || timeSpent > timeout || pq.size() == 0) {
+            outcome = (pq.size() == 0) ? SolverOutcome.UNSOLVABLE : SolverOutcome.TIMEOUT;
+            solutionWeight = 0;
+            solution = new int[0];
+            return;
+        }
+
+        int length = 1;
+        for (int v = end; edgeTo[v] >= 0; v = edgeTo[v]) {
+            length += 1;
+        }
+        solution = new int[length];
+        for (int v = end; v >= 0; v = edgeTo[v]) {
+            length -= 1;
+            solution[length] = v;
+        }
+        outcome = SolverOutcome.SOLVED;
+        solutionWeight = distTo[end];
+    }
+
+    /**
+     * Finds the shortest path that starts at some STARTS[i], having already come
+     * STARTDISTANCES[i], and ends at some ENDS[j], with ENDDISTANCES[j] still to go.
+     * This is a search from a virtual vertex with an edge to each start to one with
+     * an edge from each end, such as a point in the middle of a road joined to the
+     * two intersections at either end of it. The heuristic is the least estimate to
+     * an end plus that end's distance, and the search stops once no vertex in the
+     * queue can beat the best end dequeued so far. The solution runs from a start to
+     * an end, and its weight includes the distances before and after them. Limits
+     * the search like solve(start, end, timeout, maxStatesExplored).
+     */
+    public void solve(int[] starts, double[] startDistances, int[] ends, double[] endDistances,
+                      double timeout, int maxStatesExplored) {
+        Stopwatch sw = new Stopwatch();
+        long startNanos = System.nanoTime();
+        long timeoutNanos = (long) (timeout * 1e9);
+        boolean aborted = false;
+        nextEpoch();
+        pq.clear();
+        numDequeOperation = 0;
+        this.ends = ends;
+        this.endDistances = endDistances;
+
+        for (int i = 0; i < starts.length; i += 1) {
+            int s = starts[i];
+            if (epochOf[s] != epoch || startDistances[i] < distTo[s]) {
+                visit(s, startDistances[i], -1);
+                double priority = startDistances[i] + estimate(s);
+                if (pq.contains(s)) {
+                    pq.changePriority(s, priority);
+                } else {
+                    pq.add(s, priority);
+                }
+            }
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        int bestEnd = -1;
+        while (pq.size() > 0 && pq.smallestPriority() < best) {
+            if (numDequeOperation >= maxStatesExplored
+                    || (numDequeOperation % AStarSolver.TIMEOUT_CHECK_INTERVAL == 0
+                        && System.nanoTime() - startNanos > timeoutNanos)) {
+                aborted = true;
+                break;
+            }
+            int smallest = pq.removeSmallest();
+            numDequeOperation += 1;
+            for (int j = 0; j < ends.length; j += 1) {
+                if (ends[j] == smallest && distTo[smallest] + endDistances[j] < best) {
+                    best = distTo[smallest] + endDistances[j];
+                    bestEnd = smallest;
+                }
+            }
+            graph.forEachNeighbor(smallest, relax);
+        }
+        timeSpent = sw.elapsedTime();
+
+        if (aborted || timeSpent > timeout || bestEnd < 0) {
+            outcome = (bestEnd < 0 && !aborted) ? SolverOutcome.UNSOLVABLE : SolverOutcome.TIMEOUT;
+            solutionWeight = 0;
+            solution = new int[0];
+            return;
+        }
+
+        int length = 1;
+        for (int v = bestEnd; edgeTo[v] >= 0; v = edgeTo[v]) {
+            length += 1;
+        }
+        solution = new int[length];
+        for (int v = bestEnd; v >= 0; v = edgeTo[v]) {
+            length -= 1;
+            solution[length] = v;
+        }
+        outcome = SolverOutcome.SOLVED;
+        solutionWeight = best;
+    }
+
+    /** Returns the heuristic estimate of the distance left from V to the goal. */
+    private double estimate(int v) {
+        if (ends == null) {
+            return graph.estimatedDistanceToGoal(v, end);
+        }
+        double estimate = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < ends.length; j += 1) {
+            estimate = Math.min(estimate, graph.estimatedDistanceToGoal(v, ends[j]) + endDistances[j]);
+        }
+        return estimate;
+    }
+
+    private void relax(int p, int q, double w) {
+        double distToQ = distTo[p] + w;
+        if (epochOf[q] != epoch || distToQ < distTo[q]) {
+            visit(q, distToQ, p);
+            double priority = distToQ + estimate(q);
+            if (pq.contains(q)) {
+                pq.changePriority(q, priority);
+            } else {
+                pq.add(q, priority);
+            }
+        }
+    }
+
+    private void visit(int v, double dist, int from) {
+        distTo[v] = dist;
+        edgeTo[v] = from;
+        epochOf[v] = epoch;
+    }
+
+    private void nextEpoch() {
+        epoch += 1;
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(epochOf, 0);
+            epoch = 1;
+        }
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Integer> solution() {
+        List<Integer> path = new ArrayList<>(solution.length);
+        for (int v : solution) {
+            path.add(v);
+        }
+        return path;
+    }
+
+    /** The vertices of the solution in order, without boxing. Empty if not SOLVED. */
+    public int[] solutionPath() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    /*** The total number of priority queue dequeue operations. ***/
+    @Override
+    public int numStatesExplored() {
+        return numDequeOperation;
+    }
+
+    /*** The total time spent in seconds by the last call to solve. ***/
+    @Override
+    public double explorationTime() {
+        return timeSpent;
+    }
+}
@@ -0,0 +1,9 @@
+package bearmaps.hw4;
+
+/**
+ * Callback for visiting the outgoing edges of a vertex in an IntAStarGraph.
+ */
+@FunctionalInterface
+public interface IntEdgeVisitor {
+    void visit(int from, int to, double weight);
+}
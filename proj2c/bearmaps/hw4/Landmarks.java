@@ -0,0 +1,232 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.IndexedIntMinPQ;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Precomputed shortest path distances from a few landmark vertices, used for ALT
+ * (A*, Landmarks, Triangle inequality) heuristics. For any landmark L and vertices
+ * V and GOAL, the triangle inequality gives d(V, GOAL) >= |d(L, GOAL) - d(L, V)|,
+ * so the largest of these differences is a lower bound on the road distance that
+ * usually beats the straight-line distance by a wide margin. The graph must be
+ * symmetric, so that distances from a landmark are also distances to it.
+ *
+ * Landmarks are picked with the farthest heuristic: the first is the vertex
+ * farthest from some vertex of the largest connected component, and each next one
+ * is the vertex whose distance to the closest landmark so far is the largest. The
+ * distances are kept as floats, vertex by vertex, so a lookup reads one short run
+ * of the table; lowerBound pays for the rounding by subtracting one float ulp.
+ */
+public class Landmarks {
+    private static final int MAGIC = 0x414c5431;  // "ALT1"
+
+    private final int numVertices;
+    private final int[] landmarks;
+    /** Distance from landmark l to vertex v is table[v * landmarks.length + l]. */
+    private final float[] table;
+
+    private Landmarks(int numVertices, int[] landmarks, float[] table) {
+        this.numVertices = numVertices;
+        this.landmarks = landmarks;
+        this.table = table;
+    }
+
+    /**
+     * Picks K landmarks in G and computes the distances from each of them to every
+     * vertex with one run of Dijkstra's algorithm per landmark.
+     */
+    public static Landmarks select(IntAStarGraph g, int k) {
+        int n = g.numVertices();
+        k = Math.min(k, n);
+        int[] landmarks = new int[k];
+        float[] table = new float[n * k];
+        double[] closest = new double[n];  // distance to the closest landmark so far
+        Arrays.fill(closest, Double.POSITIVE_INFINITY);
+        Dijkstra dijkstra = new Dijkstra(g);
+
+        int next = (k == 0) ? -1 : farthest(dijkstra.run(largestComponentVertex(g)));
+        for (int l = 0; l < k; l += 1) {
+            landmarks[l] = next;
+            double[] distTo = dijkstra.run(next);
+            for (int v = 0; v < n; v += 1) {
+                table[v * k + l] = (float) distTo[v];
+                closest[v] = Math.min(closest[v], distTo[v]);
+            }
+            next = farthest(closest);
+        }
+        return new Landmarks(n, landmarks, table);
+    }
+
+    /**
+     * Returns a lower bound on the length of the shortest path between the vertices
+     * at indices V and GOAL, or 0 if no landmark reaches both.
+     */
+    public double lowerBound(int v, int goal) {
+        int k = landmarks.length;
+        int vi = v * k;
+        int gi = goal * k;
+        double best = 0;
+        for (int l = 0; l < k; l += 1) {
+            float dv = table[vi + l];
+            float dg = table[gi + l];
+            if (dv == Float.POSITIVE_INFINITY || dg == Float.POSITIVE_INFINITY) {
+                continue;
+            }
+            double bound = Math.abs((double) dg - dv) - Math.ulp(Math.max(dv, dg));
+            if (bound > best) {
+                best = bound;
+            }
+        }
+        return best;
+    }
+
+    /** Returns the number of landmarks. */
+    public int numLandmarks() {
+        return landmarks.length;
+    }
+
+    /** Returns the vertex index of landmark I. */
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    /**
+     * Writes these landmarks and their distance tables to PATH, along with a
+     * fingerprint of G so that load can tell when the graph has changed.
+     */
+    public void save(String path, IntAStarGraph g) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(numVertices);
+            out.writeLong(IntAStarGraph.fingerprint(g));
+            out.writeInt(landmarks.length);
+            for (int l : landmarks) {
+                out.writeInt(l);
+            }
+            for (float d : table) {
+                out.writeFloat(d);
+            }
+        }
+    }
+
+    /**
+     * Reads landmarks written by save for the graph G. Throws an IOException if the
+     * file cannot be read or was written for a different graph.
+     */
+    public static Landmarks load(String path, IntAStarGraph g) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a landmarks file.");
+            }
+            int n = in.readInt();
+            if (n != g.numVertices() || in.readLong() != IntAStarGraph.fingerprint(g)) {
+                throw new IOException(path + " was computed for a different graph.");
+            }
+            int k = in.readInt();
+            int[] landmarks = new int[k];
+            for (int l = 0; l < k; l += 1) {
+                landmarks[l] = in.readInt();
+            }
+            float[] table = new float[n * k];
+            for (int i = 0; i < table.length; i += 1) {
+                table[i] = in.readFloat();
+            }
+            return new Landmarks(n, landmarks, table);
+        }
+    }
+
+    /** Returns the vertex with the largest finite DISTANCE, or -1 if there is none. */
+    private static int farthest(double[] distance) {
+        int best = -1;
+        for (int v = 0; v < distance.length; v += 1) {
+            if (distance[v] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            if (best < 0 || distance[v] > distance[best]) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    /** Returns a vertex of the connected component with the most vertices. */
+    private static int largestComponentVertex(IntAStarGraph g) {
+        int n = g.numVertices();
+        boolean[] marked = new boolean[n];
+        int[] queue = new int[n];
+        int best = 0;
+        int bestSize = 0;
+        for (int s = 0; s < n; s += 1) {
+            if (marked[s]) {
+                continue;
+            }
+            marked[s] = true;
+            queue[0] = s;
+            int[] tail = {1};
+            for (int head = 0; head < tail[0]; head += 1) {
+                g.forEachNeighbor(queue[head], (p, q, w) -> {
+                    if (!marked[q]) {
+                        marked[q] = true;
+                        queue[tail[0]] = q;
+                        tail[0] += 1;
+                    }
+                });
+            }
+            if (tail[0] > bestSize) {
+                best = s;
+                bestSize = tail[0];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Single source shortest paths. The priority queue is reused from one run to the
+     * next; each run returns a new distance array, which the caller keeps.
+     */
+    private static class Dijkstra implements IntEdgeVisitor {
+        private final IntAStarGraph g;
+        private final IndexedIntMinPQ pq;
+        private double[] distTo;
+
+        Dijkstra(IntAStarGraph g) {
+            this.g = g;
+            pq = new IndexedIntMinPQ(g.numVertices());
+        }
+
+        /** Returns the distance from SOURCE to every vertex, infinite if unreachable. */
+        double[] run(int source) {
+            distTo = new double[g.numVertices()];
+            Arrays.fill(distTo, Double.POSITIVE_INFINITY);
+            distTo[source] = 0;
+            pq.add(source, 0);
+            while (pq.size() > 0) {
+                g.forEachNeighbor(pq.removeSmallest(), this);
+            }
+            return distTo;
+        }
+
+        @Override
+        public void visit(int p, int q, double w) {
+            double distToQ = distTo[p] + w;
+            if (distToQ < distTo[q]) {
+                distTo[q] = distToQ;
+                if (pq.contains(q)) {
+                    pq.changePriority(q, distToQ);
+                } else {
+                    pq.add(q, distToQ);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package bearmaps.hw4.ch;
+
+import bearmaps.hw4.IntAStarGraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Contraction hierarchy of a symmetric IntAStarGraph: every vertex has a rank, the
+ * order in which it was contracted, and the hierarchy keeps only the upward edges,
+ * from each vertex to neighbors of higher rank at the time it was contracted. Some
+ * of these are shortcuts that stand for a two-edge path through a lower-ranked
+ * middle vertex. Every shortest path in the graph has an equally short version
+ * that first climbs and then descends in rank, so a query only needs two upward
+ * searches, one from each end; see ContractionHierarchySolver.
+ *
+ * The upward edges are stored in CSR form like CompactStreetMapGraph's edges: the
+ * upward edges of vertex v are the slots offsets[v] .. offsets[v + 1] - 1.
+ */
+public class ContractionHierarchy {
+    private static final int MAGIC = 0x43483031;  // "CH01"
+
+    private final int[] rank;
+    final int[] offsets;
+    final int[] targets;
+    final double[] weights;
+    /** Middle vertex of each shortcut, or -1 for edges of the original graph. */
+    final int[] middles;
+
+    /** Packs the upward edges that Contractor recorded for each vertex. */
+    ContractionHierarchy(int[] rank, int[][] upTo, double[][] upWeight, int[][] upMiddle) {
+        int n = rank.length;
+        this.rank = rank;
+        offsets = new int[n + 1];
+        for (int v = 0; v < n; v += 1) {
+            offsets[v + 1] = offsets[v] + upTo[v].length;
+        }
+        int m = offsets[n];
+        targets = new int[m];
+        weights = new double[m];
+        middles = new int[m];
+        for (int v = 0; v < n; v += 1) {
+            System.arraycopy(upTo[v], 0, targets, offsets[v], upTo[v].length);
+            System.arraycopy(upWeight[v], 0, weights, offsets[v], upTo[v].length);
+            System.arraycopy(upMiddle[v], 0, middles, offsets[v], upTo[v].length);
+        }
+    }
+
+    private ContractionHierarchy(int[] rank, int[] offsets, int[] targets, double[] weights,
+                                 int[] middles) {
+        this.rank = rank;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.middles = middles;
+    }
+
+    /**
+     * Contracts every vertex of G, which must be symmetric. The initial vertex
+     * order is computed in parallel on the common fork/join pool.
+     */
+    public static ContractionHierarchy build(IntAStarGraph g) {
+        return new Contractor(g).contract();
+    }
+
+    /** Returns the number of vertices in the hierarchy. */
+    public int numVertices() {
+        return rank.length;
+    }
+
+    /** Returns the number of upward edges, shortcuts included. */
+    public int numEdges() {
+        return targets.length;
+    }
+
+    /** Returns the number of upward edges that are shortcuts. */
+    public int numShortcuts() {
+        int count = 0;
+        for (int middle : middles) {
+            if (middle >= 0) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the position of V in the contraction order. */
+    public int rank(int v) {
+        return rank[v];
+    }
+
+    /** Returns the slot of the upward edge between U and W, or -1 if there is none. */
+    int edgeBetween(int u, int w) {
+        int low = rank[u] < rank[w] ? u : w;
+        int high = low == u ? w : u;
+        for (int e = offsets[low]; e < offsets[low + 1]; e += 1) {
+            if (targets[e] == high) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes this hierarchy to PATH, along with a fingerprint of G so that load can
+     * tell when the graph has changed.
+     */
+    public void save(String path, IntAStarGraph g) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(rank.length);
+            out.writeLong(IntAStarGraph.fingerprint(g));
+            out.writeInt(targets.length);
+            for (int r : rank) {
+                out.writeInt(r);
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            for (int e = 0; e < targets.length; e += 1) {
+                out.writeInt(targets[e]);
+                out.writeDouble(weights[e]);
+                out.writeInt(middles[e]);
+            }
+        }
+    }
+
+    /**
+     * Reads a hierarchy written by save for the graph G. Throws an IOException if
+     * the file cannot be read or was written for a different graph.
+     */
+    public static ContractionHierarchy load(String path, IntAStarGraph g) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a contraction hierarchy file.");
+            }
+            int n = in.readInt();
+            if (n != g.numVertices() || in.readLong() != IntAStarGraph.fingerprint(g)) {
+                throw new IOException(path + " was computed for a different graph.");
+            }
+            int m = in.readInt();
+            int[] rank = new int[n];
+            for (int v = 0; v < n; v += 1) {
+                rank[v] = in.readInt();
+            }
+            int[] offsets = new int[n + 1];
+            for (int v = 0; v <= n; v += 1) {
+                offsets[v] = in.readInt();
+            }
+            int[] targets = new int[m];
+            double[] weights = new double[m];
+            int[] middles = new int[m];
+            for (int e = 0; e < m; e += 1) {
+                targets[e] = in.readInt();
+                weights[e] = in.readDouble();
+                middles[e] = in.readInt();
+            }
+            return new ContractionHierarchy(rank, offsets, targets, weights, middles);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package bearmaps.hw4.ch;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.proj2ab.IndexedIntMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Answers shortest path queries on a ContractionHierarchy with two Dijkstra
+ * searches that only follow upward edges, one from the start and one from the
+ * end, and joins them at the vertex where their distances add up to the least.
+ * Each side stops once its smallest distance reaches the best total found so far,
+ * and skips the edges of vertices it reached by a detour (stall-on-demand).
+ * The shortcuts on the joined path are then unpacked into the original vertices,
+ * and the solution weight is summed over the original edges in path order, like
+ * AStarSolver sums it.
+ *
+ * Like IntAStarSolver, one instance answers many queries and keeps its per-vertex
+ * state in arrays that are invalidated by bumping a query number. Not thread safe;
+ * use one instance per thread.
+ */
+public class ContractionHierarchySolver implements ShortestPathsSolver<Integer> {
+    private static final int FORWARD = 0;
+    private static final int BACKWARD = 1;
+
+    private final ContractionHierarchy ch;
+    private final IndexedIntMinPQ[] pq = new IndexedIntMinPQ[2];
+    private final double[][] distTo = new double[2][];
+    private final int[][] edgeTo = new int[2][];
+    private final int[][] epochOf = new int[2][];
+    private int epoch;
+
+    /* the path being unpacked */
+    private int[] path = new int[16];
+    private int pathLength;
+    private double pathWeight;
+
+    private SolverOutcome outcome;
+    private double solutionWeight;
+    private int[] solution;
+    private double timeSpent;
+    private int numDequeOperation;
+
+    public ContractionHierarchySolver(ContractionHierarchy ch) {
+        this.ch = ch;
+        int n = ch.numVertices();
+        for (int side = FORWARD; side <= BACKWARD; side += 1) {
+            pq[side] = new IndexedIntMinPQ(n);
+            distTo[side] = new double[n];
+            edgeTo[side] = new int[n];
+            epochOf[side] = new int[n];
+        }
+        epoch = 0;
+    }
+
+    /**
+     * Finds the shortest path from START to END, replacing the results of any
+     * previous query.
+     */
+    public void solve(int start, int end, double timeout) {
+        solve(start, end, timeout, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the shortest path from START to END like solve(start, end, timeout),
+     * but gives up with a TIMEOUT outcome once more than TIMEOUT seconds have passed
+     * or MAXSTATESEXPLORED vertices have been dequeued by the two searches together.
+     */
+    public void solve(int start, int end, double timeout, int maxStatesExplored) {
+        solve(new int[]{start}, new double[]{0.0}, new int[]{end}, new double[]{0.0},
+                timeout, maxStatesExplored);
+    }
+
+    /**
+     * Finds the shortest path that starts at some STARTS[i], having already come
+     * STARTDISTANCES[i], and ends at some ENDS[j], with ENDDISTANCES[j] still to go,
+     * as if searching between two virtual vertices joined to the starts and the ends.
+     * Each side's search begins from all of its vertices at their distances. The
+     * solution runs from a start to an end, and its weight includes the distances
+     * before and after them. Limits the search like
+     * solve(start, end, timeout, maxStatesExplored).
+     */
+    public void solve(int[] starts, double[] startDistances, int[] ends, double[] endDistances,
+                      double timeout, int maxStatesExplored) {
+        Stopwatch sw = new Stopwatch();
+        long startNanos = System.nanoTime();
+        long timeoutNanos = (long) (timeout * 1e9);
+        boolean aborted = false;
+        nextEpoch();
+        numDequeOperation = 0;
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+
+        for (int side = FORWARD; side <= BACKWARD; side += 1) {
+            pq[side].clear();
+            int[] sources = side == FORWARD ? starts : ends;
+            double[] distances = side == FORWARD ? startDistances : endDistances;
+            for (int i = 0; i < sources.length; i += 1) {
+                int source = sources[i];
+                if (epochOf[side][source] == epoch && distTo[side][source] <= distances[i]) {
+                    continue;
+                }
+                visit(side, source, distances[i], -1);
+                if (pq[side].contains(source)) {
+                    pq[side].changePriority(source, distances[i]);
+                } else {
+                    pq[side].add(source, distances[i]);
+                }
+            }
+        }
+
+        while (pq[FORWARD].size() > 0 || pq[BACKWARD].size() > 0) {
+            if (numDequeOperation >= maxStatesExplored
+                    || (numDequeOperation % AStarSolver.TIMEOUT_CHECK_INTERVAL == 0
+                        && System.nanoTime() - startNanos > timeoutNanos)) {
+                aborted = true;
+                break;
+            }
+            int side = (pq[BACKWARD].size() == 0 || (pq[FORWARD].size() > 0
+                    && pq[FORWARD].smallestPriority() <= pq[BACKWARD].smallestPriority()))
+                    ? FORWARD : BACKWARD;
+            if (pq[side].smallestPriority() >= best) {
+                pq[side].clear();
+                continue;
+            }
+            int v = pq[side].removeSmallest();
+            numDequeOperation += 1;
+            int other = 1 - side;
+            if (epochOf[other][v] == epoch && distTo[side][v] + distTo[other][v] < best) {
+                best = distTo[side][v] + distTo[other][v];
+                meet = v;
+            }
+            if (!stalled(side, v)) {
+                for (int e = ch.offsets[v]; e < ch.offsets[v + 1]; e += 1) {
+                    relax(side, v, ch.targets[e], ch.weights[e]);
+                }
+            }
+        }
+        timeSpent = sw.elapsedTime();
+
+        if (aborted || timeSpent > timeout || meet < 0) {
+            outcome = (meet < 0 && !aborted) ? SolverOutcome.UNSOLVABLE : SolverOutcome.TIMEOUT;
+            solutionWeight = 0;
+            solution = new int[0];
+            return;
+        }
+
+        pathLength = 0;
+        pathWeight = 0;
+        int[] upward = chain(FORWARD, meet);
+        append(upward[upward.length - 1]);
+        for (int i = upward.length - 1; i > 0; i -= 1) {
+            unpack(upward[i], upward[i - 1]);
+        }
+        int[] downward = chain(BACKWARD, meet);
+        for (int i = 0; i + 1 < downward.length; i += 1) {
+            unpack(downward[i], downward[i + 1]);
+        }
+        outcome = SolverOutcome.SOLVED;
+        solutionWeight = distTo[FORWARD][upward[upward.length - 1]] + pathWeight
+                + distTo[BACKWARD][downward[downward.length - 1]];
+        solution = Arrays.copyOf(path, pathLength);
+    }
+
+    private void relax(int side, int p, int q, double w) {
+        double distToQ = distTo[side][p] + w;
+        if (epochOf[side][q] != epoch || distToQ < distTo[side][q]) {
+            visit(side, q, distToQ, p);
+            if (pq[side].contains(q)) {
+                pq[side].changePriority(q, distToQ);
+            } else {
+                pq[side].add(q, distToQ);
+            }
+        }
+    }
+
+    /**
+     * Returns true if SIDE's search reached some higher-ranked neighbor of V by a
+     * path that continues down to V shorter than distTo[SIDE][V]. Then V's distance
+     * is not a shortest one and V cannot be on the shortest path, so its edges need
+     * not be relaxed ("stall-on-demand").
+     */
+    private boolean stalled(int side, int v) {
+        for (int e = ch.offsets[v]; e < ch.offsets[v + 1]; e += 1) {
+            int u = ch.targets[e];
+            if (epochOf[side][u] == epoch && distTo[side][u] + ch.weights[e] < distTo[side][v]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void visit(int side, int v, double dist, int from) {
+        distTo[side][v] = dist;
+        edgeTo[side][v] = from;
+        epochOf[side][v] = epoch;
+    }
+
+    /** Returns V and the vertices SIDE's search reached it through, back to its source. */
+    private int[] chain(int side, int v) {
+        int length = 1;
+        for (int u = v; edgeTo[side][u] >= 0; u = edgeTo[side][u]) {
+            length += 1;
+        }
+        int[] vertices = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            vertices[i] = v;
+            v = edgeTo[side][v];
+        }
+        return vertices;
+    }
+
+    /** Appends the original vertices after FROM on the edge FROM - TO to the path. */
+    private void unpack(int from, int to) {
+        int e = ch.edgeBetween(from, to);
+        int middle = ch.middles[e];
+        if (middle < 0) {
+            pathWeight += ch.weights[e];
+            append(to);
+        } else {
+            unpack(from, middle);
+            unpack(middle, to);
+        }
+    }
+
+    private void append(int v) {
+        if (pathLength == path.length) {
+            path = Arrays.copyOf(path, pathLength * 2);
+        }
+        path[pathLength] = v;
+        pathLength += 1;
+    }
+
+    private void nextEpoch() {
+        epoch += 1;
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(epochOf[FORWARD], 0);
+            Arrays.fill(epochOf[BACKWARD], 0);
+            epoch = 1;
+        }
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Integer> solution() {
+        List<Integer> vertices = new ArrayList<>(solution.length);
+        for (int v : solution) {
+            vertices.add(v);
+        }
+        return vertices;
+    }
+
+    /** The vertices of the solution in order, without boxing. Empty if not SOLVED. */
+    public int[] solutionPath() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    /*** The total number of priority queue dequeue operations, in both directions. ***/
+    @Override
+    public int numStatesExplored() {
+        return numDequeOperation;
+    }
+
+    /*** The total time spent in seconds by the last call to solve. ***/
+    @Override
+    public double explorationTime() {
+        return timeSpent;
+    }
+}
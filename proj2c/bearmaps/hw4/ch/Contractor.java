@@ -0,0 +1,220 @@
+package bearmaps.hw4.ch;
+
+import bearmaps.hw4.IntAStarGraph;
+import bearmaps.proj2ab.IndexedIntMinPQ;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a ContractionHierarchy by contracting the vertices of a graph one at a
+ * time. Contracting V removes it from the remaining graph and, for each pair of
+ * its neighbors U and W whose only shortest connection runs through V, adds a
+ * shortcut U - W whose middle vertex is V. Whether a pair needs a shortcut is
+ * decided by a witness search from U that avoids V.
+ *
+ * Vertices are contracted in order of their importance: twice the edge difference
+ * (the shortcuts contracting a vertex would add minus the edges it would remove),
+ * plus the number of its neighbors that are already contracted and its level in
+ * the hierarchy so far, which both spread the contractions out evenly over the
+ * map and keep the hierarchy shallow. Importances go stale as the graph
+ * changes, so they are refreshed lazily: the least important vertex is only
+ * contracted if its recomputed importance is still the smallest, and the
+ * neighbors of each contracted vertex are recomputed right away. The initial
+ * importances only read the graph, so they are computed in parallel.
+ *
+ * The graph must be symmetric, and the remaining graph is kept undirected: every
+ * edge is stored in the lists of both of its endpoints.
+ */
+class Contractor {
+    private static final int INITIAL_DEGREE = 4;
+    /* witness searches settle at most this many vertices when estimating importance... */
+    private static final int ESTIMATE_SETTLED = 20;
+    /* ...and this many when deciding which shortcuts to add */
+    private static final int CONTRACT_SETTLED = 200;
+
+    private final int n;
+    /* the remaining graph: the edges from each vertex to its uncontracted neighbors */
+    final int[][] adjTo;
+    final double[][] adjWeight;
+    final int[][] adjMiddle;   // middle vertex of each shortcut, or -1 for original edges
+    final int[] degree;
+
+    private final int[] contractedNeighbors;
+    private final int[] level;  // 1 + the highest level of a contracted neighbor
+    private final ThreadLocal<WitnessSearch> witnessSearches;
+
+    /* shortcuts found by the last call to shortcuts(v, witness, true) */
+    private int[] shortcutFrom = new int[16];
+    private int[] shortcutTo = new int[16];
+    private double[] shortcutWeight = new double[16];
+    private int numShortcuts;
+
+    Contractor(IntAStarGraph g) {
+        n = g.numVertices();
+        adjTo = new int[n][];
+        adjWeight = new double[n][];
+        adjMiddle = new int[n][];
+        degree = new int[n];
+        contractedNeighbors = new int[n];
+        level = new int[n];
+        for (int v = 0; v < n; v += 1) {
+            adjTo[v] = new int[INITIAL_DEGREE];
+            adjWeight[v] = new double[INITIAL_DEGREE];
+            adjMiddle[v] = new int[INITIAL_DEGREE];
+        }
+        for (int v = 0; v < n; v += 1) {
+            g.forEachNeighbor(v, (p, q, w) -> {
+                if (p != q) {
+                    addOrLower(p, q, w, -1);
+                }
+            });
+        }
+        witnessSearches = ThreadLocal.withInitial(() -> new WitnessSearch(this));
+    }
+
+    int numVertices() {
+        return n;
+    }
+
+    /** Contracts every vertex and returns the resulting hierarchy. */
+    ContractionHierarchy contract() {
+        double[] importance = new double[n];
+        IntStream.range(0, n).parallel().forEach(v ->
+                importance[v] = importance(v, witnessSearches.get()));
+        IndexedIntMinPQ pq = new IndexedIntMinPQ(n);
+        for (int v = 0; v < n; v += 1) {
+            pq.add(v, importance[v]);
+        }
+
+        WitnessSearch witness = witnessSearches.get();
+        int[] rank = new int[n];
+        int[][] upTo = new int[n][];
+        double[][] upWeight = new double[n][];
+        int[][] upMiddle = new int[n][];
+        int nextRank = 0;
+        while (pq.size() > 0) {
+            int v = pq.removeSmallest();
+            double current = importance(v, witness);
+            if (pq.size() > 0 && current > pq.smallestPriority()) {
+                pq.add(v, current);
+                continue;
+            }
+
+            shortcuts(v, witness, true);
+            rank[v] = nextRank;
+            nextRank += 1;
+            upTo[v] = Arrays.copyOf(adjTo[v], degree[v]);
+            upWeight[v] = Arrays.copyOf(adjWeight[v], degree[v]);
+            upMiddle[v] = Arrays.copyOf(adjMiddle[v], degree[v]);
+            for (int u : upTo[v]) {
+                remove(u, v);
+                contractedNeighbors[u] += 1;
+                level[u] = Math.max(level[u], level[v] + 1);
+            }
+            for (int i = 0; i < numShortcuts; i += 1) {
+                addOrLower(shortcutFrom[i], shortcutTo[i], shortcutWeight[i], v);
+                addOrLower(shortcutTo[i], shortcutFrom[i], shortcutWeight[i], v);
+            }
+            adjTo[v] = null;
+            adjWeight[v] = null;
+            adjMiddle[v] = null;
+            degree[v] = 0;
+            for (int u : upTo[v]) {
+                pq.changePriority(u, importance(u, witness));
+            }
+        }
+        return new ContractionHierarchy(rank, upTo, upWeight, upMiddle);
+    }
+
+    /** Returns how important V is to keep uncontracted; less important goes first. */
+    private double importance(int v, WitnessSearch witness) {
+        int edgeDifference = shortcuts(v, witness, false) - degree[v];
+        return 2 * edgeDifference + contractedNeighbors[v] + level[v];
+    }
+
+    /**
+     * Returns the number of shortcuts contracting V would add, and if RECORD is true,
+     * keeps them in the shortcut arrays. Only reads the graph when RECORD is false.
+     */
+    private int shortcuts(int v, WitnessSearch witness, boolean record) {
+        if (record) {
+            numShortcuts = 0;
+        }
+        int count = 0;
+        int[] to = adjTo[v];
+        double[] weight = adjWeight[v];
+        int d = degree[v];
+        for (int i = 0; i + 1 < d; i += 1) {
+            double farthest = 0;
+            for (int j = i + 1; j < d; j += 1) {
+                farthest = Math.max(farthest, weight[j]);
+            }
+            witness.run(to[i], v, weight[i] + farthest,
+                    record ? CONTRACT_SETTLED : ESTIMATE_SETTLED);
+            for (int j = i + 1; j < d; j += 1) {
+                double via = weight[i] + weight[j];
+                if (witness.distance(to[j]) > via) {
+                    if (record) {
+                        recordShortcut(to[i], to[j], via);
+                    }
+                    count += 1;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void recordShortcut(int from, int to, double weight) {
+        int i = numShortcuts;
+        if (i == shortcutFrom.length) {
+            shortcutFrom = Arrays.copyOf(shortcutFrom, i * 2);
+            shortcutTo = Arrays.copyOf(shortcutTo, i * 2);
+            shortcutWeight = Arrays.copyOf(shortcutWeight, i * 2);
+        }
+        shortcutFrom[i] = from;
+        shortcutTo[i] = to;
+        shortcutWeight[i] = weight;
+        numShortcuts += 1;
+    }
+
+    /**
+     * Adds the edge U -> X, or if there already is one, lowers its weight to WEIGHT
+     * when that is shorter.
+     */
+    private void addOrLower(int u, int x, double weight, int middle) {
+        for (int i = 0; i < degree[u]; i += 1) {
+            if (adjTo[u][i] == x) {
+                if (weight < adjWeight[u][i]) {
+                    adjWeight[u][i] = weight;
+                    adjMiddle[u][i] = middle;
+                }
+                return;
+            }
+        }
+        int i = degree[u];
+        if (i == adjTo[u].length) {
+            adjTo[u] = Arrays.copyOf(adjTo[u], i * 2);
+            adjWeight[u] = Arrays.copyOf(adjWeight[u], i * 2);
+            adjMiddle[u] = Arrays.copyOf(adjMiddle[u], i * 2);
+        }
+        adjTo[u][i] = x;
+        adjWeight[u][i] = weight;
+        adjMiddle[u][i] = middle;
+        degree[u] += 1;
+    }
+
+    /** Removes the edge U -> X by moving U's last edge into its slot. */
+    private void remove(int u, int x) {
+        for (int i = 0; i < degree[u]; i += 1) {
+            if (adjTo[u][i] == x) {
+                int last = degree[u] - 1;
+                adjTo[u][i] = adjTo[u][last];
+                adjWeight[u][i] = adjWeight[u][last];
+                adjMiddle[u][i] = adjMiddle[u][last];
+                degree[u] = last;
+                return;
+            }
+        }
+    }
+}
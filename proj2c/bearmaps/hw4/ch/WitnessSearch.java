@@ -0,0 +1,79 @@
+package bearmaps.hw4.ch;
+
+import bearmaps.proj2ab.IndexedIntMinPQ;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra search on the remaining graph of a Contractor that looks for a path
+ * around the vertex being contracted. It gives up after settling a given number
+ * of vertices, so it may miss a witness and cause an unneeded shortcut, which is
+ * harmless, but it never reports a witness that does not exist.
+ *
+ * Not thread safe; use one instance per thread.
+ */
+class WitnessSearch {
+
+    private final Contractor graph;
+    private final IndexedIntMinPQ pq;
+    private final double[] distTo;
+    private final int[] epochOf;  // distTo[v] is only valid if epochOf[v] == epoch
+    private int epoch;
+
+    WitnessSearch(Contractor graph) {
+        this.graph = graph;
+        int n = graph.numVertices();
+        pq = new IndexedIntMinPQ(n);
+        distTo = new double[n];
+        epochOf = new int[n];
+        epoch = 0;
+    }
+
+    /**
+     * Finds distances from SOURCE without passing through SKIP, stopping once every
+     * vertex closer than LIMIT or MAXSETTLED vertices have been settled.
+     */
+    void run(int source, int skip, double limit, int maxSettled) {
+        epoch += 1;
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(epochOf, 0);
+            epoch = 1;
+        }
+        pq.clear();
+        distTo[source] = 0;
+        epochOf[source] = epoch;
+        pq.add(source, 0);
+
+        int settled = 0;
+        while (pq.size() > 0 && settled < maxSettled && pq.smallestPriority() <= limit) {
+            int u = pq.removeSmallest();
+            settled += 1;
+            int[] to = graph.adjTo[u];
+            double[] weight = graph.adjWeight[u];
+            for (int i = 0; i < graph.degree[u]; i += 1) {
+                int x = to[i];
+                if (x == skip) {
+                    continue;
+                }
+                double distToX = distTo[u] + weight[i];
+                if (epochOf[x] != epoch || distToX < distTo[x]) {
+                    distTo[x] = distToX;
+                    epochOf[x] = epoch;
+                    if (pq.contains(x)) {
+                        pq.changePriority(x, distToX);
+                    } else {
+                        pq.add(x, distToX);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the length of some path from the last source to V that avoids the
+     * skipped vertex, or infinity if the last run found none.
+     */
+    double distance(int v) {
+        return epochOf[v] == epoch ? distTo[v] : Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,292 @@
+package bearmaps.hw4.streetmap;
+
+import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.EdgeVisitor;
+import bearmaps.hw4.IntAStarGraph;
+import bearmaps.hw4.IntEdgeVisitor;
+import bearmaps.hw4.Landmarks;
+import bearmaps.hw4.WeightedEdge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, array-backed version of a StreetMapGraph. OSM ids are remapped to
+ * dense indices 0 .. numVertices() - 1 (in increasing id order), and the adjacency
+ * lists are packed in compressed sparse row (CSR) form: the outgoing edges of the
+ * vertex at index i are the slots offsets[i] .. offsets[i + 1] - 1 of the targets,
+ * weights and edge name arrays.
+ *
+ * Compared to the HashMap/HashSet representation in StreetMapGraph, no Long,
+ * Node or WeightedEdge objects are kept around, and the edges of a vertex sit
+ * next to each other in memory.
+ *
+ * The graph can be searched either by OSM id, as an AStarGraph, or by index, as an
+ * IntAStarGraph. Its heuristic is the great-circle distance, or, on a copy made by
+ * withLandmarks, the larger of that and the landmark lower bound.
+ */
+public class CompactStreetMapGraph implements AStarGraph<Long>, IntAStarGraph {
+    /** OSM id of each vertex, sorted so ids can be mapped back with a binary search. */
+    final long[] ids;
+    final double[] lats;
+    final double[] lons;
+    /** Name of each vertex, or null if the vertex has none. */
+    final String[] names;
+
+    /** Edges of vertex i are in [offsets[i], offsets[i + 1]). Has numVertices() + 1 entries. */
+    final int[] offsets;
+    final int[] targets;
+    final double[] weights;
+    /** Index into wayNames of the way each edge belongs to. */
+    final int[] edgeNames;
+    final String[] wayNames;
+
+    /** Landmark distances that sharpen the heuristic, or null to use only great circles. */
+    private final Landmarks landmarks;
+
+    /**
+     * Packs the given vertices and adjacency sets. Edges keep the iteration order of
+     * their adjacency set, so solvers break ties the same way on both graphs.
+     */
+    CompactStreetMapGraph(Map<Long, Node> nodes, Map<Long, Set<WeightedEdge<Long>>> neighbors) {
+        int n = nodes.size();
+        ids = new long[n];
+        int i = 0;
+        for (long id : nodes.keySet()) {
+            ids[i] = id;
+            i += 1;
+        }
+        Arrays.sort(ids);
+
+        lats = new double[n];
+        lons = new double[n];
+        names = new String[n];
+        offsets = new int[n + 1];
+        for (i = 0; i < n; i += 1) {
+            Node node = nodes.get(ids[i]);
+            lats[i] = node.lat();
+            lons[i] = node.lon();
+            names[i] = node.name();
+            offsets[i + 1] = offsets[i] + neighbors.get(ids[i]).size();
+        }
+
+        int m = offsets[n];
+        targets = new int[m];
+        weights = new double[m];
+        edgeNames = new int[m];
+        Map<String, Integer> wayNameIndex = new HashMap<>();
+        List<String> wayNameList = new ArrayList<>();
+        for (i = 0; i < n; i += 1) {
+            int e = offsets[i];
+            for (WeightedEdge<Long> edge : neighbors.get(ids[i])) {
+                targets[e] = index(edge.to());
+                weights[e] = edge.weight();
+                Integer nameIndex = wayNameIndex.get(edge.getName());
+                if (nameIndex == null) {
+                    nameIndex = wayNameList.size();
+                    wayNameIndex.put(edge.getName(), nameIndex);
+                    wayNameList.add(edge.getName());
+                }
+                edgeNames[e] = nameIndex;
+                e += 1;
+            }
+        }
+        wayNames = wayNameList.toArray(new String[0]);
+        landmarks = null;
+    }
+
+    /**
+     * Takes the given arrays, laid out as described above, as they are. IDS must be
+     * in increasing order and every target and edge name must be in range.
+     */
+    CompactStreetMapGraph(long[] ids, double[] lats, double[] lons, String[] names,
+                          int[] offsets, int[] targets, double[] weights,
+                          int[] edgeNames, String[] wayNames) {
+        this.ids = ids;
+        this.lats = lats;
+        this.lons = lons;
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.edgeNames = edgeNames;
+        this.wayNames = wayNames;
+        landmarks = null;
+    }
+
+    /** Shares all of G's arrays, but estimates distances with LANDMARKS. */
+    private CompactStreetMapGraph(CompactStreetMapGraph g, Landmarks landmarks) {
+        ids = g.ids;
+        lats = g.lats;
+        lons = g.lons;
+        names = g.names;
+        offsets = g.offsets;
+        targets = g.targets;
+        weights = g.weights;
+        edgeNames = g.edgeNames;
+        wayNames = g.wayNames;
+        this.landmarks = landmarks;
+    }
+
+    /**
+     * Returns a view of this graph whose estimatedDistanceToGoal is the larger of the
+     * great-circle distance and LANDMARKS' lower bound, which must have been computed
+     * on this graph. Pass null to get back plain great-circle estimates.
+     */
+    public CompactStreetMapGraph withLandmarks(Landmarks landmarks) {
+        return new CompactStreetMapGraph(this, landmarks);
+    }
+
+    /** Returns the landmarks this graph estimates distances with, or null if none. */
+    public Landmarks landmarks() {
+        return landmarks;
+    }
+
+    /**
+     * Returns a list of outgoing edges for V. Assumes V exists in this
+     * graph.
+     **/
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        int i = index(v);
+        List<WeightedEdge<Long>> incidentList = new ArrayList<>(offsets[i + 1] - offsets[i]);
+        for (int e = offsets[i]; e < offsets[i + 1]; e += 1) {
+            WeightedEdge<Long> edge = new WeightedEdge<>(v, ids[targets[e]], weights[e]);
+            edge.setName(wayNames[edgeNames[e]]);
+            incidentList.add(edge);
+        }
+        return incidentList;
+    }
+
+    /**
+     * Calls VISITOR on each outgoing edge of V by walking its CSR slice; no edge
+     * objects or lists are created. Assumes V exists in this graph.
+     */
+    @Override
+    public void forEachNeighbor(Long v, EdgeVisitor<Long> visitor) {
+        int i = index(v);
+        for (int e = offsets[i]; e < offsets[i + 1]; e += 1) {
+            visitor.visit(v, ids[targets[e]], weights[e]);
+        }
+    }
+
+    /**
+     * Returns a lower bound on the distance between S and GOAL; see
+     * estimatedDistanceToGoal(int, int). Assumes S and GOAL exist in this graph.
+     */
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        return estimatedDistanceToGoal(index(s), index(goal));
+    }
+
+    /**
+     * Calls VISITOR on each outgoing edge of the vertex at index V.
+     */
+    @Override
+    public void forEachNeighbor(int v, IntEdgeVisitor visitor) {
+        for (int e = offsets[v]; e < offsets[v + 1]; e += 1) {
+            visitor.visit(v, targets[e], weights[e]);
+        }
+    }
+
+    /**
+     * Returns the great-circle distance between the vertices at indices S and GOAL,
+     * or the landmark lower bound on their road distance if that is larger.
+     */
+    @Override
+    public double estimatedDistanceToGoal(int s, int goal) {
+        double distance = StreetMapGraph.distance(lons[s], lons[goal], lats[s], lats[goal]);
+        if (landmarks != null) {
+            distance = Math.max(distance, landmarks.lowerBound(s, goal));
+        }
+        return distance;
+    }
+
+    /** Returns the number of vertices in this graph. */
+    @Override
+    public int numVertices() {
+        return ids.length;
+    }
+
+    /** Returns the number of outgoing edges of the vertex at INDEX. */
+    public int degree(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /** Returns the number of (directed) edges in this graph. */
+    public int numEdges() {
+        return targets.length;
+    }
+
+    /**
+     * Returns the dense index of the vertex with the given OSM id, or -1 if the
+     * vertex is not in this graph.
+     */
+    public int index(long id) {
+        int i = Arrays.binarySearch(ids, id);
+        return i < 0 ? -1 : i;
+    }
+
+    /** Returns the OSM ids of the vertices at the given indices, in the same order. */
+    public List<Long> ids(int[] indices) {
+        List<Long> idList = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            idList.add(ids[i]);
+        }
+        return idList;
+    }
+
+    /** Returns the OSM id of the vertex at INDEX. */
+    public long idAt(int index) {
+        return ids[index];
+    }
+
+    /** Returns the latitude of the vertex at INDEX. */
+    public double latAt(int index) {
+        return lats[index];
+    }
+
+    /** Returns the longitude of the vertex at INDEX. */
+    public double lonAt(int index) {
+        return lons[index];
+    }
+
+    /** Returns the name of the vertex at INDEX, or null if it has none. */
+    public String nameAt(int index) {
+        return names[index];
+    }
+
+    /**
+     * Gets the longitude of a vertex.
+     * @param v The id of the vertex.
+     * @return The longitude of the vertex, or 0.0 if it is not in this graph.
+     */
+    public double lon(long v) {
+        int i = index(v);
+        return i < 0 ? 0.0 : lons[i];
+    }
+
+    /**
+     * Gets the latitude of a vertex.
+     * @param v The id of the vertex.
+     * @return The latitude of the vertex, or 0.0 if it is not in this graph.
+     */
+    public double lat(long v) {
+        int i = index(v);
+        return i < 0 ? 0.0 : lats[i];
+    }
+
+    /**
+     * Gets the name of a vertex (if applicable).
+     * @param v The id of the vertex.
+     * @return The name of the vertex, or null if it has none.
+     */
+    public String name(long v) {
+        int i = index(v);
+        return i < 0 ? null : names[i];
+    }
+}
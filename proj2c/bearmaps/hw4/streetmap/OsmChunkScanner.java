@@ -0,0 +1,503 @@
+package bearmaps.hw4.streetmap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Scans one slice of a UTF-8 OSM XML file for nodes and highway ways by looking
+ * at the bytes directly, without an XML parser. It follows the same rules as
+ * GraphBuildingHandler: a node's name comes from its name tag, and a way counts if
+ * its last highway tag is one of GraphBuildingHandler.ALLOWED_HIGHWAY_TYPES, in
+ * which case its name tag (or "") names its edges.
+ *
+ * The scanner understands the subset of XML that OSM files use: elements with
+ * quoted attributes, the five predefined entities and character references,
+ * comments, and processing instructions. It throws an IllegalStateException on
+ * anything it cannot make sense of, so the caller can fall back to SAX.
+ *
+ * Results are kept in growable primitive arrays: nodes in nodeIds, nodeLats,
+ * nodeLons and nodeNames, and ways as runs of node ids in refs, where way i
+ * covers refs[wayStarts[i]] .. refs[wayStarts[i + 1] - 1].
+ */
+class OsmChunkScanner {
+    private static final int NONE = 0;
+    private static final int NODE = 1;
+    private static final int WAY = 2;
+
+    private static final byte[] NODE_TAG = ascii("node");
+    private static final byte[] WAY_TAG = ascii("way");
+    private static final byte[] ND_TAG = ascii("nd");
+    private static final byte[] TAG_TAG = ascii("tag");
+    private static final byte[] ID = ascii("id");
+    private static final byte[] LAT = ascii("lat");
+    private static final byte[] LON = ascii("lon");
+    private static final byte[] REF = ascii("ref");
+    private static final byte[] K = ascii("k");
+    private static final byte[] V = ascii("v");
+    private static final byte[] NAME = ascii("name");
+    private static final byte[] HIGHWAY = ascii("highway");
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i += 1) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final ByteBuffer in;
+    private final int length;
+    private int pos;
+
+    /* attributes of the element being scanned, as byte ranges into the file */
+    private int numAttributes;
+    private int[] nameStarts = new int[8];
+    private int[] nameEnds = new int[8];
+    private int[] valueStarts = new int[8];
+    private int[] valueEnds = new int[8];
+    private byte[] scratch = new byte[64];
+
+    int numNodes;
+    long[] nodeIds = new long[1024];
+    double[] nodeLats = new double[1024];
+    double[] nodeLons = new double[1024];
+    String[] nodeNames = new String[1024];
+
+    int numWays;
+    int[] wayStarts = new int[256];
+    String[] wayNames = new String[256];
+    int numRefs;
+    long[] refs = new long[4096];
+
+    /** Scans IN, which holds a whole file of LENGTH bytes. */
+    OsmChunkScanner(ByteBuffer in, int length) {
+        this.in = in;
+        this.length = length;
+    }
+
+    /**
+     * Scans the elements that start at or after START and before END. An element
+     * that starts before END is scanned to its end even if that lies past END.
+     * START must be the start of an element, or 0.
+     */
+    void scan(int start, int end) {
+        pos = start;
+        int state = NONE;
+        boolean validWay = false;
+        String wayName = "";
+        int wayStart = 0;
+        long nodeId = 0;
+        double nodeLat = 0;
+        double nodeLon = 0;
+        String nodeName = null;
+
+        while (true) {
+            int lt = indexOf('<', pos);
+            if (lt < 0 || (lt >= end && state == NONE)) {
+                break;
+            }
+            pos = lt + 1;
+            byte c = byteAt(pos);
+            if (c == '?') {
+                pos = find('>', pos) + 1;
+                continue;
+            }
+            if (c == '!') {
+                pos = startsWith(pos, "!--") ? indexOf("-->", pos) + 3 : find('>', pos) + 1;
+                continue;
+            }
+            boolean closing = c == '/';
+            if (closing) {
+                pos += 1;
+            }
+            int tagStart = pos;
+            while (pos < length && !isDelimiter(byteAt(pos))) {
+                pos += 1;
+            }
+            int tagEnd = pos;
+
+            if (closing) {
+                pos = find('>', pos) + 1;
+                if (state == WAY && matches(tagStart, tagEnd, WAY_TAG)) {
+                    addWay(wayStart, validWay, wayName);
+                    state = NONE;
+                } else if (state == NODE && matches(tagStart, tagEnd, NODE_TAG)) {
+                    addNode(nodeId, nodeLat, nodeLon, nodeName);
+                    state = NONE;
+                }
+                continue;
+            }
+
+            boolean selfClosing = scanAttributes();
+            if (matches(tagStart, tagEnd, NODE_TAG)) {
+                nodeId = parseLong(attribute(ID));
+                nodeLat = parseDouble(attribute(LAT));
+                nodeLon = parseDouble(attribute(LON));
+                nodeName = null;
+                if (selfClosing) {
+                    addNode(nodeId, nodeLat, nodeLon, null);
+                } else {
+                    state = NODE;
+                }
+            } else if (matches(tagStart, tagEnd, WAY_TAG)) {
+                validWay = false;
+                wayName = "";
+                wayStart = numRefs;
+                if (selfClosing) {
+                    addWay(wayStart, false, wayName);
+                } else {
+                    state = WAY;
+                }
+            } else if (state == WAY && matches(tagStart, tagEnd, ND_TAG)) {
+                addRef(parseLong(attribute(REF)));
+            } else if (state != NONE && matches(tagStart, tagEnd, TAG_TAG)) {
+                int k = attribute(K);
+                int v = attribute(V);
+                if (state == WAY && matches(valueStarts[k], valueEnds[k], HIGHWAY)) {
+                    validWay = GraphBuildingHandler.ALLOWED_HIGHWAY_TYPES.contains(decode(v));
+                } else if (matches(valueStarts[k], valueEnds[k], NAME)) {
+                    if (state == WAY) {
+                        wayName = decode(v);
+                    } else {
+                        nodeName = decode(v);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the attributes of the element whose name ends at pos, and moves pos
+     * past its closing '>'. Returns true if the element is self-closing.
+     */
+    private boolean scanAttributes() {
+        numAttributes = 0;
+        while (true) {
+            pos = skipWhitespace(pos);
+            byte c = byteAt(pos);
+            if (c == '>') {
+                pos += 1;
+                return false;
+            }
+            if (c == '/') {
+                pos = find('>', pos) + 1;
+                return true;
+            }
+            int nameStart = pos;
+            while (byteAt(pos) != '=' && !isWhitespace(byteAt(pos))) {
+                pos += 1;
+            }
+            int nameEnd = pos;
+            pos = skipWhitespace(pos);
+            if (byteAt(pos) != '=') {
+                throw new IllegalStateException("Expected '=' at byte " + pos);
+            }
+            pos = skipWhitespace(pos + 1);
+            byte quote = byteAt(pos);
+            if (quote != '"' && quote != '\'') {
+                throw new IllegalStateException("Expected a quote at byte " + pos);
+            }
+            int valueStart = pos + 1;
+            int valueEnd = find((char) quote, valueStart);
+            pos = valueEnd + 1;
+
+            if (numAttributes == nameStarts.length) {
+                nameStarts = Arrays.copyOf(nameStarts, numAttributes * 2);
+                nameEnds = Arrays.copyOf(nameEnds, numAttributes * 2);
+                valueStarts = Arrays.copyOf(valueStarts, numAttributes * 2);
+                valueEnds = Arrays.copyOf(valueEnds, numAttributes * 2);
+            }
+            nameStarts[numAttributes] = nameStart;
+            nameEnds[numAttributes] = nameEnd;
+            valueStarts[numAttributes] = valueStart;
+            valueEnds[numAttributes] = valueEnd;
+            numAttributes += 1;
+        }
+    }
+
+    /** Returns the number of the attribute called NAME, or throws if there is none. */
+    private int attribute(byte[] name) {
+        for (int i = 0; i < numAttributes; i += 1) {
+            if (matches(nameStarts[i], nameEnds[i], name)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Missing attribute " + new String(name,
+                StandardCharsets.US_ASCII) + " before byte " + pos);
+    }
+
+    private long parseLong(int attribute) {
+        int i = valueStarts[attribute];
+        int end = valueEnds[attribute];
+        boolean negative = i < end && byteAt(i) == '-';
+        if (negative) {
+            i += 1;
+        }
+        if (i == end || end - i > 18) {
+            return Long.parseLong(string(attribute));
+        }
+        long value = 0;
+        for (; i < end; i += 1) {
+            int digit = byteAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(string(attribute));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal like "-122.2584" as the integer 1222584 divided by 10^4. Both
+     * are exact doubles when there are at most 15 digits, so the one division rounds
+     * correctly and gives the same double as Double.parseDouble, which handles
+     * everything else.
+     */
+    private double parseDouble(int attribute) {
+        int i = valueStarts[attribute];
+        int end = valueEnds[attribute];
+        boolean negative = i < end && byteAt(i) == '-';
+        if (negative) {
+            i += 1;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i += 1) {
+            byte c = byteAt(i);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits += 1;
+                if (fractionDigits >= 0) {
+                    fractionDigits += 1;
+                }
+            } else {
+                return Double.parseDouble(string(attribute));
+            }
+        }
+        if (digits == 0 || digits > 15) {
+            return Double.parseDouble(string(attribute));
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private String string(int attribute) {
+        return decode(attribute);
+    }
+
+    /**
+     * Returns the value of an attribute with entities and character references
+     * replaced and whitespace normalized, as an XML parser would report it.
+     */
+    private String decode(int attribute) {
+        int start = valueStarts[attribute];
+        int end = valueEnds[attribute];
+        int n = 0;
+        for (int i = start; i < end; i += 1) {
+            if (n + 4 > scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2 + 4);
+            }
+            byte c = byteAt(i);
+            if (c == '&') {
+                int semicolon = find(';', i);
+                if (semicolon >= end) {
+                    throw new IllegalStateException("Unterminated entity at byte " + i);
+                }
+                n = appendEntity(i + 1, semicolon, n);
+                i = semicolon;
+            } else if (c == '\r' && i + 1 < end && byteAt(i + 1) == '\n') {
+                continue;
+            } else if (c == '\t' || c == '\n' || c == '\r') {
+                scratch[n++] = ' ';
+            } else {
+                scratch[n++] = c;
+            }
+        }
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /** Appends the UTF-8 bytes of the entity between START and END to scratch at N. */
+    private int appendEntity(int start, int end, int n) {
+        int codePoint;
+        if (byteAt(start) == '#') {
+            boolean hex = byteAt(start + 1) == 'x';
+            codePoint = 0;
+            for (int i = hex ? start + 2 : start + 1; i < end; i += 1) {
+                int digit = Character.digit(byteAt(i), hex ? 16 : 10);
+                if (digit < 0) {
+                    throw new IllegalStateException("Bad character reference at byte " + start);
+                }
+                codePoint = codePoint * (hex ? 16 : 10) + digit;
+            }
+        } else if (matches(start, end, ascii("amp"))) {
+            codePoint = '&';
+        } else if (matches(start, end, ascii("lt"))) {
+            codePoint = '<';
+        } else if (matches(start, end, ascii("gt"))) {
+            codePoint = '>';
+        } else if (matches(start, end, ascii("quot"))) {
+            codePoint = '"';
+        } else if (matches(start, end, ascii("apos"))) {
+            codePoint = '\'';
+        } else {
+            throw new IllegalStateException("Unknown entity at byte " + start);
+        }
+
+        if (codePoint < 0x80) {
+            scratch[n++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            scratch[n++] = (byte) (0xc0 | (codePoint >> 6));
+            scratch[n++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else if (codePoint < 0x10000) {
+            scratch[n++] = (byte) (0xe0 | (codePoint >> 12));
+            scratch[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            scratch[n++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else {
+            scratch[n++] = (byte) (0xf0 | (codePoint >> 18));
+            scratch[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            scratch[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            scratch[n++] = (byte) (0x80 | (codePoint & 0x3f));
+        }
+        return n;
+    }
+
+    private void addNode(long id, double lat, double lon, String name) {
+        if (numNodes == nodeIds.length) {
+            int capacity = numNodes * 2;
+            nodeIds = Arrays.copyOf(nodeIds, capacity);
+            nodeLats = Arrays.copyOf(nodeLats, capacity);
+            nodeLons = Arrays.copyOf(nodeLons, capacity);
+            nodeNames = Arrays.copyOf(nodeNames, capacity);
+        }
+        nodeIds[numNodes] = id;
+        nodeLats[numNodes] = lat;
+        nodeLons[numNodes] = lon;
+        nodeNames[numNodes] = name;
+        numNodes += 1;
+    }
+
+    private void addRef(long ref) {
+        if (numRefs == refs.length) {
+            refs = Arrays.copyOf(refs, numRefs * 2);
+        }
+        refs[numRefs] = ref;
+        numRefs += 1;
+    }
+
+    /** Keeps the refs from START on as a way if VALID, and drops them otherwise. */
+    private void addWay(int start, boolean valid, String name) {
+        if (!valid) {
+            numRefs = start;
+            return;
+        }
+        if (numWays + 1 >= wayStarts.length) {
+            wayStarts = Arrays.copyOf(wayStarts, wayStarts.length * 2);
+            wayNames = Arrays.copyOf(wayNames, wayStarts.length);
+        }
+        wayStarts[numWays] = start;
+        wayNames[numWays] = name;
+        numWays += 1;
+        wayStarts[numWays] = numRefs;
+    }
+
+    /** Returns the position of the first element start at or after POS, or LENGTH. */
+    int nextElementStart(int from) {
+        int i = from;
+        while (true) {
+            i = indexOf('<', i);
+            if (i < 0) {
+                return length;
+            }
+            if (startsWith(i + 1, "node") || startsWith(i + 1, "way")
+                    || startsWith(i + 1, "relation")) {
+                int after = i + 1 + (startsWith(i + 1, "way") ? 3
+                        : startsWith(i + 1, "node") ? 4 : 8);
+                if (after < length && isDelimiter(byteAt(after))) {
+                    return i;
+                }
+            }
+            i += 1;
+        }
+    }
+
+    private byte byteAt(int i) {
+        if (i < 0 || i >= length) {
+            throw new IllegalStateException("Unexpected end of file");
+        }
+        return in.get(i);
+    }
+
+    private int indexOf(char c, int from) {
+        for (int i = from; i < length; i += 1) {
+            if (in.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Like indexOf, but throws if there is no C at or after FROM. */
+    private int find(char c, int from) {
+        int i = indexOf(c, from);
+        if (i < 0) {
+            throw new IllegalStateException("Missing " + c + " after byte " + from);
+        }
+        return i;
+    }
+
+    private int indexOf(String s, int from) {
+        for (int i = from; i < length; i += 1) {
+            if (startsWith(i, s)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Missing " + s + " after byte " + from);
+    }
+
+    private boolean startsWith(int i, String s) {
+        if (i + s.length() > length) {
+            return false;
+        }
+        for (int j = 0; j < s.length(); j += 1) {
+            if (in.get(i + j) != s.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int start, int end, byte[] s) {
+        if (end - start != s.length) {
+            return false;
+        }
+        for (int j = 0; j < s.length; j += 1) {
+            if (in.get(start + j) != s[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipWhitespace(int i) {
+        while (isWhitespace(byteAt(i))) {
+            i += 1;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isDelimiter(byte c) {
+        return isWhitespace(c) || c == '>' || c == '/';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
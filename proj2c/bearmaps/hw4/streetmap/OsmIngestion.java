@@ -0,0 +1,314 @@
+package bearmaps.hw4.streetmap;
+
+import bearmaps.hw4.WeightedEdge;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a StreetMapGraph from an OSM XML file on all cores, in stages:
+ * <ol>
+ *   <li>The file is memory-mapped and cut into slices at element starts, and each
+ *   slice is scanned by its own OsmChunkScanner in parallel, which collects its
+ *   nodes and highway ways in primitive arrays.</li>
+ *   <li>The nodes of all slices are numbered in file order in a primitive hash
+ *   table from OSM id to index, keeping the first node of each id like addNode.</li>
+ *   <li>Once every node is known, the ways are resolved against that table and the
+ *   weights of their edges computed, again one slice per task.</li>
+ *   <li>The edges are grouped by source vertex in flat arrays, nodes without edges
+ *   or a name are dropped like clean() drops them, and the Node objects and edge
+ *   sets are made in parallel before they are put into the graph's maps.</li>
+ * </ol>
+ * The result is the graph GraphBuildingHandler builds, with the same edges and
+ * weights, except that a way may now use a node that comes after it in the file;
+ * GraphBuildingHandler silently drops such edges.
+ *
+ * Only UTF-8 (or ASCII) files smaller than 2 GB are handled; read returns false
+ * for anything else, and for files the scanner cannot make sense of, so the caller
+ * can fall back to SAX.
+ */
+class OsmIngestion {
+    /* slices are at least this big, so small files do not pay for many tasks */
+    private static final int MIN_SLICE_BYTES = 1 << 20;
+    private static final int SLICES_PER_CORE = 4;
+
+    /**
+     * Reads the OSM file FILENAME into G, which must be empty. Returns false and
+     * leaves G empty if the file is not one this reader handles.
+     */
+    static boolean read(String filename, StreetMapGraph g) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= Integer.MAX_VALUE) {
+                return false;
+            }
+            int length = (int) size;
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (!isUtf8(in, length)) {
+                return false;
+            }
+            OsmChunkScanner[] slices;
+            try {
+                slices = scan(in, length);
+            } catch (RuntimeException e) {
+                System.out.println("Falling back to SAX for " + filename + ": " + e.getMessage());
+                return false;
+            }
+            build(slices, g);
+            return true;
+        }
+    }
+
+    /** Returns true unless the XML declaration or a byte order mark names another encoding. */
+    private static boolean isUtf8(MappedByteBuffer in, int length) {
+        if (length >= 2 && ((in.get(0) == (byte) 0xfe && in.get(1) == (byte) 0xff)
+                || (in.get(0) == (byte) 0xff && in.get(1) == (byte) 0xfe))) {
+            return false;
+        }
+        byte[] head = new byte[Math.min(length, 256)];
+        for (int i = 0; i < head.length; i += 1) {
+            head[i] = in.get(i);
+        }
+        String declaration = new String(head, StandardCharsets.US_ASCII);
+        int end = declaration.indexOf("?>");
+        if (!declaration.contains("<?xml") || end < 0) {
+            return true;
+        }
+        declaration = declaration.substring(0, end).toLowerCase();
+        int encoding = declaration.indexOf("encoding");
+        return encoding < 0 || declaration.contains("utf-8") || declaration.contains("us-ascii");
+    }
+
+    /** Cuts the file into slices at element starts and scans them in parallel. */
+    private static OsmChunkScanner[] scan(MappedByteBuffer in, int length) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int numSlices = Math.max(1, Math.min(cores * SLICES_PER_CORE, length / MIN_SLICE_BYTES));
+        int[] starts = new int[numSlices + 1];
+        OsmChunkScanner finder = new OsmChunkScanner(in, length);
+        for (int i = 1; i < numSlices; i += 1) {
+            int nominal = (int) ((long) length * i / numSlices);
+            starts[i] = finder.nextElementStart(Math.max(starts[i - 1], nominal));
+        }
+        starts[numSlices] = length;
+
+        OsmChunkScanner[] slices = new OsmChunkScanner[numSlices];
+        IntStream.range(0, numSlices).parallel().forEach(i -> {
+            slices[i] = new OsmChunkScanner(in, length);
+            slices[i].scan(starts[i], starts[i + 1]);
+        });
+        return slices;
+    }
+
+    private static void build(OsmChunkScanner[] slices, StreetMapGraph g) {
+        /* Number the nodes in file order, first node of an id wins. */
+        int total = 0;
+        for (OsmChunkScanner s : slices) {
+            total += s.numNodes;
+        }
+        LongIntMap index = new LongIntMap(total);
+        int[][] nodeIndex = new int[slices.length][];
+        int n = 0;
+        for (int i = 0; i < slices.length; i += 1) {
+            OsmChunkScanner s = slices[i];
+            nodeIndex[i] = new int[s.numNodes];
+            for (int j = 0; j < s.numNodes; j += 1) {
+                int existing = index.putIfAbsent(s.nodeIds[j], n);
+                if (existing < 0) {
+                    nodeIndex[i][j] = n;
+                    n += 1;
+                } else {
+                    nodeIndex[i][j] = -1;
+                }
+            }
+        }
+        long[] ids = new long[n];
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        String[] names = new String[n];
+        IntStream.range(0, slices.length).parallel().forEach(i -> {
+            OsmChunkScanner s = slices[i];
+            for (int j = 0; j < s.numNodes; j += 1) {
+                int v = nodeIndex[i][j];
+                if (v >= 0) {
+                    ids[v] = s.nodeIds[j];
+                    lats[v] = s.nodeLats[j];
+                    lons[v] = s.nodeLons[j];
+                    names[v] = s.nodeNames[j];
+                }
+            }
+        });
+
+        /* Resolve the ways and weigh their segments, now that every node is known. */
+        Segments[] segments = new Segments[slices.length];
+        IntStream.range(0, slices.length).parallel().forEach(i ->
+                segments[i] = new Segments(slices[i], index, lats, lons));
+
+        /* Group the edges by source vertex: each segment is an edge both ways. */
+        int[] offsets = new int[n + 1];
+        for (Segments s : segments) {
+            for (int e = 0; e < s.size; e += 1) {
+                offsets[s.from[e] + 1] += 1;
+                offsets[s.to[e] + 1] += 1;
+            }
+        }
+        for (int v = 0; v < n; v += 1) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        String[] edgeNames = new String[offsets[n]];
+        for (Segments s : segments) {
+            for (int e = 0; e < s.size; e += 1) {
+                int forward = next[s.from[e]]++;
+                targets[forward] = s.to[e];
+                weights[forward] = s.forwardWeight[e];
+                edgeNames[forward] = s.name[e];
+                int backward = next[s.to[e]]++;
+                targets[backward] = s.from[e];
+                weights[backward] = s.backwardWeight[e];
+                edgeNames[backward] = s.name[e];
+            }
+        }
+
+        /* Make the nodes and edge sets of the vertices clean() would keep. */
+        Node[] nodes = new Node[n];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Set<WeightedEdge<Long>>[] edges = new Set[n];
+        IntStream.range(0, n).parallel().forEach(v -> {
+            int degree = offsets[v + 1] - offsets[v];
+            if (degree == 0 && names[v] == null) {
+                return;
+            }
+            nodes[v] = Node.of(ids[v], lats[v], lons[v]);
+            if (names[v] != null) {
+                nodes[v].setName(names[v]);
+            }
+            Set<WeightedEdge<Long>> set = new HashSet<>(degree * 4 / 3 + 1);
+            for (int e = offsets[v]; e < offsets[v + 1]; e += 1) {
+                WeightedEdge<Long> edge = new WeightedEdge<>(ids[v], ids[targets[e]], weights[e]);
+                edge.setName(edgeNames[e]);
+                set.add(edge);
+            }
+            edges[v] = set;
+        });
+
+        int kept = 0;
+        for (Node node : nodes) {
+            if (node != null) {
+                kept += 1;
+            }
+        }
+        Map<Long, Node> nodeMap = new HashMap<>(kept * 4 / 3 + 1);
+        Map<Long, Set<WeightedEdge<Long>>> neighborMap = new HashMap<>(kept * 4 / 3 + 1);
+        for (int v = 0; v < n; v += 1) {
+            if (nodes[v] != null) {
+                nodeMap.put(ids[v], nodes[v]);
+                neighborMap.put(ids[v], edges[v]);
+            }
+        }
+        g.nodes = nodeMap;
+        g.neighbors = neighborMap;
+    }
+
+    /**
+     * The segments of one slice's ways as vertex indices, with the weight of each
+     * direction and the way's name. Segments with a node missing from the file are
+     * left out, like addWeightedEdge leaves them out.
+     */
+    private static class Segments {
+        int size;
+        final int[] from;
+        final int[] to;
+        final double[] forwardWeight;
+        final double[] backwardWeight;
+        final String[] name;
+
+        Segments(OsmChunkScanner s, LongIntMap index, double[] lats, double[] lons) {
+            int capacity = s.numRefs;
+            from = new int[capacity];
+            to = new int[capacity];
+            forwardWeight = new double[capacity];
+            backwardWeight = new double[capacity];
+            name = new String[capacity];
+            for (int w = 0; w < s.numWays; w += 1) {
+                int previous = -1;
+                for (int r = s.wayStarts[w]; r < s.wayStarts[w + 1]; r += 1) {
+                    int v = index.get(s.refs[r]);
+                    if (previous >= 0 && v >= 0) {
+                        /* addWeightedEdge weighs each direction on its own; so do we */
+                        from[size] = previous;
+                        to[size] = v;
+                        forwardWeight[size] = StreetMapGraph.distance(
+                                lons[previous], lons[v], lats[previous], lats[v]);
+                        backwardWeight[size] = StreetMapGraph.distance(
+                                lons[v], lons[previous], lats[v], lats[previous]);
+                        name[size] = s.wayNames[w];
+                        size += 1;
+                    }
+                    previous = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Open-addressing hash table from long keys to non-negative int values, so the
+     * node numbering needs no boxed Longs. Reads may run in parallel once writing
+     * is done.
+     */
+    private static class LongIntMap {
+        private final long[] keys;
+        private final int[] values;  // -1 marks an empty slot
+        private final int mask;
+
+        LongIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(2, expected) * 2 - 1) * 2;
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, -1);
+            mask = capacity - 1;
+        }
+
+        /** Maps KEY to VALUE unless KEY is mapped already; returns the old value or -1. */
+        int putIfAbsent(long key, int value) {
+            int i = slot(key);
+            while (values[i] >= 0) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return -1;
+        }
+
+        /** Returns the value of KEY, or -1 if it has none. */
+        int get(long key) {
+            int i = slot(key);
+            while (values[i] >= 0) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
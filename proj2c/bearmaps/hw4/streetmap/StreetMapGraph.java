@@ -1,6 +1,7 @@
 package bearmaps.hw4.streetmap;
 
 import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.EdgeVisitor;
 import bearmaps.hw4.WeightedEdge;
 import org.xml.sax.SAXException;
 
@@ -13,13 +14,30 @@ import java.io.IOException;
 import java.util.*;
 
 public class StreetMapGraph implements AStarGraph<Long> {
-    private Map<Long, Node> nodes = new HashMap<>();
-    private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
+    Map<Long, Node> nodes = new HashMap<>();
+    Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
+    /** Array-backed copy that answers for this graph once nodes and neighbors are dropped. */
+    private CompactStreetMapGraph packed;
 
     private StreetMapGraph() {
     }
 
     public StreetMapGraph(String filename) {
+        this(filename, null);
+    }
+
+    /**
+     * Takes the graph from SNAPSHOT, or parses it from the OSM XML file FILENAME if
+     * SNAPSHOT is null. A graph from a snapshot is packed from the start, as if by
+     * compactInPlace, and never holds the HashMaps of Node and WeightedEdge objects.
+     */
+    protected StreetMapGraph(String filename, StreetMapSnapshot snapshot) {
+        if (snapshot != null) {
+            this.packed = snapshot.graph;
+            this.nodes = null;
+            this.neighbors = null;
+            return;
+        }
         StreetMapGraph smg = StreetMapGraph.readFromXML(filename);
         this.nodes = smg.nodes;
         this.neighbors = smg.neighbors;
@@ -31,6 +49,9 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     @Override
     public List<WeightedEdge<Long>> neighbors(Long v) {
+        if (packed != null) {
+            return packed.neighbors(v);
+        }
         Set<WeightedEdge<Long>> incidentSet = neighbors.get(v);
         List<WeightedEdge<Long>> incidentList = new ArrayList<>();
         for (WeightedEdge<Long> e : incidentSet) {
@@ -40,12 +61,30 @@ public class StreetMapGraph implements AStarGraph<Long> {
         return incidentList;
     }
 
+    /**
+     * Calls VISITOR on each outgoing edge of V, straight from the adjacency set.
+     * Assumes V exists in this graph.
+     */
+    @Override
+    public void forEachNeighbor(Long v, EdgeVisitor<Long> visitor) {
+        if (packed != null) {
+            packed.forEachNeighbor(v, visitor);
+            return;
+        }
+        for (WeightedEdge<Long> e : neighbors.get(v)) {
+            visitor.visit(e.from(), e.to(), e.weight());
+        }
+    }
+
     /**
      * Returns the great-circle distance between S and GOAL. Assumes
      * S and GOAL exist in this graph.
      */
     @Override
     public double estimatedDistanceToGoal(Long s, Long goal) {
+        if (packed != null) {
+            return packed.estimatedDistanceToGoal(s, goal);
+        }
         Node sNode = nodes.get(s);
         Node goalNode = nodes.get(goal);
         return distance(sNode.lon(), goalNode.lon(), sNode.lat(), goalNode.lat());
@@ -57,6 +96,12 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     private Set<Long> vertices() {
         Set<Long> vertices = new HashSet<>();
+        if (packed != null) {
+            for (int i = 0; i < packed.numVertices(); i += 1) {
+                vertices.add(packed.idAt(i));
+            }
+            return vertices;
+        }
         for (long id : nodes.keySet()) {
             vertices.add(id);
         }
@@ -66,9 +111,26 @@ public class StreetMapGraph implements AStarGraph<Long> {
 
     /**
      * Factory method. Creates and returns a graph from an OSM XML
-     * file. Assumes file is correctly formatted.
+     * file with the parallel OsmIngestion, or with SAX if OsmIngestion cannot
+     * read the file. Assumes file is correctly formatted.
      */
     private static StreetMapGraph readFromXML(String filename) {
+        try {
+            StreetMapGraph smg = new StreetMapGraph();
+            if (OsmIngestion.read(filename, smg)) {
+                return smg;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return readFromXMLWithSAX(filename);
+    }
+
+    /**
+     * Factory method. Creates and returns a graph from an OSM XML file on one
+     * thread with GraphBuildingHandler. Assumes file is correctly formatted.
+     */
+    public static StreetMapGraph readFromXMLWithSAX(String filename) {
         StreetMapGraph smg = new StreetMapGraph();
         try {
             File inputFile = new File(filename);
@@ -117,7 +179,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
     private void clean() {
         List<Long> toRemove = new ArrayList<>();
         for (long id : nodes.keySet()) {
-            if (neighbors(id).size() == 0 && nodes.get(id).name() == null) {
+            if (neighbors.get(id).isEmpty() && nodes.get(id).name() == null) {
                 toRemove.add(id);
             }
         }
@@ -180,7 +242,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      *
      * @source Kevin Lowe & Antares Chen, and https://www.movable-type.co.uk/scripts/latlong.html
      **/
-    private double distance(double lonV, double lonW, double latV, double latW) {
+    static double distance(double lonV, double lonW, double latV, double latW) {
         double phi1 = Math.toRadians(latV);
         double phi2 = Math.toRadians(latW);
         double dphi = Math.toRadians(latW - latV);
@@ -198,6 +260,9 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The longitude of the vertex.
      */
     public double lon(long v) {
+        if (packed != null) {
+            return packed.lon(v);
+        }
         if (!nodes.containsKey(v)) {
             return 0.0;
         }
@@ -210,6 +275,9 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The latitude of the vertex.
      */
     public double lat(long v) {
+        if (packed != null) {
+            return packed.lat(v);
+        }
         if (!nodes.containsKey(v)) {
             return 0.0;
         }
@@ -222,14 +290,52 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The name of the vertex.
      */
     public String name(long v) {
+        if (packed != null) {
+            return packed.name(v);
+        }
         if (!nodes.containsKey(v)) {
             return null;
         }
         return nodes.get(v).name();
     }
 
+    /**
+     * Packs this graph into an immutable, array-backed CompactStreetMapGraph.
+     * Later changes to this graph are not reflected in the result.
+     * @return A compact copy of this graph.
+     */
+    public CompactStreetMapGraph compact() {
+        if (packed != null) {
+            return packed;
+        }
+        return new CompactStreetMapGraph(nodes, neighbors);
+    }
+
+    /**
+     * Packs this graph with compact() and from then on answers every query from the
+     * packed copy, dropping the HashMaps of Node and WeightedEdge objects so that the
+     * graph is held in memory once. The graph cannot be added to afterwards.
+     * @return The packed copy, which this graph now shares.
+     */
+    public CompactStreetMapGraph compactInPlace() {
+        if (packed == null) {
+            packed = compact();
+            nodes = null;
+            neighbors = null;
+        }
+        return packed;
+    }
+
     protected List<Node> getNodes() {
         List<Node> nodes = new ArrayList<>();
+        if (packed != null) {
+            for (int i = 0; i < packed.numVertices(); i += 1) {
+                Node n = Node.of(packed.idAt(i), packed.latAt(i), packed.lonAt(i));
+                n.setName(packed.nameAt(i));
+                nodes.add(n);
+            }
+            return nodes;
+        }
         for(Map.Entry<Long, Node> nodeEntry: this.nodes.entrySet()){
             nodes.add(nodeEntry.getValue());
         }
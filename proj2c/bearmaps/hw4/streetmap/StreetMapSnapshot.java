@@ -0,0 +1,324 @@
+package bearmaps.hw4.streetmap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a parsed and cleaned street map, so the server does not have
+ * to parse the OSM XML on every start. The graph is stored as the arrays of its
+ * CompactStreetMapGraph and read straight back into one, so loading builds no
+ * Node or WeightedEdge objects. Besides the graph, a snapshot keeps the cleaned
+ * name of every named node, which AugmentedStreetMapGraph derives for the location
+ * search. The spatial indexes are not kept; they are bulk-built from the loaded
+ * arrays on every start.
+ *
+ * A snapshot records the length and CRC32 checksum of the XML file it was made
+ * from, and read refuses it once that file has changed. Snapshots are read
+ * through a memory-mapped FileChannel.
+ *
+ * Layout, all numbers big-endian, string indices -1 for none:
+ * <pre>
+ *   int magic, int version, long source length, long source CRC32
+ *   int numStrings, then for each: int byte length, UTF-8 bytes
+ *   int numNodes, then numNodes each of: long id (increasing), double lat,
+ *       double lon, int name, int clean name
+ *   numNodes + 1 int edge offsets, as in CompactStreetMapGraph
+ *   numEdges each of: int target node index, double weight, int way name
+ * </pre>
+ */
+public class StreetMapSnapshot {
+    private static final int MAGIC = 0x424d5347;  // "BMSG"
+    private static final int VERSION = 3;
+    private static final int NONE = -1;
+
+    final CompactStreetMapGraph graph;
+    private final List<Node> namedNodes;
+    private final List<String> cleanNames;
+
+    private StreetMapSnapshot(CompactStreetMapGraph graph, List<Node> namedNodes,
+                              List<String> cleanNames) {
+        this.graph = graph;
+        this.namedNodes = namedNodes;
+        this.cleanNames = cleanNames;
+    }
+
+    /** Returns the nodes that have a name, in the order of cleanNames(). */
+    public List<Node> namedNodes() {
+        return namedNodes;
+    }
+
+    /** Returns the cleaned name of each of namedNodes(). */
+    public List<String> cleanNames() {
+        return cleanNames;
+    }
+
+    /**
+     * Reads the snapshot at PATH. Returns null if PATH is null or does not exist, or
+     * if the snapshot is unreadable, from another version, or was made from another
+     * version of SOURCEPATH. If SOURCEPATH does not exist the snapshot is trusted.
+     */
+    public static StreetMapSnapshot read(String path, String sourcePath) {
+        if (path == null || !new File(path).exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                System.out.println("Ignoring snapshot " + path + ": too big to map.");
+                return null;
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                System.out.println("Ignoring snapshot " + path + ": unknown format.");
+                return null;
+            }
+            long sourceLength = in.getLong();
+            long sourceChecksum = in.getLong();
+            File source = new File(sourcePath);
+            if (source.exists()
+                    && (source.length() != sourceLength || checksum(sourcePath) != sourceChecksum)) {
+                System.out.println("Ignoring snapshot " + path + ": " + sourcePath + " changed.");
+                return null;
+            }
+            return readBody(in);
+        } catch (IOException | RuntimeException e) {
+            /* a corrupt body shows up as an underflow, a bad count or a bad index */
+            System.out.println("Ignoring snapshot " + path + ": " + e);
+            return null;
+        }
+    }
+
+    private static StreetMapSnapshot readBody(ByteBuffer in) {
+        String[] strings = new String[count(in, 4)];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < strings.length; i += 1) {
+            int length = count(in, 1);
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            in.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        int n = count(in, 8 + 8 + 8 + 4 + 4 + 4);
+        long[] ids = longs(in, n);
+        double[] lats = doubles(in, n);
+        double[] lons = doubles(in, n);
+        int[] nameIndices = ints(in, n);
+        int[] cleanNameIndices = ints(in, n);
+        String[] names = new String[n];
+        List<Node> namedNodes = new ArrayList<>();
+        List<String> cleanNames = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            if (i > 0 && ids[i] <= ids[i - 1]) {
+                throw new IllegalStateException("node ids out of order at node " + i);
+            }
+            names[i] = string(strings, nameIndices[i]);
+            if (cleanNameIndices[i] != NONE) {
+                Node node = Node.of(ids[i], lats[i], lons[i]);
+                node.setName(names[i]);
+                namedNodes.add(node);
+                cleanNames.add(string(strings, cleanNameIndices[i]));
+            }
+        }
+
+        int[] offsets = ints(in, n + 1);
+        for (int i = 0; i < n; i += 1) {
+            if (offsets[i] > offsets[i + 1]) {
+                throw new IllegalStateException("edge offsets out of order at node " + i);
+            }
+        }
+        if (offsets[0] != 0 || (long) offsets[n] * (4 + 8 + 4) > in.remaining()) {
+            throw new IllegalStateException("bad edge offsets");
+        }
+        int m = offsets[n];
+        int[] targets = ints(in, m);
+        double[] weights = doubles(in, m);
+        int[] edgeNames = ints(in, m);
+        /* way names index the string table, with one more slot for edges with none */
+        String[] wayNames = Arrays.copyOf(strings, strings.length + 1);
+        for (int e = 0; e < m; e += 1) {
+            if (targets[e] < 0 || targets[e] >= n) {
+                throw new IllegalStateException("bad target " + targets[e] + " of edge " + e);
+            }
+            if (edgeNames[e] < NONE || edgeNames[e] >= strings.length) {
+                throw new IllegalStateException("bad way name of edge " + e);
+            }
+            if (edgeNames[e] == NONE) {
+                edgeNames[e] = strings.length;
+            }
+        }
+        CompactStreetMapGraph graph = new CompactStreetMapGraph(ids, lats, lons, names,
+                offsets, targets, weights, edgeNames, wayNames);
+        return new StreetMapSnapshot(graph, namedNodes, cleanNames);
+    }
+
+    /**
+     * Reads a count of items that take at least BYTES bytes each from IN, and checks
+     * that there is room for that many in the rest of IN.
+     */
+    private static int count(ByteBuffer in, int bytes) {
+        int n = in.getInt();
+        if (n < 0 || (long) n * bytes > in.remaining()) {
+            throw new IllegalStateException("bad count " + n + " before byte " + in.position());
+        }
+        return n;
+    }
+
+    /** Returns the string at INDEX of STRINGS, or null if INDEX is NONE. */
+    private static String string(String[] strings, int index) {
+        if (index < NONE || index >= strings.length) {
+            throw new IllegalStateException("bad string index " + index);
+        }
+        return index == NONE ? null : strings[index];
+    }
+
+    /** Reads N longs from IN. */
+    private static long[] longs(ByteBuffer in, int n) {
+        long[] values = new long[n];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + n * Long.BYTES);
+        return values;
+    }
+
+    /** Reads N doubles from IN. */
+    private static double[] doubles(ByteBuffer in, int n) {
+        double[] values = new double[n];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + n * Double.BYTES);
+        return values;
+    }
+
+    /** Reads N ints from IN. */
+    private static int[] ints(ByteBuffer in, int n) {
+        int[] values = new int[n];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + n * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Writes a snapshot of G, which was parsed from SOURCEPATH, to PATH. CLEANER turns
+     * a node name into the cleaned form the location search uses. The file
+     * is written next to PATH first and then moved into place, so a reader never
+     * sees half a snapshot.
+     */
+    public static void write(String path, String sourcePath, StreetMapGraph g,
+                             UnaryOperator<String> cleaner)
+            throws IOException {
+        CompactStreetMapGraph c = g.compact();
+        int n = c.numVertices();
+        int m = c.numEdges();
+        StringTable strings = new StringTable();
+        int[] names = new int[n];
+        int[] cleanNames = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            String name = c.names[i];
+            names[i] = strings.indexOf(name);
+            cleanNames[i] = name == null ? NONE : strings.indexOf(cleaner.apply(name));
+        }
+        int[] edgeNames = new int[m];
+        for (int e = 0; e < m; e += 1) {
+            edgeNames[e] = strings.indexOf(c.wayNames[c.edgeNames[e]]);
+        }
+
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp.toFile()), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(new File(sourcePath).length());
+            out.writeLong(checksum(sourcePath));
+
+            out.writeInt(strings.list.size());
+            for (String s : strings.list) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(n);
+            for (long id : c.ids) {
+                out.writeLong(id);
+            }
+            for (double lat : c.lats) {
+                out.writeDouble(lat);
+            }
+            for (double lon : c.lons) {
+                out.writeDouble(lon);
+            }
+            for (int name : names) {
+                out.writeInt(name);
+            }
+            for (int name : cleanNames) {
+                out.writeInt(name);
+            }
+            for (int offset : c.offsets) {
+                out.writeInt(offset);
+            }
+            for (int t : c.targets) {
+                out.writeInt(t);
+            }
+            for (double weight : c.weights) {
+                out.writeDouble(weight);
+            }
+            for (int name : edgeNames) {
+                out.writeInt(name);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Returns the CRC32 checksum of the file at PATH. */
+    static long checksum(String path) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /** Numbers distinct strings in the order they are first seen. */
+    private static class StringTable {
+        final List<String> list = new ArrayList<>();
+        final Map<String, Integer> indices = new HashMap<>();
+
+        /** Returns the number of S, adding it if it is new, or NONE if S is null. */
+        int indexOf(String s) {
+            if (s == null) {
+                return NONE;
+            }
+            Integer i = indices.get(s);
+            if (i == null) {
+                i = list.size();
+                indices.put(s, i);
+                list.add(s);
+            }
+            return i;
+        }
+    }
+}
@@ -114,6 +114,7 @@ public class ArrayHeapMinPQ<T> implements ExtrinsicMinPQ<T> {
     public T removeSmallest() {
         T smallest = getSmallest();
         itemIndexPair.remove(pq.get(1).item); // remove smallest item-index pair
+        listItems.remove(smallest);
 
         Node min = pq.get(1);
         exchange(1, size);
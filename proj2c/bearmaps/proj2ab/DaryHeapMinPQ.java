@@ -0,0 +1,159 @@
+package bearmaps.proj2ab;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+/**
+ * ExtrinsicMinPQ backed by a d-ary heap stored in two parallel arrays: the items
+ * and their priorities. Priorities are compared as primitive doubles, and every
+ * item's heap slot is kept in a single HashMap that is updated once per move.
+ * Sifting moves a hole through the heap instead of swapping pairs, so each level
+ * costs one array write and one map write. A larger arity (4 or 8) makes the heap
+ * shallower, which speeds up add and changePriority at some cost to removeSmallest.
+ */
+public class DaryHeapMinPQ<T> implements ExtrinsicMinPQ<T> {
+    private static final int DEFAULT_ARITY = 4;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final int arity;
+    private T[] items;
+    private double[] priorities;
+    private final HashMap<T, Integer> position;  // heap slot of each item
+    private int size;
+
+    public DaryHeapMinPQ() {
+        this(DEFAULT_ARITY, DEFAULT_CAPACITY);
+    }
+
+    public DaryHeapMinPQ(int arity) {
+        this(arity, DEFAULT_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    public DaryHeapMinPQ(int arity, int capacity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("Arity must be at least 2, was " + arity);
+        }
+        this.arity = arity;
+        items = (T[]) new Object[Math.max(capacity, 1)];
+        priorities = new double[items.length];
+        position = new HashMap<>();
+        size = 0;
+    }
+
+    /* Adds an item with the given priority value. Throws an
+     * IllegalArgumentException if item is already present. */
+    @Override
+    public void add(T item, double priority) {
+        if (contains(item)) {
+            throw new IllegalArgumentException("Already contains " + item);
+        }
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+            priorities = Arrays.copyOf(priorities, size * 2);
+        }
+        size += 1;
+        swim(size - 1, item, priority);
+    }
+
+    /* Returns true if the PQ contains the given item. */
+    @Override
+    public boolean contains(T item) {
+        return position.containsKey(item);
+    }
+
+    /* Returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    @Override
+    public T getSmallest() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return items[0];
+    }
+
+    /* Returns the priority of the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public double smallestPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return priorities[0];
+    }
+
+    /* Removes and returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    @Override
+    public T removeSmallest() {
+        T smallest = getSmallest();
+        position.remove(smallest);
+        size -= 1;
+        T last = items[size];
+        items[size] = null;
+        if (size > 0) {
+            sink(0, last, priorities[size]);
+        }
+        return smallest;
+    }
+
+    /* Changes the priority of the given item. Throws IllegalArgumentException if the item
+     * doesn't exist. */
+    @Override
+    public void changePriority(T item, double priority) {
+        Integer i = position.get(item);
+        if (i == null) {
+            throw new IllegalArgumentException(item + " not in PQ.");
+        }
+        if (priority < priorities[i]) {
+            swim(i, item, priority);
+        } else {
+            sink(i, item, priority);
+        }
+    }
+
+    /* Returns the number of items in the PQ. */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Moves ITEM up from the empty slot I until its parent is no larger. */
+    private void swim(int i, T item, double priority) {
+        while (i > 0) {
+            int parent = (i - 1) / arity;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            place(i, items[parent], priorities[parent]);
+            i = parent;
+        }
+        place(i, item, priority);
+    }
+
+    /** Moves ITEM down from the empty slot I until none of its children are smaller. */
+    private void sink(int i, T item, double priority) {
+        while (true) {
+            int firstChild = i * arity + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int lastChild = Math.min(firstChild + arity, size);
+            int smallest = firstChild;
+            for (int c = firstChild + 1; c < lastChild; c += 1) {
+                if (priorities[c] < priorities[smallest]) {
+                    smallest = c;
+                }
+            }
+            if (priorities[smallest] >= priority) {
+                break;
+            }
+            place(i, items[smallest], priorities[smallest]);
+            i = smallest;
+        }
+        place(i, item, priority);
+    }
+
+    private void place(int i, T item, double priority) {
+        items[i] = item;
+        priorities[i] = priority;
+        position.put(item, i);
+    }
+}
@@ -0,0 +1,260 @@
+package bearmaps.proj2ab;
+
+import java.util.List;
+
+/**
+ * Point set over points whose x is a longitude and y a latitude, bucketed into a
+ * uniform grid over their bounding box. The grid has about POINTS_PER_CELL points
+ * per cell on average, with cells about as wide as they are tall on the ground.
+ * The points are counting-sorted by cell into flat arrays, row by row, so the
+ * points of cell c are the slots cellStart[c] .. cellStart[c + 1] - 1, and a row
+ * of cells is one contiguous run.
+ *
+ * nearest looks in the target's cell first (the nearest cell, if the target is
+ * off the grid) and then in rings of cells around it, one cell wider each time,
+ * until the closest point found so far is nearer than anything outside the cells
+ * searched could be. Distances are great-circle distances, like Point.distance,
+ * and are compared by their haversines, like PackedKDTree does. On the dense,
+ * bounded maps the server works with, a query reads a handful of cells that sit
+ * next to each other in memory.
+ *
+ * nearestIds answers a batch of queries at once, in parallel for large batches,
+ * going through them along a Hilbert curve so that consecutive queries read the
+ * same cells. Once built a grid never changes, and any number of threads may
+ * query it at once.
+ */
+public class GridPointSet implements PointSet {
+    /* points per cell the grid is sized for */
+    private static final double POINTS_PER_CELL = 2;
+
+    private final int n;
+    private final double[] xs;
+    private final double[] ys;
+    private final long[] ids;
+    private final double[] cosLats;  // cos of each latitude, for the haversine formula
+
+    private final int cols, rows;
+    private final double minX, minY;
+    private final double cellWidth, cellHeight;
+    /* the points of cell (col, row) are cellStart[row * cols + col] .. cellStart[row * cols + col + 1] - 1 */
+    private final int[] cellStart;
+
+    /** Builds a grid over POINTS, where each point's id is its index in the list. */
+    public GridPointSet(List<Point> points) {
+        this(xsOf(points), ysOf(points), null);
+    }
+
+    /**
+     * Builds a grid over the points (XS[i], YS[i]) with ids IDS[i]. IDS may be null
+     * to use the indices as ids. The arrays are not changed or kept.
+     */
+    public GridPointSet(double[] xs, double[] ys, long[] ids) {
+        n = xs.length;
+        double left = Double.POSITIVE_INFINITY, bottom = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY, top = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i += 1) {
+            left = Math.min(left, xs[i]);
+            bottom = Math.min(bottom, ys[i]);
+            right = Math.max(right, xs[i]);
+            top = Math.max(top, ys[i]);
+        }
+        if (n == 0) {
+            left = right = bottom = top = 0;
+        }
+
+        /* cells square on the ground: a degree of longitude is cos(lat) as long */
+        double width = Math.max((right - left) * Math.cos(Math.toRadians((bottom + top) / 2)), 1e-9);
+        double height = Math.max(top - bottom, 1e-9);
+        double side = Math.sqrt(width * height * POINTS_PER_CELL / Math.max(n, 1));
+        cols = (int) Math.max(1, Math.min(Math.ceil(width / side), 1 << 15));
+        rows = (int) Math.max(1, Math.min(Math.ceil(height / side), 1 << 15));
+        minX = left;
+        minY = bottom;
+        cellWidth = Math.max(right - left, 1e-9) / cols;
+        cellHeight = Math.max(top - bottom, 1e-9) / rows;
+
+        /* counting sort: count the points in each cell, then place them */
+        int[] cellOf = new int[n];
+        cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < n; i += 1) {
+            cellOf[i] = cell(col(xs[i]), row(ys[i]));
+            cellStart[cellOf[i] + 1] += 1;
+        }
+        for (int c = 0; c < cols * rows; c += 1) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = new int[cols * rows];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        this.xs = new double[n];
+        this.ys = new double[n];
+        this.ids = new long[n];
+        this.cosLats = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            int slot = next[cellOf[i]];
+            next[cellOf[i]] += 1;
+            this.xs[slot] = xs[i];
+            this.ys[slot] = ys[i];
+            this.ids[slot] = ids == null ? i : ids[i];
+            this.cosLats[slot] = Math.cos(Math.toRadians(ys[i]));
+        }
+    }
+
+    /** Returns the number of points in this grid. */
+    public int size() {
+        return n;
+    }
+
+    /** Returns the point closest to (X, Y), or null if the grid is empty. */
+    @Override
+    public Point nearest(double x, double y) {
+        int i = nearestIndex(x, y);
+        return i < 0 ? null : new Point(xs[i], ys[i]);
+    }
+
+    /** Returns the id of the point closest to (X, Y), or -1 if the grid is empty. */
+    public long nearestId(double x, double y) {
+        int i = nearestIndex(x, y);
+        return i < 0 ? -1 : ids[i];
+    }
+
+    /**
+     * Returns the ids of the points closest to each (XS[i], YS[i]), in the same
+     * order, with -1 for every query if the grid is empty. See HilbertCurve.forEach
+     * for the order the queries are answered in.
+     */
+    public long[] nearestIds(double[] xs, double[] ys) {
+        long[] result = new long[xs.length];
+        HilbertCurve.forEach(xs, ys, q -> result[q] = nearestId(xs[q], ys[q]));
+        return result;
+    }
+
+    private int nearestIndex(double x, double y) {
+        if (n == 0) {
+            return -1;
+        }
+        int col = col(x);
+        int row = row(y);
+        double cosLat = Math.cos(Math.toRadians(y));
+        int best = -1;
+        double bestHaversine = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ; ring += 1) {
+            int colLo = col - ring, colHi = col + ring;
+            int rowLo = row - ring, rowHi = row + ring;
+            for (int r = Math.max(rowLo, 0); r <= Math.min(rowHi, rows - 1); r += 1) {
+                boolean edgeRow = r == rowLo || r == rowHi;
+                /* rows on the ring's top and bottom edges are read whole, the others at their two ends */
+                int step = edgeRow ? 1 : Math.max(colHi - colLo, 1);
+                for (int c = colLo; c <= colHi; c += step) {
+                    if (c < 0 || c >= cols) {
+                        continue;
+                    }
+                    int cell = cell(c, r);
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i += 1) {
+                        double h = haversine(i, x, y, cosLat);
+                        if (h < bestHaversine) {
+                            best = i;
+                            bestHaversine = h;
+                        }
+                    }
+                }
+            }
+            if (colLo <= 0 && rowLo <= 0 && colHi >= cols - 1 && rowHi >= rows - 1) {
+                return best;
+            }
+            if (best >= 0 && bestHaversine <= outsideHaversine(x, y, cosLat, colLo, colHi, rowLo, rowHi)) {
+                return best;
+            }
+        }
+    }
+
+    /**
+     * Returns a lower bound on the haversine of the angle between (X, Y) and any
+     * point outside the cells COLLO .. COLHI by ROWLO .. ROWHI: the least over the
+     * sides of that block that have cells beyond them of the haversine to the
+     * meridian or parallel along the side.
+     */
+    private double outsideHaversine(double x, double y, double cosLat,
+                                    int colLo, int colHi, int rowLo, int rowHi) {
+        double bound = Double.POSITIVE_INFINITY;
+        if (colLo > 0) {
+            bound = Math.min(bound, meridianHaversine(x - (minX + colLo * cellWidth), cosLat));
+        }
+        if (colHi < cols - 1) {
+            bound = Math.min(bound, meridianHaversine(minX + (colHi + 1) * cellWidth - x, cosLat));
+        }
+        if (rowLo > 0) {
+            bound = Math.min(bound, parallelHaversine(y - (minY + rowLo * cellHeight)));
+        }
+        if (rowHi < rows - 1) {
+            bound = Math.min(bound, parallelHaversine(minY + (rowHi + 1) * cellHeight - y));
+        }
+        return bound;
+    }
+
+    /**
+     * Returns the haversine of the angle between a point and a meridian DIFFERENCE
+     * degrees of longitude east of it, or 0 if DIFFERENCE is not positive. A
+     * meridian dLon away is at the angle d with sin d = cos(lat) sin(dLon).
+     */
+    private static double meridianHaversine(double difference, double cosLat) {
+        if (difference <= 0) {
+            return 0;
+        }
+        double dLon = Math.min(Math.toRadians(difference), Math.PI / 2);
+        double s = cosLat * Math.sin(dLon);
+        double s2 = s * s;
+        /* (1 - cos d) / 2, written so that it does not cancel for small d */
+        return s2 / (2 * (1 + Math.sqrt(1 - s2)));
+    }
+
+    /** Returns the haversine of DIFFERENCE degrees of latitude, or 0 if it is not positive. */
+    private static double parallelHaversine(double difference) {
+        if (difference <= 0) {
+            return 0;
+        }
+        double sinHalf = Math.sin(Math.toRadians(difference) / 2.0);
+        return sinHalf * sinHalf;
+    }
+
+    /**
+     * Returns the haversine of the angle between point I and (X, Y), which grows
+     * with their great-circle distance. Computed the way Point.distance computes it.
+     */
+    private double haversine(int i, double x, double y, double cosLat) {
+        double halfDLat = Math.toRadians(ys[i] - y) / 2.0;
+        double halfDLon = Math.toRadians(xs[i] - x) / 2.0;
+        double sinLat = Math.sin(halfDLat);
+        double sinLon = Math.sin(halfDLon);
+        return sinLat * sinLat + cosLats[i] * cosLat * sinLon * sinLon;
+    }
+
+    /** Returns the column of longitude X, clamped to the grid. */
+    private int col(double x) {
+        return (int) Math.max(0, Math.min(cols - 1, Math.floor((x - minX) / cellWidth)));
+    }
+
+    /** Returns the row of latitude Y, clamped to the grid. */
+    private int row(double y) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cellHeight)));
+    }
+
+    private int cell(int col, int row) {
+        return row * cols + col;
+    }
+
+    private static double[] xsOf(List<Point> points) {
+        double[] xs = new double[points.size()];
+        for (int i = 0; i < xs.length; i += 1) {
+            xs[i] = points.get(i).getX();
+        }
+        return xs;
+    }
+
+    private static double[] ysOf(List<Point> points) {
+        double[] ys = new double[points.size()];
+        for (int i = 0; i < ys.length; i += 1) {
+            ys[i] = points.get(i).getY();
+        }
+        return ys;
+    }
+}
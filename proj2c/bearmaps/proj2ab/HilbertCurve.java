@@ -0,0 +1,99 @@
+package bearmaps.proj2ab;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Orders points along a Hilbert curve, a path through a square grid that visits
+ * every cell once and never jumps: cells close together along the curve are close
+ * together in the plane. Sorting work by it keeps what neighboring items read
+ * together in memory.
+ */
+final class HilbertCurve {
+    /* the grid has 2^ORDER cells a side, so a key takes 2 * ORDER bits */
+    private static final int ORDER = 15;
+    /* more items than this have their keys computed, and are visited, in parallel */
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    private HilbertCurve() {
+    }
+
+    /**
+     * Returns the indices of the points (XS[i], YS[i]) in the order of the cells
+     * they fall in along a Hilbert curve through a grid over their bounding box.
+     * Points in the same cell keep their order.
+     */
+    static int[] order(double[] xs, double[] ys) {
+        int n = xs.length;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i += 1) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        int cells = (1 << ORDER) - 1;
+        double left = minX;
+        double bottom = minY;
+        double scaleX = maxX > minX ? cells / (maxX - minX) : 0;
+        double scaleY = maxY > minY ? cells / (maxY - minY) : 0;
+
+        /* the key goes in the high bits and the index in the low ones */
+        long[] keys = new long[n];
+        IntStream range = IntStream.range(0, n);
+        if (n > PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(i -> {
+            int cellX = (int) ((xs[i] - left) * scaleX);
+            int cellY = (int) ((ys[i] - bottom) * scaleY);
+            keys[i] = (key(cellX, cellY) << 32) | i;
+        });
+        Arrays.parallelSort(keys);
+        int[] order = new int[n];
+        for (int s = 0; s < n; s += 1) {
+            order[s] = (int) keys[s];
+        }
+        return order;
+    }
+
+    /**
+     * Calls BODY on the index of each point (XS[i], YS[i]) in order(XS, YS). Large
+     * batches are split into runs of consecutive points along the curve, which are
+     * handed out across the common fork/join pool.
+     */
+    static void forEach(double[] xs, double[] ys, IntConsumer body) {
+        int[] order = order(xs, ys);
+        IntStream range = IntStream.range(0, order.length);
+        if (order.length > PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(s -> body.accept(order[s]));
+    }
+
+    /**
+     * Returns the position of the cell (X, Y) along a Hilbert curve through a grid
+     * of 2^ORDER cells a side.
+     */
+    static long key(int x, int y) {
+        long d = 0;
+        for (int side = 1 << (ORDER - 1); side > 0; side >>= 1) {
+            int rx = (x & side) > 0 ? 1 : 0;
+            int ry = (y & side) > 0 ? 1 : 0;
+            d += (long) side * side * ((3 * rx) ^ ry);
+            /* rotate the quadrant so the curve inside it runs the right way */
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                int swap = x;
+                x = y;
+                y = swap;
+            }
+        }
+        return d;
+    }
+}
@@ -0,0 +1,157 @@
+package bearmaps.proj2ab;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Min priority queue whose items are the ints 0 .. capacity - 1, for solvers that
+ * number their vertices densely. This is the int-keyed counterpart of DaryHeapMinPQ:
+ * a d-ary heap (4-ary by default) on parallel primitive arrays, where the item to
+ * heap slot index is a plain int array instead of a HashMap, so no boxing or hashing
+ * happens on any operation.
+ */
+public class IndexedIntMinPQ {
+    private static final int DEFAULT_ARITY = 4;
+
+    private final int arity;
+    private final int[] heap;           // item stored in each heap slot
+    private final double[] priorities;  // priority of the item in each heap slot
+    private final int[] position;       // heap slot of each item, or -1 if not in the PQ
+    private int size;
+
+    public IndexedIntMinPQ(int capacity) {
+        this(capacity, DEFAULT_ARITY);
+    }
+
+    public IndexedIntMinPQ(int capacity, int arity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("Arity must be at least 2, was " + arity);
+        }
+        this.arity = arity;
+        heap = new int[capacity];
+        priorities = new double[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+        size = 0;
+    }
+
+    /* Adds an item with the given priority value. Throws an
+     * IllegalArgumentException if item is already present. */
+    public void add(int item, double priority) {
+        if (contains(item)) {
+            throw new IllegalArgumentException("Already contains " + item);
+        }
+        size += 1;
+        swim(size - 1, item, priority);
+    }
+
+    /* Returns true if the PQ contains the given item. */
+    public boolean contains(int item) {
+        return position[item] >= 0;
+    }
+
+    /* Returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public int getSmallest() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return heap[0];
+    }
+
+    /* Returns the priority of the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public double smallestPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return priorities[0];
+    }
+
+    /* Removes and returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public int removeSmallest() {
+        int smallest = getSmallest();
+        position[smallest] = -1;
+        size -= 1;
+        if (size > 0) {
+            sink(0, heap[size], priorities[size]);
+        }
+        return smallest;
+    }
+
+    /* Changes the priority of the given item. Throws IllegalArgumentException if the item
+     * doesn't exist. */
+    public void changePriority(int item, double priority) {
+        if (!contains(item)) {
+            throw new IllegalArgumentException(item + " not in PQ.");
+        }
+        int i = position[item];
+        if (priority < priorities[i]) {
+            swim(i, item, priority);
+        } else {
+            sink(i, item, priority);
+        }
+    }
+
+    /* Returns the priority of the given item. Throws IllegalArgumentException if the item
+     * doesn't exist. */
+    public double priority(int item) {
+        if (!contains(item)) {
+            throw new IllegalArgumentException(item + " not in PQ.");
+        }
+        return priorities[position[item]];
+    }
+
+    /* Returns the number of items in the PQ. */
+    public int size() {
+        return size;
+    }
+
+    /* Removes all items. Takes time proportional to the current size, not the capacity. */
+    public void clear() {
+        for (int i = 0; i < size; i += 1) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /** Moves ITEM up from the empty slot I until its parent is no larger. */
+    private void swim(int i, int item, double priority) {
+        while (i > 0) {
+            int parent = (i - 1) / arity;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            place(i, heap[parent], priorities[parent]);
+            i = parent;
+        }
+        place(i, item, priority);
+    }
+
+    /** Moves ITEM down from the empty slot I until none of its children are smaller. */
+    private void sink(int i, int item, double priority) {
+        while (true) {
+            int firstChild = i * arity + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int lastChild = Math.min(firstChild + arity, size);
+            int smallest = firstChild;
+            for (int c = firstChild + 1; c < lastChild; c += 1) {
+                if (priorities[c] < priorities[smallest]) {
+                    smallest = c;
+                }
+            }
+            if (priorities[smallest] >= priority) {
+                break;
+            }
+            place(i, heap[smallest], priorities[smallest]);
+            i = smallest;
+        }
+        place(i, item, priority);
+    }
+
+    private void place(int i, int item, double priority) {
+        heap[i] = item;
+        priorities[i] = priority;
+        position[item] = i;
+    }
+}
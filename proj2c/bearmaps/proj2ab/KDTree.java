@@ -7,18 +7,55 @@ import java.util.Comparator;
 import java.util.List;
 
 
-public class KDTree implements Comparator {
+/**
+ * 2-d tree over points whose x is a longitude and y a latitude. The tree is
+ * only changed by the constructor and addPoint; nearest keeps its search state
+ * in a per-call Search, so once the tree is built any number of threads may call
+ * nearest at the same time.
+ *
+ * By default distances are great-circle distances in miles, like Point.distance,
+ * and a subtree is skipped when the meridian or parallel it is split off by is at
+ * least the best distance so far from the target. A tree made with projected set
+ * instead projects every point once, when it is added, onto a plane in miles
+ * (longitudes scaled by the cosine of the middle latitude of the points the tree
+ * was built with), and searches with squared distances on that plane, so visiting
+ * a node takes a few multiplications and no trigonometry. Over a city the
+ * projection is off by well under a percent, so the projected nearest point is
+ * the closest one or a near tie with it.
+ */
+public class KDTree implements Comparator, PointSet {
+
+    static final int X_AXIS = 0;
+    static final int Y_AXIS = 1;
+    /* the radius Point.distance uses */
+    private static final double EARTH_RADIUS_MILES = 3963;
 
     PointNode root;
-
-    // used only for nearest
-    double bestDistance;
-    Point closetPoint;
+    /* whether nearest searches on the projected coordinates */
+    private final boolean projected;
+    /* miles per degree of longitude on the plane points are projected onto */
+    private final double milesPerDegreeX;
 
     public KDTree(List<Point> points) {
+        this(points, false);
+    }
+
+    /**
+     * Builds a tree over POINTS that searches on projected coordinates if PROJECTED
+     * is set, and on great-circle distances otherwise.
+     */
+    public KDTree(List<Point> points, boolean projected) {
+        this.projected = projected;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Point p : points) {
+            minY = Math.min(minY, p.getY());
+            maxY = Math.max(maxY, p.getY());
+        }
+        milesPerDegreeX = Math.toRadians(EARTH_RADIUS_MILES) * Math.cos(Math.toRadians((minY + maxY) / 2));
 
         List<Point> pointsList = new ArrayList<>(points);   // because immutable
-        root = new PointNode(pointsList.get(0), "xRef");
+        root = project(new PointNode(pointsList.get(0), X_AXIS));
         pointsList.remove(0);
 
         // making the tree:
@@ -26,66 +63,120 @@ public class KDTree implements Comparator {
             addPoint(p);
     }
 
+    /** Sets the coordinates of NODE on this tree's plane, and returns NODE. */
+    private PointNode project(PointNode node) {
+        node.px = node.x * milesPerDegreeX;
+        node.py = Math.toRadians(node.y) * EARTH_RADIUS_MILES;
+        return node;
+    }
+
+    /**
+     * The state of one nearest query: the target and the best point so far. The
+     * distances are in miles, or squared miles on the plane for a projected search.
+     */
+    private static class Search {
+        final double x, y;
+        final double px, py;
+        final double cosLat;
+        PointNode best;
+        double bestDistance;
+
+        Search(double x, double y, double px, double py) {
+            this.x = x;
+            this.y = y;
+            this.px = px;
+            this.py = py;
+            this.cosLat = Math.cos(Math.toRadians(y));
+        }
+    }
+
+    @Override
     public Point nearest(double x, double y) {
 
-        Point destination = new Point(x, y);
-        closetPoint = root.point;
-        bestDistance = Math.sqrt(Point.distance(root.point, destination));
-        nearestHelper(root, destination);
+        Search search = new Search(x, y, x * milesPerDegreeX, Math.toRadians(y) * EARTH_RADIUS_MILES);
+        search.best = root;
+        if (projected) {
+            search.bestDistance = projectedDistance(root, search);
+            nearestProjected(root, search);
+        } else {
+            search.bestDistance = Point.distance(root.x, x, root.y, y);
+            nearestHelper(root, search);
+        }
 
-        return closetPoint;
+        return search.best.point;
     }
 
-    private void nearestHelper(PointNode current, Point destination) {
+    private static void nearestHelper(PointNode current, Search search) {
 
         // 0. if current == 0 -> means we reach null branch, return
         if (current == null)
             return;
 
-        Point nearest;
-
         // 1. compute distance:
-        double distance = Math.sqrt(Point.distance(current.point, destination));
-        if (distance < bestDistance) {
-            closetPoint = current.point;
-            bestDistance = distance;
+        double distance = Point.distance(current.x, search.x, current.y, search.y);
+        if (distance < search.bestDistance) {
+            search.best = current;
+            search.bestDistance = distance;
         }
 
-        // 2. check best side:
-        String bestSide;
-        int value = compare(current, new PointNode(destination));
-        if (value >= 0) {
-            bestSide = "left";
-            nearestHelper(current.left, destination);
-        }
-        else {
-            bestSide = "right";
-            nearestHelper(current.right, destination);
+        // 2. check best side, left if current is the target or greater on its axis:
+        boolean goLeft = goLeft(current, search);
+        nearestHelper(goLeft ? current.left : current.right, search);
+
+        // 3. check bad side, if the split line is closer than the best point:
+        if (splitDistance(current, search) < search.bestDistance)
+            nearestHelper(goLeft ? current.right : current.left, search);
+    }
+
+    private static void nearestProjected(PointNode current, Search search) {
+        if (current == null)
+            return;
+
+        double distance = projectedDistance(current, search);
+        if (distance < search.bestDistance) {
+            search.best = current;
+            search.bestDistance = distance;
         }
 
-        // 3a. see if we need to check bad side
-        double checker;
-        if(current.reference.equals("xRef"))
-            checker = Math.abs(current.getX() - destination.getX());
-        else
-            checker = Math.abs(current.getY() - destination.getY());
+        boolean goLeft = goLeft(current, search);
+        nearestProjected(goLeft ? current.left : current.right, search);
 
-        // 3b. check bad side?
-        if (checker < bestDistance )
-            computeBadSide(bestSide, current, destination);
+        double difference = current.axis == X_AXIS ? current.px - search.px : current.py - search.py;
+        if (difference * difference < search.bestDistance)
+            nearestProjected(goLeft ? current.right : current.left, search);
+    }
 
+    /** Returns whether the target is searched for left of CURRENT first. */
+    private static boolean goLeft(PointNode current, Search search) {
+        boolean sameAsTarget = Double.compare(current.x, search.x) == 0
+                && Double.compare(current.y, search.y) == 0;
+        double target = current.axis == X_AXIS ? search.x : search.y;
+        return sameAsTarget || current.coordinate() > target;
     }
 
-    private void computeBadSide(String bestSide, PointNode current, Point destination) {
-        if (bestSide.equals("left")) {
-            nearestHelper(current.right, destination);
-            return;
+    /** Returns the squared distance on the plane between NODE and the target. */
+    private static double projectedDistance(PointNode node, Search search) {
+        double dx = node.px - search.px;
+        double dy = node.py - search.py;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Returns the great-circle distance in miles from the target to the meridian or
+     * parallel through CURRENT that its subtrees are split by. A meridian dLon away
+     * is at the angle d with sin d = cos(lat) sin(dLon); a parallel is at the
+     * difference in latitude.
+     */
+    private static double splitDistance(PointNode current, Search search) {
+        if (current.axis == Y_AXIS) {
+            return Math.abs(Math.toRadians(current.y - search.y)) * EARTH_RADIUS_MILES;
         }
-        nearestHelper(current.left, destination);
+        double dLon = Math.min(Math.abs(Math.toRadians(current.x - search.x)), Math.PI / 2);
+        return Math.asin(search.cosLat * Math.sin(dLon)) * EARTH_RADIUS_MILES;
     }
 
     public void addPoint(Point p) {
-        PointNode newPoint = new PointNode(p);
+        PointNode newPoint = project(new PointNode(p));
         addPointHelper(root, newPoint);
     }
 
@@ -105,7 +196,7 @@ public class KDTree implements Comparator {
         if (result == 1) {
             if (current.getLeft() == null) {
                 current.setLeft(descendant);
-                setRefOppositeFromParent(current, descendant);
+                setAxisOppositeFromParent(current, descendant);
                 descendant.setParent(current);
             } else {
                 addPointHelper(current.left, descendant);
@@ -113,7 +204,7 @@ public class KDTree implements Comparator {
         } else {
             if (current.getRight() == null) {
                 current.setRight(descendant);
-                setRefOppositeFromParent(current, descendant);
+                setAxisOppositeFromParent(current, descendant);
                 descendant.setParent(current);
             } else {
                 addPointHelper(current.right, descendant);
@@ -135,7 +226,7 @@ public class KDTree implements Comparator {
         descendant.setRight(current.getRight());
         descendant.setLeft(current.getLeft());
         descendant.setParent(parent);
-        setRefOppositeFromParent(parent, descendant);
+        setAxisOppositeFromParent(parent, descendant);
 
         if (current.getRight() != null) {
             current.getRight().setParent(descendant);
@@ -148,11 +239,8 @@ public class KDTree implements Comparator {
         current.setParent(null);
     }
 
-    private void setRefOppositeFromParent(PointNode current, PointNode descendant) {
-        if (current.getReference().equals("xRef"))
-            descendant.setReference("yRef");
-        else
-            descendant.setReference("xRef");
+    private void setAxisOppositeFromParent(PointNode current, PointNode descendant) {
+        descendant.setAxis(current.getAxis() == X_AXIS ? Y_AXIS : X_AXIS);
     }
 
     @Override
@@ -166,39 +254,49 @@ public class KDTree implements Comparator {
         return node1.greater(node2) ? 1 : -1;
     }
 
-    public class PointNode {
+    /** A node of the tree; x and y are copied out of point so searches need not follow it. */
+    public static class PointNode {
 
-        Point point;
-        String reference;   // xRef or yRef
+        final Point point;
+        final double x, y;
+        double px, py;  // x and y projected by the tree, in miles
+        int axis;   // X_AXIS or Y_AXIS
         PointNode left, right, parent;
 
         public PointNode(Point p) {
-            this(p, null);
+            this(p, X_AXIS);
         }
 
-        public PointNode(Point p, String reference) {
+        public PointNode(Point p, int axis) {
             this.point = p;
-            this.reference = reference;
+            this.x = p.getX();
+            this.y = p.getY();
+            this.axis = axis;
         }
 
         public boolean greater(PointNode p2) {
-            if(this.reference == "xRef") {
-                return this.getX() > p2.getX();
+            if (axis == X_AXIS) {
+                return this.x > p2.x;
             }
 
-            return this.getY() > p2.getY();
+            return this.y > p2.y;
+        }
+
+        /** Returns the coordinate this node splits on. */
+        double coordinate() {
+            return axis == X_AXIS ? x : y;
         }
 
         // setters:
-        public void setReference(String ref) {this.reference = ref;}
+        public void setAxis(int axis) {this.axis = axis;}
         public void setLeft(PointNode p) {this.left = p;}
         public void setRight(PointNode p) {this.right = p;}
         public void setParent(PointNode p) {this.parent = p;}
 
         // getters:
-        public String getReference() {return this.reference;}
-        public double getX() {return point.getX();}
-        public double getY() {return point.getY();}
+        public int getAxis() {return this.axis;}
+        public double getX() {return x;}
+        public double getY() {return y;}
         public PointNode getLeft() {return this.left;}
         public PointNode getRight() {return this.right;}
         public PointNode getParent() {return this.parent;}
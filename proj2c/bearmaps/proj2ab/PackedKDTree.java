@@ -0,0 +1,460 @@
+package bearmaps.proj2ab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 2-d tree over points whose x is a longitude and y a latitude, built in one go
+ * from all its points and laid out without pointers. Each subtree is split at
+ * the median of its points along the axis of its depth (x at even depths, y at
+ * odd ones), picked so that the tree is left-balanced: every level is full
+ * except the last, which is filled from the left. Such a tree is stored in
+ * breadth-first order in flat arrays, the children of node i at 2i + 1 and 2i + 2,
+ * so its depth is floor(lg n) + 1 whatever order the points come in, and the top
+ * levels every search passes through share a few cache lines.
+ *
+ * Each point carries a long id, such as the OSM id of the vertex it stands for,
+ * which nearestId returns so callers need no map from Point back to their data.
+ * Distances are great-circle distances, like Point.distance: a subtree is
+ * skipped when the meridian or parallel it is split off by is farther from the
+ * target than the best point so far, so nearest always finds the closest point.
+ * kNearest prunes the same way against the farthest of the best k points so far,
+ * kept in a bounded max-heap, and withinRadius against the radius. Apart from
+ * one object per query for its state and result, queries allocate nothing.
+ *
+ * Large trees are built in parallel: the two halves of a split are independent,
+ * so they are built as fork/join tasks. Once built a tree never changes, and any
+ * number of threads may query it at once.
+ */
+public class PackedKDTree implements PointSet {
+    /* subtrees with more points than this are built as separate fork/join tasks */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+    /* the radius Point.distance uses */
+    private static final double EARTH_RADIUS_MILES = 3963;
+
+    private final int n;
+    private final double[] xs;
+    private final double[] ys;
+    private final long[] ids;
+    private final double[] cosLats;  // cos of each latitude, for the haversine formula
+
+    /** Builds a tree over POINTS, where each point's id is its index in the list. */
+    public PackedKDTree(List<Point> points) {
+        this(xsOf(points), ysOf(points), null);
+    }
+
+    /**
+     * Builds a tree over the points (XS[i], YS[i]) with ids IDS[i]. IDS may be null
+     * to use the indices as ids. The arrays are not changed or kept.
+     */
+    public PackedKDTree(double[] xs, double[] ys, long[] ids) {
+        n = xs.length;
+        this.xs = new double[n];
+        this.ys = new double[n];
+        this.ids = new long[n];
+        this.cosLats = new double[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = i;
+        }
+        Build root = new Build(xs, ys, ids, order, 0, n, 0, 0);
+        if (n > PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(root);
+        } else {
+            root.compute();
+        }
+    }
+
+    /** Returns the number of points in this tree. */
+    public int size() {
+        return n;
+    }
+
+    /** Returns the point closest to (X, Y), or null if the tree is empty. */
+    @Override
+    public Point nearest(double x, double y) {
+        int i = nearestIndex(x, y);
+        return i < 0 ? null : new Point(xs[i], ys[i]);
+    }
+
+    /** Returns the id of the point closest to (X, Y), or -1 if the tree is empty. */
+    public long nearestId(double x, double y) {
+        int i = nearestIndex(x, y);
+        return i < 0 ? -1 : ids[i];
+    }
+
+    /**
+     * Returns the ids of the points closest to each (XS[i], YS[i]), in the same
+     * order, with -1 for every query if the tree is empty. The queries are answered
+     * along a Hilbert curve through them, so consecutive searches mostly walk the
+     * same nodes, and large batches are split across the common fork/join pool;
+     * see HilbertCurve.forEach.
+     */
+    public long[] nearestIds(double[] xs, double[] ys) {
+        long[] result = new long[xs.length];
+        HilbertCurve.forEach(xs, ys, q -> result[q] = nearestId(xs[q], ys[q]));
+        return result;
+    }
+
+    private int nearestIndex(double x, double y) {
+        if (n == 0) {
+            return -1;
+        }
+        Search search = new Search(x, y);
+        nearest(0, 0, search);
+        return search.best;
+    }
+
+    /** The state of one nearest query: the target and the best point so far. */
+    private static class Search {
+        final double x, y;
+        final double cosLat;
+        int best = -1;
+        double bestHaversine = Double.POSITIVE_INFINITY;
+
+        Search(double x, double y) {
+            this.x = x;
+            this.y = y;
+            this.cosLat = Math.cos(Math.toRadians(y));
+        }
+    }
+
+    private void nearest(int node, int depth, Search search) {
+        if (node >= n) {
+            return;
+        }
+        double h = haversine(node, search);
+        if (h < search.bestHaversine) {
+            search.best = node;
+            search.bestHaversine = h;
+        }
+
+        boolean xAxis = (depth & 1) == 0;
+        double difference = xAxis ? search.x - xs[node] : search.y - ys[node];
+        int near = difference < 0 ? 2 * node + 1 : 2 * node + 2;
+        int far = difference < 0 ? 2 * node + 2 : 2 * node + 1;
+        nearest(near, depth + 1, search);
+        if (far < n && splitHaversine(xAxis, difference, search) < search.bestHaversine) {
+            nearest(far, depth + 1, search);
+        }
+    }
+
+    /**
+     * Returns the K points closest to (X, Y), closest first, or all points if there
+     * are fewer than K.
+     */
+    public List<Point> kNearest(double x, double y, int k) {
+        return points(kNearestIndices(x, y, k));
+    }
+
+    /** Returns the ids of kNearest(X, Y, K), in the same order. */
+    public long[] kNearestIds(double x, double y, int k) {
+        return idsOf(kNearestIndices(x, y, k));
+    }
+
+    /** Returns the points at most MILES from (X, Y), closest first. */
+    public List<Point> withinRadius(double x, double y, double miles) {
+        return points(withinRadiusIndices(x, y, miles));
+    }
+
+    /** Returns the ids of withinRadius(X, Y, MILES), in the same order. */
+    public long[] withinRadiusIds(double x, double y, double miles) {
+        return idsOf(withinRadiusIndices(x, y, miles));
+    }
+
+    private Collect kNearestIndices(double x, double y, int k) {
+        Collect collect = new Collect(x, y, Math.max(0, Math.min(k, n)), Double.POSITIVE_INFINITY);
+        if (collect.capacity > 0) {
+            collect(0, 0, collect);
+        }
+        collect.sort();
+        return collect;
+    }
+
+    private Collect withinRadiusIndices(double x, double y, double miles) {
+        double angle = Math.min(miles / EARTH_RADIUS_MILES, Math.PI);
+        double sinHalf = Math.sin(angle / 2.0);
+        Collect collect = new Collect(x, y, -1, Math.nextUp(sinHalf * sinHalf));
+        if (n > 0 && miles >= 0) {
+            collect(0, 0, collect);
+        }
+        collect.heapify();
+        collect.sort();
+        return collect;
+    }
+
+    /**
+     * The state of a kNearest or withinRadius query: the points found so far and
+     * their haversines, kept in parallel arrays. A kNearest query keeps the best
+     * CAPACITY points found so far in a max-heap, whose top is the bound a point
+     * must beat; a withinRadius query (CAPACITY -1) keeps every point under a fixed
+     * bound, in a list that grows as needed.
+     */
+    private static class Collect extends Search {
+        final int capacity;
+        int[] found;
+        double[] foundHaversines;
+        int size;
+        double bound;
+
+        Collect(double x, double y, int capacity, double bound) {
+            super(x, y);
+            this.capacity = capacity;
+            this.bound = bound;
+            int length = capacity >= 0 ? capacity : 16;
+            found = new int[length];
+            foundHaversines = new double[length];
+        }
+
+        void offer(int node, double h) {
+            if (h >= bound) {
+                return;
+            }
+            if (capacity < 0) {
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, size * 2);
+                    foundHaversines = Arrays.copyOf(foundHaversines, size * 2);
+                }
+                found[size] = node;
+                foundHaversines[size] = h;
+                size += 1;
+            } else if (size < capacity) {
+                found[size] = node;
+                foundHaversines[size] = h;
+                size += 1;
+                swim(size - 1);
+                if (size == capacity) {
+                    bound = foundHaversines[0];
+                }
+            } else {
+                found[0] = node;
+                foundHaversines[0] = h;
+                sink(0, size);
+                bound = foundHaversines[0];
+            }
+        }
+
+        /* Makes the found points a max-heap on their haversines. */
+        void heapify() {
+            for (int i = size / 2 - 1; i >= 0; i -= 1) {
+                sink(i, size);
+            }
+        }
+
+        /* Sorts a heap of found points, closest first. */
+        void sort() {
+            for (int end = size - 1; end > 0; end -= 1) {
+                swap(0, end);
+                sink(0, end);
+            }
+        }
+
+        private void swim(int i) {
+            while (i > 0 && foundHaversines[(i - 1) / 2] < foundHaversines[i]) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void sink(int i, int end) {
+            while (2 * i + 1 < end) {
+                int child = 2 * i + 1;
+                if (child + 1 < end && foundHaversines[child + 1] > foundHaversines[child]) {
+                    child += 1;
+                }
+                if (foundHaversines[i] >= foundHaversines[child]) {
+                    return;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int node = found[i];
+            found[i] = found[j];
+            found[j] = node;
+            double h = foundHaversines[i];
+            foundHaversines[i] = foundHaversines[j];
+            foundHaversines[j] = h;
+        }
+    }
+
+    private void collect(int node, int depth, Collect collect) {
+        if (node >= n) {
+            return;
+        }
+        collect.offer(node, haversine(node, collect));
+
+        boolean xAxis = (depth & 1) == 0;
+        double difference = xAxis ? collect.x - xs[node] : collect.y - ys[node];
+        int near = difference < 0 ? 2 * node + 1 : 2 * node + 2;
+        int far = difference < 0 ? 2 * node + 2 : 2 * node + 1;
+        collect(near, depth + 1, collect);
+        if (far < n && splitHaversine(xAxis, difference, collect) < collect.bound) {
+            collect(far, depth + 1, collect);
+        }
+    }
+
+    private List<Point> points(Collect collect) {
+        List<Point> points = new ArrayList<>(collect.size);
+        for (int i = 0; i < collect.size; i += 1) {
+            points.add(new Point(xs[collect.found[i]], ys[collect.found[i]]));
+        }
+        return points;
+    }
+
+    private long[] idsOf(Collect collect) {
+        long[] result = new long[collect.size];
+        for (int i = 0; i < collect.size; i += 1) {
+            result[i] = ids[collect.found[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the haversine of the angle between NODE and the target, which grows
+     * with their great-circle distance. Computed the way Point.distance computes it.
+     */
+    private double haversine(int node, Search search) {
+        double halfDLat = Math.toRadians(ys[node] - search.y) / 2.0;
+        double halfDLon = Math.toRadians(xs[node] - search.x) / 2.0;
+        double sinLat = Math.sin(halfDLat);
+        double sinLon = Math.sin(halfDLon);
+        return sinLat * sinLat + cosLats[node] * search.cosLat * sinLon * sinLon;
+    }
+
+    /**
+     * Returns the haversine of the angle between the target and the closest point
+     * of the meridian (if XAXIS) or parallel that splits a node, where DIFFERENCE is
+     * the target's coordinate minus the node's. A point on a meridian dLon away is
+     * at least the angle d with sin d = cos(lat) sin(dLon) away; a point on a
+     * parallel is at least the difference in latitude away.
+     */
+    private static double splitHaversine(boolean xAxis, double difference, Search search) {
+        if (!xAxis) {
+            double sinHalf = Math.sin(Math.toRadians(difference) / 2.0);
+            return sinHalf * sinHalf;
+        }
+        double dLon = Math.min(Math.abs(Math.toRadians(difference)), Math.PI / 2);
+        double s = search.cosLat * Math.sin(dLon);
+        double s2 = s * s;
+        /* (1 - cos d) / 2, written so that it does not cancel for small d */
+        return s2 / (2 * (1 + Math.sqrt(1 - s2)));
+    }
+
+    /** Builds the subtree of points ORDER[lo .. hi - 1] at NODE. */
+    @SuppressWarnings("serial")
+    private class Build extends RecursiveAction {
+        private final double[] srcX, srcY;
+        private final long[] srcIds;
+        private final int[] order;
+        private final int lo, hi, node, depth;
+
+        Build(double[] srcX, double[] srcY, long[] srcIds, int[] order,
+              int lo, int hi, int node, int depth) {
+            this.srcX = srcX;
+            this.srcY = srcY;
+            this.srcIds = srcIds;
+            this.order = order;
+            this.lo = lo;
+            this.hi = hi;
+            this.node = node;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            build(lo, hi, node, depth);
+        }
+
+        private void build(int lo, int hi, int node, int depth) {
+            if (lo >= hi) {
+                return;
+            }
+            int median = lo + leftSize(hi - lo);
+            select(order, (depth & 1) == 0 ? srcX : srcY, lo, hi, median);
+            int p = order[median];
+            xs[node] = srcX[p];
+            ys[node] = srcY[p];
+            ids[node] = srcIds == null ? p : srcIds[p];
+            cosLats[node] = Math.cos(Math.toRadians(srcY[p]));
+
+            if (hi - lo > PARALLEL_THRESHOLD) {
+                invokeAll(new Build(srcX, srcY, srcIds, order, lo, median, 2 * node + 1, depth + 1),
+                        new Build(srcX, srcY, srcIds, order, median + 1, hi, 2 * node + 2, depth + 1));
+            } else {
+                build(lo, median, 2 * node + 1, depth + 1);
+                build(median + 1, hi, 2 * node + 2, depth + 1);
+            }
+        }
+    }
+
+    /** Returns the size of the left subtree of a left-balanced tree of SIZE nodes. */
+    static int leftSize(int size) {
+        if (size <= 1) {
+            return 0;
+        }
+        int height = 31 - Integer.numberOfLeadingZeros(size);  // levels above the last
+        int lastLevel = size - ((1 << height) - 1);
+        int half = 1 << (height - 1);  // the last level's slots under the left child
+        return half - 1 + Math.min(lastLevel, half);
+    }
+
+    /**
+     * Rearranges ORDER[lo .. hi - 1] so that ORDER[k] holds the point with the
+     * k-th smallest KEY, with no larger keys before it and no smaller ones after.
+     */
+    private static void select(int[] order, double[] key, int lo, int hi, int k) {
+        hi -= 1;
+        while (hi > lo) {
+            double a = key[order[lo]];
+            double b = key[order[(lo + hi) >>> 1]];
+            double c = key[order[hi]];
+            double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[order[i]] < pivot) {
+                    i += 1;
+                }
+                while (key[order[j]] > pivot) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static double[] xsOf(List<Point> points) {
+        double[] xs = new double[points.size()];
+        for (int i = 0; i < xs.length; i += 1) {
+            xs[i] = points.get(i).getX();
+        }
+        return xs;
+    }
+
+    private static double[] ysOf(List<Point> points) {
+        double[] ys = new double[points.size()];
+        for (int i = 0; i < ys.length; i += 1) {
+            ys[i] = points.get(i).getY();
+        }
+        return ys;
+    }
+}
@@ -0,0 +1,293 @@
+package bearmaps.proj2ab;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * R-tree over line segments whose x is a longitude and y a latitude, built in
+ * one go from all its segments ("packed") and laid out without pointers. The
+ * segments are sorted by the position of their midpoints along a Hilbert curve,
+ * so runs of consecutive segments lie close together, and every run of
+ * NODE_SIZE segments becomes a leaf node. The nodes of each level are grouped
+ * the same way into the level above, up to a single root. All nodes sit in flat
+ * arrays, level after level, and the children of a node are the slots
+ * firstChild[p] .. childEnd[p] - 1 of the level below.
+ *
+ * nearest finds the segment closest to a target with a best-first search: it
+ * keeps a heap of nodes and segments ordered by how far the target is from
+ * their bounding box, or from the segment itself, and the first segment taken
+ * off the heap is the closest. Distances are measured in a local projection
+ * that scales longitudes by the cosine of the target's latitude, which differs
+ * from the great-circle distance by far less than a road's width over the few
+ * miles a map spans.
+ *
+ * Sorting the segments and computing the bounding boxes of each level are done
+ * in parallel. Once built a tree never changes, and any number of threads may
+ * query it at once; a query allocates only its heap.
+ */
+public class PackedRTree {
+    /* the most children a node has */
+    private static final int NODE_SIZE = 16;
+    /* levels with fewer nodes than this have their boxes computed by one thread */
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+    /* the radius Point.distance uses */
+    private static final double EARTH_RADIUS_MILES = 3963;
+
+    private final int n;
+    /* the segments in Hilbert order; segment i of the constructor is at position positionOf[i] */
+    private final double[] x1s, y1s, x2s, y2s;
+    private final int[] segmentAt;
+    private final int[] positionOf;
+
+    /* the nodes above the segments; node p's children are firstChild[p] .. childEnd[p] - 1 */
+    private final double[] minXs, minYs, maxXs, maxYs;
+    private final int[] firstChild;
+    private final int[] childEnd;
+    /* nodes 0 .. numLeaves - 1 are the leaves, whose children are segments */
+    private final int numLeaves;
+    private final int root;
+
+    /**
+     * Builds a tree over the segments from (X1S[i], Y1S[i]) to (X2S[i], Y2S[i]).
+     * The arrays are not changed or kept.
+     */
+    public PackedRTree(double[] x1s, double[] y1s, double[] x2s, double[] y2s) {
+        n = x1s.length;
+        this.x1s = new double[n];
+        this.y1s = new double[n];
+        this.x2s = new double[n];
+        this.y2s = new double[n];
+        segmentAt = new int[n];
+        positionOf = new int[n];
+
+        sortByHilbertKey(x1s, y1s, x2s, y2s);
+
+        int numNodes = 0;
+        int leaves = (n + NODE_SIZE - 1) / NODE_SIZE;
+        for (int count = leaves; count > 0; count = count == 1 ? 0 : (count + NODE_SIZE - 1) / NODE_SIZE) {
+            numNodes += count;
+        }
+        minXs = new double[numNodes];
+        minYs = new double[numNodes];
+        maxXs = new double[numNodes];
+        maxYs = new double[numNodes];
+        firstChild = new int[numNodes];
+        childEnd = new int[numNodes];
+        numLeaves = leaves;
+
+        /* the leaves, over the segments */
+        forEach(leaves, p -> {
+            int first = p * NODE_SIZE;
+            int end = Math.min(first + NODE_SIZE, n);
+            firstChild[p] = first;
+            childEnd[p] = end;
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int s = first; s < end; s += 1) {
+                minX = Math.min(minX, Math.min(this.x1s[s], this.x2s[s]));
+                minY = Math.min(minY, Math.min(this.y1s[s], this.y2s[s]));
+                maxX = Math.max(maxX, Math.max(this.x1s[s], this.x2s[s]));
+                maxY = Math.max(maxY, Math.max(this.y1s[s], this.y2s[s]));
+            }
+            minXs[p] = minX;
+            minYs[p] = minY;
+            maxXs[p] = maxX;
+            maxYs[p] = maxY;
+        });
+
+        /* each level above groups the one below, until one node is left */
+        int levelStart = 0;
+        int levelEnd = leaves;
+        while (levelEnd - levelStart > 1) {
+            int below = levelStart;
+            int belowEnd = levelEnd;
+            int count = (belowEnd - below + NODE_SIZE - 1) / NODE_SIZE;
+            forEach(count, i -> {
+                int p = belowEnd + i;
+                int first = below + i * NODE_SIZE;
+                int end = Math.min(first + NODE_SIZE, belowEnd);
+                firstChild[p] = first;
+                childEnd[p] = end;
+                double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for (int c = first; c < end; c += 1) {
+                    minX = Math.min(minX, minXs[c]);
+                    minY = Math.min(minY, minYs[c]);
+                    maxX = Math.max(maxX, maxXs[c]);
+                    maxY = Math.max(maxY, maxYs[c]);
+                }
+                minXs[p] = minX;
+                minYs[p] = minY;
+                maxXs[p] = maxX;
+                maxYs[p] = maxY;
+            });
+            levelStart = belowEnd;
+            levelEnd = belowEnd + count;
+        }
+        root = numNodes - 1;
+    }
+
+    /** Returns the number of segments in this tree. */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Returns the index, as given to the constructor, of the segment closest to
+     * (X, Y), or -1 if the tree is empty. Ties go to any of the closest segments.
+     */
+    public int nearest(double x, double y) {
+        if (n == 0) {
+            return -1;
+        }
+        double scale = Math.cos(Math.toRadians(y));
+        Heap heap = new Heap();
+        heap.add(boxDistance(root, x, y, scale), root);
+        while (heap.size > 0) {
+            int item = heap.items[0];
+            heap.removeSmallest();
+            if (item < 0) {
+                return segmentAt[-item - 1];
+            }
+            boolean leaf = item < numLeaves;
+            for (int c = firstChild[item]; c < childEnd[item]; c += 1) {
+                if (leaf) {
+                    heap.add(segmentDistance(c, x, y, scale), -c - 1);
+                } else {
+                    heap.add(boxDistance(c, x, y, scale), c);
+                }
+            }
+        }
+        throw new IllegalStateException("Ran out of nodes before reaching a segment");
+    }
+
+    /**
+     * Returns where the point of SEGMENT closest to (X, Y) lies on it: 0 at its
+     * first end, 1 at its second, and in between in proportion to the distance
+     * along it.
+     */
+    public double fraction(int segment, double x, double y) {
+        int s = positionOf[segment];
+        double scale = Math.cos(Math.toRadians(y));
+        return fraction(s, x, y, scale);
+    }
+
+    /** Returns the distance in miles from (X, Y) to the closest point of SEGMENT. */
+    public double distance(int segment, double x, double y) {
+        int s = positionOf[segment];
+        double scale = Math.cos(Math.toRadians(y));
+        return Math.toRadians(Math.sqrt(segmentDistance(s, x, y, scale))) * EARTH_RADIUS_MILES;
+    }
+
+    private double fraction(int s, double x, double y, double scale) {
+        double ax = (x2s[s] - x1s[s]) * scale;
+        double ay = y2s[s] - y1s[s];
+        double length2 = ax * ax + ay * ay;
+        if (length2 == 0) {
+            return 0;
+        }
+        double t = ((x - x1s[s]) * scale * ax + (y - y1s[s]) * ay) / length2;
+        return Math.max(0, Math.min(1, t));
+    }
+
+    /**
+     * Returns the squared distance in projected degrees from (X, Y) to the segment
+     * at position S, where longitudes are multiplied by SCALE.
+     */
+    private double segmentDistance(int s, double x, double y, double scale) {
+        double t = fraction(s, x, y, scale);
+        double dx = (x1s[s] + t * (x2s[s] - x1s[s]) - x) * scale;
+        double dy = y1s[s] + t * (y2s[s] - y1s[s]) - y;
+        return dx * dx + dy * dy;
+    }
+
+    /** Returns the squared distance in projected degrees from (X, Y) to node P's box. */
+    private double boxDistance(int p, double x, double y, double scale) {
+        double dx = Math.max(0, Math.max(minXs[p] - x, x - maxXs[p])) * scale;
+        double dy = Math.max(0, Math.max(minYs[p] - y, y - maxYs[p]));
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Copies the segments into this tree's arrays in the order of their midpoints
+     * along a Hilbert curve; see HilbertCurve.
+     */
+    private void sortByHilbertKey(double[] x1s, double[] y1s, double[] x2s, double[] y2s) {
+        /* twice the midpoints, which sort the same */
+        double[] midXs = new double[n];
+        double[] midYs = new double[n];
+        forEach(n, i -> {
+            midXs[i] = x1s[i] + x2s[i];
+            midYs[i] = y1s[i] + y2s[i];
+        });
+        int[] order = HilbertCurve.order(midXs, midYs);
+        forEach(n, s -> {
+            int i = order[s];
+            this.x1s[s] = x1s[i];
+            this.y1s[s] = y1s[i];
+            this.x2s[s] = x2s[i];
+            this.y2s[s] = y2s[i];
+            segmentAt[s] = i;
+            positionOf[i] = s;
+        });
+    }
+
+    /** Runs BODY on 0 .. COUNT - 1, in parallel if COUNT is large. */
+    private static void forEach(int count, IntConsumer body) {
+        if (count >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, count).parallel().forEach(body);
+        } else {
+            for (int i = 0; i < count; i += 1) {
+                body.accept(i);
+            }
+        }
+    }
+
+    /**
+     * A min-heap of nodes and segments by their distance from the target. Nodes are
+     * stored as their index and segments as -(position + 1).
+     */
+    private static class Heap {
+        int[] items = new int[64];
+        double[] distances = new double[64];
+        int size;
+
+        void add(double distance, int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size;
+            size += 1;
+            while (i > 0 && distances[(i - 1) / 2] > distance) {
+                items[i] = items[(i - 1) / 2];
+                distances[i] = distances[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            items[i] = item;
+            distances[i] = distance;
+        }
+
+        void removeSmallest() {
+            size -= 1;
+            int item = items[size];
+            double distance = distances[size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && distances[child + 1] < distances[child]) {
+                    child += 1;
+                }
+                if (distance <= distances[child]) {
+                    break;
+                }
+                items[i] = items[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            items[i] = item;
+            distances[i] = distance;
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package bearmaps.proj2c;
 
+import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.IntAStarSolver;
+import bearmaps.hw4.Landmarks;
+import bearmaps.hw4.ch.ContractionHierarchy;
+import bearmaps.hw4.ch.ContractionHierarchySolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
 import bearmaps.hw4.streetmap.Node;
 import bearmaps.hw4.streetmap.StreetMapGraph;
-import bearmaps.proj2ab.Point;
-import bearmaps.proj2ab.KDTree;
+import bearmaps.hw4.streetmap.StreetMapSnapshot;
+import bearmaps.proj2ab.GridPointSet;
+import bearmaps.proj2ab.PackedKDTree;
+import bearmaps.proj2ab.PackedRTree;
 import bearmaps.proj2ab.WeirdPointSet;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * An augmented graph that is more powerful that a standard StreetMapGraph.
@@ -17,52 +28,274 @@ import java.util.*;
  */
 public class AugmentedStreetMapGraph extends StreetMapGraph {
 
-    HashMap<Point, Long> pointToID = new HashMap<>();
     HashMap<String, HashSet<String>> cleanToFull = new HashMap<>();
     HashMap<String, HashSet<Node>> cleanToInfo = new HashMap<>();
-    KDTree t;
+    /** Spatial index over the vertices with neighbors, holding their OSM ids. */
+    PackedKDTree t;
+    /** Grid over the same vertices that closest uses instead of t, or null; see useGridIndex. */
+    GridPointSet grid;
+    /** The vertices with neighbors, in id order, that the spatial indexes are built over. */
+    private double[] vertexLons;
+    private double[] vertexLats;
+    private long[] vertexIds;
+    /** Spatial index over the edges, each stored once from its smaller to its larger id. */
+    PackedRTree segments;
+    long[] segmentFroms;
+    long[] segmentTos;
+    double[] segmentWeights;
 
     MyTrieSet trie = new MyTrieSet();
 
+    /** Array-backed copy of this graph used for routing, or null to route on this graph. */
+    CompactStreetMapGraph compactGraph;
+    /** Reusable solvers over compactGraph; each server thread gets its own. */
+    ThreadLocal<IntAStarSolver> compactSolvers;
+    /** Contraction hierarchy of compactGraph, or null if none was built. */
+    ContractionHierarchy hierarchy;
+    ThreadLocal<ContractionHierarchySolver> hierarchySolvers;
+
     public AugmentedStreetMapGraph(String dbPath) {
-        super(dbPath);
-        // You might find it helpful to uncomment the line below:
-        List<Node> nodes = this.getNodes();
-
-        ArrayList<Point> pointList = new ArrayList<>();
-        for(Node n : nodes) { 
-            if(!this.neighbors(n.id()).isEmpty()){
-                Point p = new Point(n.lon(), n.lat());
-                pointToID.put(p, n.id());
-                pointList.add(p);
+        this(dbPath, null);
+    }
+
+    /**
+     * Loads the graph and the location search from the binary snapshot at SNAPSHOTPATH
+     * if it was made from the current DBPATH; otherwise parses DBPATH and writes a
+     * fresh snapshot to SNAPSHOTPATH for the next start. A loaded graph is already
+     * packed, as by useCompactRouting. The spatial indexes are not in the snapshot
+     * and are built anew either way. See StreetMapSnapshot.
+     */
+    public AugmentedStreetMapGraph(String dbPath, String snapshotPath) {
+        this(dbPath, snapshotPath, StreetMapSnapshot.read(snapshotPath, dbPath));
+    }
+
+    private AugmentedStreetMapGraph(String dbPath, String snapshotPath,
+                                    StreetMapSnapshot snapshot) {
+        super(dbPath, snapshot);
+        int numNodes;
+        if (snapshot != null) {
+            List<Node> named = snapshot.namedNodes();
+            List<String> cleanNames = snapshot.cleanNames();
+            for (int i = 0; i < named.size(); i++) {
+                addLocation(named.get(i), cleanNames.get(i));
             }
-            
-            String fullName = n.name();
-            if(fullName != null) {
-                String clean = cleanString(fullName);
-                HashSet<String> full = cleanToFull.get(clean);
-                if (full == null) full = new HashSet<>();
-                full.add(fullName);
-                cleanToFull.put(clean, full);
-                trie.add(clean);
-
-                HashSet<Node> info = cleanToInfo.get(clean);
-                if(info == null) info = new HashSet<>();
-                info.add(n);
-                cleanToInfo.put(clean, info);
+            CompactStreetMapGraph packed = compact();
+            numNodes = packed.numVertices();
+            int numConnected = 0;
+            for (int i = 0; i < numNodes; i++) {
+                if (packed.degree(i) > 0) {
+                    numConnected++;
+                }
+            }
+            vertexLons = new double[numConnected];
+            vertexLats = new double[numConnected];
+            vertexIds = new long[numConnected];
+            for (int i = 0, j = 0; i < numNodes; i++) {
+                if (packed.degree(i) > 0) {
+                    vertexLons[j] = packed.lonAt(i);
+                    vertexLats[j] = packed.latAt(i);
+                    vertexIds[j] = packed.idAt(i);
+                    j++;
+                }
+            }
+        } else {
+            List<Node> nodes = this.getNodes();
+            numNodes = nodes.size();
+            List<Node> connected = new ArrayList<>();
+            for (Node n : nodes) {
+                if (!this.neighbors(n.id()).isEmpty()) {
+                    connected.add(n);
+                }
+                if (n.name() != null) {
+                    addLocation(n, cleanString(n.name()));
+                }
+            }
+            /* in id order, as a loaded graph has them, so both build the same indexes */
+            connected.sort(Comparator.comparingLong(Node::id));
+            vertexLons = new double[connected.size()];
+            vertexLats = new double[connected.size()];
+            vertexIds = new long[connected.size()];
+            for (int i = 0; i < vertexIds.length; i++) {
+                Node n = connected.get(i);
+                vertexLons[i] = n.lon();
+                vertexLats[i] = n.lat();
+                vertexIds[i] = n.id();
             }
         }
+        this.t = new PackedKDTree(vertexLons, vertexLats, vertexIds);
+        buildSegmentIndex();
 
-        this.t = new KDTree(pointList);
+        if (snapshot == null && snapshotPath != null) {
+            try {
+                StreetMapSnapshot.write(snapshotPath, dbPath, this,
+                        AugmentedStreetMapGraph::cleanString);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
-         System.out.println("Number of total nodes: " + nodes.size());
-         System.out.println("Number of intersections: " + pointList.size());
+         System.out.println("Number of total nodes: " + numNodes);
+         System.out.println("Number of intersections: " + t.size());
+         System.out.println("Number of road segments: " + segments.size());
          //System.out.println("idtoname size: " + idtoname.size());
-         System.out.println("map size " + pointToID.size());
          System.out.println("cleantofull size " + cleanToFull.size());
          System.out.println("cleanloc size " + cleanToInfo.size());
     }
 
+    /**
+     * Indexes every edge between the vertices in vertexIds, which are all the
+     * vertices with neighbors. The edges of each vertex are counted and then copied
+     * out in parallel, each vertex writing to its own slice of the arrays.
+     */
+    private void buildSegmentIndex() {
+        int m = vertexIds.length;
+        int[] offsets = new int[m + 1];
+        IntStream.range(0, m).parallel().forEach(i -> {
+            int[] count = {0};
+            forEachNeighbor(vertexIds[i], (v, w, weight) -> {
+                if (v < w) {
+                    count[0] += 1;
+                }
+            });
+            offsets[i + 1] = count[0];
+        });
+        Arrays.parallelPrefix(offsets, Integer::sum);
+
+        int numSegments = offsets[m];
+        double[] x1s = new double[numSegments];
+        double[] y1s = new double[numSegments];
+        double[] x2s = new double[numSegments];
+        double[] y2s = new double[numSegments];
+        segmentFroms = new long[numSegments];
+        segmentTos = new long[numSegments];
+        segmentWeights = new double[numSegments];
+        IntStream.range(0, m).parallel().forEach(i -> {
+            int[] next = {offsets[i]};
+            forEachNeighbor(vertexIds[i], (v, w, weight) -> {
+                if (v < w) {
+                    int e = next[0];
+                    x1s[e] = vertexLons[i];
+                    y1s[e] = vertexLats[i];
+                    x2s[e] = lon(w);
+                    y2s[e] = lat(w);
+                    segmentFroms[e] = v;
+                    segmentTos[e] = w;
+                    segmentWeights[e] = weight;
+                    next[0] = e + 1;
+                }
+            });
+        });
+        segments = new PackedRTree(x1s, y1s, x2s, y2s);
+    }
+
+    /** Makes node N findable by the location search under its cleaned name CLEAN. */
+    private void addLocation(Node n, String clean) {
+        HashSet<String> full = cleanToFull.get(clean);
+        if (full == null) full = new HashSet<>();
+        full.add(n.name());
+        cleanToFull.put(clean, full);
+        trie.add(clean);
+
+        HashSet<Node> info = cleanToInfo.get(clean);
+        if(info == null) info = new HashSet<>();
+        info.add(n);
+        cleanToInfo.put(clean, info);
+    }
+
+    /**
+     * Packs this graph into a CompactStreetMapGraph and routes on that copy from now on.
+     * The HashMap graph is released, and lookups on this graph are answered from the
+     * packed copy too; see StreetMapGraph.compactInPlace.
+     */
+    public void useCompactRouting() {
+        CompactStreetMapGraph compact = compactInPlace();
+        compactGraph = compact;
+        compactSolvers = ThreadLocal.withInitial(() -> new IntAStarSolver(compact));
+    }
+
+    /**
+     * Sharpens the routing heuristic with K landmarks (see Landmarks). The distance
+     * tables are read from TABLEPATH if it holds tables for this graph; otherwise
+     * they are computed and written there for the next start. Packs the graph with
+     * useCompactRouting first if that has not happened yet.
+     */
+    public void useLandmarks(String tablePath, int k) {
+        if (compactGraph == null) {
+            useCompactRouting();
+        }
+        CompactStreetMapGraph compact = compactGraph;
+        Landmarks landmarks = null;
+        if (new File(tablePath).exists()) {
+            try {
+                landmarks = Landmarks.load(tablePath, compact);
+            } catch (IOException e) {
+                System.out.println("Recomputing landmarks: " + e.getMessage());
+            }
+        }
+        if (landmarks == null || landmarks.numLandmarks() != k) {
+            landmarks = Landmarks.select(compact, k);
+            try {
+                landmarks.save(tablePath, compact);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        CompactStreetMapGraph withLandmarks = compact.withLandmarks(landmarks);
+        compactGraph = withLandmarks;
+        compactSolvers = ThreadLocal.withInitial(() -> new IntAStarSolver(withLandmarks));
+    }
+
+    /**
+     * Prepares a contraction hierarchy of the routing graph for
+     * Router.Algorithm.CONTRACTION_HIERARCHY queries. The hierarchy is read from PATH
+     * if it holds one for this graph; otherwise it is built and written there for the
+     * next start. Packs the graph with useCompactRouting first if that has not
+     * happened yet.
+     */
+    public void useContractionHierarchy(String path) {
+        if (compactGraph == null) {
+            useCompactRouting();
+        }
+        ContractionHierarchy ch = null;
+        if (new File(path).exists()) {
+            try {
+                ch = ContractionHierarchy.load(path, compactGraph);
+            } catch (IOException e) {
+                System.out.println("Rebuilding contraction hierarchy: " + e.getMessage());
+            }
+        }
+        if (ch == null) {
+            ch = ContractionHierarchy.build(compactGraph);
+            try {
+                ch.save(path, compactGraph);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        ContractionHierarchy built = ch;
+        hierarchy = built;
+        hierarchySolvers = ThreadLocal.withInitial(() -> new ContractionHierarchySolver(built));
+    }
+
+    /**
+     * Answers closest queries with a GridPointSet over the vertices instead of the
+     * 2-d tree, which is faster on dense maps with fixed bounds like the ones the
+     * server works with. The other spatial queries keep using the tree.
+     */
+    public void useGridIndex() {
+        grid = new GridPointSet(vertexLons, vertexLats, vertexIds);
+    }
+
+    /**
+     * Returns the graph that shortest path queries should be run on: the compact copy
+     * if useCompactRouting() was called, or this graph otherwise.
+     */
+    public AStarGraph<Long> routingGraph() {
+        if (compactGraph != null) {
+            return compactGraph;
+        }
+        return this;
+    }
 
     /**
      * For Project Part II
@@ -72,9 +305,98 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * @return The id of the node in the graph closest to the target.
      */
     public long closest(double lon, double lat) {
-        Point p = t.nearest(lon, lat);
-        long id = pointToID.get(p);
-        return id;
+        if (grid != null) {
+            return grid.nearestId(lon, lat);
+        }
+        return t.nearestId(lon, lat);
+    }
+
+    /**
+     * Returns the vertex closest to each (LONS[i], LATS[i]), in the same order, as
+     * closest would. The points are answered along a space-filling curve through
+     * them, and large batches in parallel, which is much faster than calling closest
+     * once per point.
+     * @throws IllegalArgumentException if LONS and LATS are not the same length.
+     */
+    public long[] closestAll(double[] lons, double[] lats) {
+        if (lons.length != lats.length) {
+            throw new IllegalArgumentException("Got " + lons.length + " longitudes but "
+                    + lats.length + " latitudes.");
+        }
+        if (grid != null) {
+            return grid.nearestIds(lons, lats);
+        }
+        return t.nearestIds(lons, lats);
+    }
+
+    /**
+     * Returns the ids of the K vertices closest to the given longitude and latitude,
+     * closest first, as candidates for snapping to the graph.
+     */
+    public long[] closest(double lon, double lat, int k) {
+        return t.kNearestIds(lon, lat, k);
+    }
+
+    /**
+     * Returns the ids of the vertices at most MILES from the given longitude and
+     * latitude, closest first.
+     */
+    public long[] closestWithin(double lon, double lat, double miles) {
+        return t.withinRadiusIds(lon, lat, miles);
+    }
+
+    /**
+     * Returns the point on a road closest to the given longitude and latitude, as the
+     * edge it lies on and how far along the edge it is, or null if the graph has no
+     * edges. Unlike closest, a point in the middle of a long block snaps onto that
+     * block rather than to whichever intersection is nearest.
+     */
+    public Snap snap(double lon, double lat) {
+        int s = segments.nearest(lon, lat);
+        if (s < 0) {
+            return null;
+        }
+        return new Snap(this, s, segments.fraction(s, lon, lat));
+    }
+
+    /**
+     * A point on an edge of the graph, found by snap. The edge runs from vertex from
+     * to vertex to, and the point is fraction of the way along it, so it is
+     * fraction * weight from from and (1 - fraction) * weight from to.
+     */
+    public static class Snap {
+        /** Index of the edge in the graph's segment index; equal on the same edge. */
+        public final int segment;
+        public final long from;
+        public final long to;
+        /** Length of the edge. */
+        public final double weight;
+        public final double fraction;
+        /** Where the point is. */
+        public final double lon;
+        public final double lat;
+
+        Snap(AugmentedStreetMapGraph g, int segment, double fraction) {
+            this.segment = segment;
+            this.from = g.segmentFroms[segment];
+            this.to = g.segmentTos[segment];
+            this.weight = g.segmentWeights[segment];
+            this.fraction = fraction;
+            double fromLon = g.lon(from);
+            double fromLat = g.lat(from);
+            this.lon = fromLon + fraction * (g.lon(to) - fromLon);
+            this.lat = fromLat + fraction * (g.lat(to) - fromLat);
+        }
+
+        /** Returns the distance along the edge from this point back to vertex from. */
+        public double distanceToFrom() {
+            return fraction * weight;
+        }
+
+        /** Returns the distance along the edge from this point on to vertex to. */
+        public double distanceToTo() {
+            return (1 - fraction) * weight;
+        }
     }
 
     /**
@@ -1,5 +1,6 @@
 package bearmaps.proj2c;
 
+import bearmaps.proj2c.raster.RasterServices;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import bearmaps.proj2c.utils.Constants;
 
@@ -29,7 +30,29 @@ public class MapServerInitializer {
     public static void initializeServer(Map<String, APIRouteHandler> apiHandlers){
         //port(getHerokuAssignedPort());
 
-        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH,
+                Constants.GRAPH_SNAPSHOT_PATH);
+        if (Constants.USE_GRID_POINT_INDEX) {
+            Constants.SEMANTIC_STREET_GRAPH.useGridIndex();
+        }
+        if (Constants.USE_COMPACT_ROUTING_GRAPH) {
+            Constants.SEMANTIC_STREET_GRAPH.useCompactRouting();
+            /* contraction hierarchy searches never use the landmark heuristic */
+            if (Constants.NUM_LANDMARKS > 0
+                    && Constants.ROUTE_ALGORITHM != Router.Algorithm.CONTRACTION_HIERARCHY) {
+                Constants.SEMANTIC_STREET_GRAPH.useLandmarks(Constants.LANDMARKS_PATH,
+                        Constants.NUM_LANDMARKS);
+            }
+            if (Constants.ROUTE_ALGORITHM == Router.Algorithm.CONTRACTION_HIERARCHY) {
+                Constants.SEMANTIC_STREET_GRAPH.useContractionHierarchy(
+                        Constants.CONTRACTION_HIERARCHY_PATH);
+            }
+        }
+        if (Constants.TILE_CACHE_WARM_DEPTH >= 0) {
+            RasterServices.RASTER_COMPOSITOR.tiles().warm(Constants.TILE_CACHE_WARM_DEPTH);
+            System.out.println((RasterServices.RASTER_COMPOSITOR.metatileSize() > 1
+                    ? "Metatile" : "Tile") + " cache: " + RasterServices.RASTER_COMPOSITOR.tiles());
+        }
         staticFileLocation("/page");
         /* Allow for all origin requests (since this is not an authenticated server, we do not
          * care about CSRF).  */
@@ -47,6 +70,10 @@ public class MapServerInitializer {
             get("/"+apiRoute.getKey(), apiRoute.getValue());
             paths.add(apiRoute.getKey());
         }
+        /* batches of points can be too long for a query string, so also take them as a form */
+        if (apiHandlers.containsKey("closest_all")) {
+            post("/closest_all", apiHandlers.get("closest_all"));
+        }
 
 
     }
@@ -1,8 +1,18 @@
 package bearmaps.proj2c;
 
-import bearmaps.hw4.WeirdSolver;
+import bearmaps.hw4.AStarGraph;
 import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.IntAStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.ch.ContractionHierarchySolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2c.utils.Constants;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.regex.Matcher;
@@ -27,12 +37,173 @@ public class Router {
      */
     public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
                                           double destlon, double destlat) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, new RouteOptions());
+    }
+
+    /**
+     * Same as shortestPath(g, stlon, stlat, destlon, destlat), but with the search
+     * limited by OPTIONS.
+     * @return A list of node id's in the order visited on the shortest path, or an
+     * empty list if there is no path or the search ran out of time or states.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                          double destlon, double destlat,
+                                          RouteOptions options) {
+        if (options.snapToSegments) {
+            AugmentedStreetMapGraph.Snap start = g.snap(stlon, stlat);
+            AugmentedStreetMapGraph.Snap end = g.snap(destlon, destlat);
+            if (start == null || end == null) {
+                return new ArrayList<>();
+            }
+            return shortestPath(g, start, end, options);
+        }
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        System.out.println(new WeirdSolver<>(g, src, dest, 20).solution());
-        return new AStarSolver<>(g, src, dest, 20).solution();
-        //return new WeirdSolver<>(g, src, dest, 20).solution();
-        //return null;
+        if (options.algorithm == Algorithm.BIDIRECTIONAL_ASTAR) {
+            return new BidirectionalAStarSolver<>(g.routingGraph(), src, dest, options.timeout,
+                    options.maxStatesExplored).solution();
+        }
+        CompactStreetMapGraph compact = g.compactGraph;
+        if (options.algorithm == Algorithm.CONTRACTION_HIERARCHY && g.hierarchy != null) {
+            ContractionHierarchySolver solver = g.hierarchySolvers.get();
+            solver.solve(compact.index(src), compact.index(dest), options.timeout,
+                    options.maxStatesExplored);
+            return compact.ids(solver.solutionPath());
+        }
+        if (compact != null) {
+            IntAStarSolver solver = g.compactSolvers.get();
+            solver.solve(compact.index(src), compact.index(dest), options.timeout,
+                    options.maxStatesExplored);
+            return compact.ids(solver.solutionPath());
+        }
+        return new AStarSolver<>(g.routingGraph(), src, dest, options.timeout,
+                options.maxStatesExplored).solution();
+    }
+
+    /**
+     * Returns the vertices on the shortest path from the point START to the point END,
+     * each somewhere along an edge. The solvers search from a virtual vertex on the
+     * start's edge, joined to its two ends by the two parts of the edge, to one on
+     * the end's edge. The path returned runs from the first vertex the route reaches
+     * to the last one it leaves, without the virtual vertices. If both points are on
+     * the same edge and the way along it between them is shortest, the path is that
+     * edge's two vertices in the direction of travel.
+     */
+    private static List<Long> shortestPath(AugmentedStreetMapGraph g,
+                                           AugmentedStreetMapGraph.Snap start,
+                                           AugmentedStreetMapGraph.Snap end,
+                                           RouteOptions options) {
+        double[] startDistances = {start.distanceToFrom(), start.distanceToTo()};
+        double[] endDistances = {end.distanceToFrom(), end.distanceToTo()};
+        List<Long> path;
+        double weight;
+        CompactStreetMapGraph compact = g.compactGraph;
+        if (options.algorithm == Algorithm.BIDIRECTIONAL_ASTAR || compact == null) {
+            SnappedGraph snapped = new SnappedGraph(g, g.routingGraph(), start, end);
+            ShortestPathsSolver<Long> solver = options.algorithm == Algorithm.BIDIRECTIONAL_ASTAR
+                    ? new BidirectionalAStarSolver<>(snapped, SnappedGraph.START, SnappedGraph.END,
+                            options.timeout, options.maxStatesExplored)
+                    : new AStarSolver<>(snapped, SnappedGraph.START, SnappedGraph.END,
+                            options.timeout, options.maxStatesExplored);
+            List<Long> solution = solver.solution();
+            path = solution.size() < 2 ? new ArrayList<>()
+                    : new ArrayList<>(solution.subList(1, solution.size() - 1));
+            weight = solver.solutionWeight();
+        } else {
+            int[] starts = {compact.index(start.from), compact.index(start.to)};
+            int[] ends = {compact.index(end.from), compact.index(end.to)};
+            if (options.algorithm == Algorithm.CONTRACTION_HIERARCHY && g.hierarchy != null) {
+                ContractionHierarchySolver solver = g.hierarchySolvers.get();
+                solver.solve(starts, startDistances, ends, endDistances, options.timeout,
+                        options.maxStatesExplored);
+                path = compact.ids(solver.solutionPath());
+                weight = solver.solutionWeight();
+            } else {
+                IntAStarSolver solver = g.compactSolvers.get();
+                solver.solve(starts, startDistances, ends, endDistances, options.timeout,
+                        options.maxStatesExplored);
+                path = compact.ids(solver.solutionPath());
+                weight = solver.solutionWeight();
+            }
+        }
+
+        if (start.segment == end.segment) {
+            double along = Math.abs(start.fraction - end.fraction) * start.weight;
+            if (path.isEmpty() || along <= weight) {
+                return start.fraction <= end.fraction
+                        ? new ArrayList<>(Arrays.asList(start.from, start.to))
+                        : new ArrayList<>(Arrays.asList(start.to, start.from));
+            }
+        }
+        return path;
+    }
+
+    /**
+     * A graph with two virtual vertices added to another: START, in the middle of the
+     * edge a route starts on, and END, in the middle of the edge it ends on. Each is
+     * joined both ways to the two vertices of its edge by the parts of the edge on
+     * either side of it, so the graph stays symmetric for BidirectionalAStarSolver.
+     * Estimates are great-circle distances, which for the virtual vertices are taken
+     * from where they lie on their edges.
+     */
+    private static class SnappedGraph implements AStarGraph<Long> {
+        /* ids no OSM vertex has */
+        static final Long START = Long.MIN_VALUE;
+        static final Long END = Long.MIN_VALUE + 1;
+
+        private final AugmentedStreetMapGraph g;
+        private final AStarGraph<Long> graph;
+        private final AugmentedStreetMapGraph.Snap start;
+        private final AugmentedStreetMapGraph.Snap end;
+
+        SnappedGraph(AugmentedStreetMapGraph g, AStarGraph<Long> graph,
+                     AugmentedStreetMapGraph.Snap start, AugmentedStreetMapGraph.Snap end) {
+            this.g = g;
+            this.graph = graph;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public List<WeightedEdge<Long>> neighbors(Long v) {
+            List<WeightedEdge<Long>> edges = new ArrayList<>();
+            if (v.equals(START) || v.equals(END)) {
+                AugmentedStreetMapGraph.Snap snap = v.equals(START) ? start : end;
+                edges.add(new WeightedEdge<>(v, snap.from, snap.distanceToFrom()));
+                edges.add(new WeightedEdge<>(v, snap.to, snap.distanceToTo()));
+                return edges;
+            }
+            edges.addAll(graph.neighbors(v));
+            addEdgeToVirtual(edges, v, START, start);
+            addEdgeToVirtual(edges, v, END, end);
+            return edges;
+        }
+
+        /* Adds the edge from V to the virtual vertex VIRTUAL at SNAP if V is on its edge. */
+        private static void addEdgeToVirtual(List<WeightedEdge<Long>> edges, Long v, Long virtual,
+                                             AugmentedStreetMapGraph.Snap snap) {
+            if (v == snap.from) {
+                edges.add(new WeightedEdge<>(v, virtual, snap.distanceToFrom()));
+            }
+            if (v == snap.to) {
+                edges.add(new WeightedEdge<>(v, virtual, snap.distanceToTo()));
+            }
+        }
+
+        @Override
+        public double estimatedDistanceToGoal(Long s, Long goal) {
+            return Point.distance(point(s), point(goal));
+        }
+
+        private Point point(Long v) {
+            if (v.equals(START)) {
+                return new Point(start.lon, start.lat);
+            }
+            if (v.equals(END)) {
+                return new Point(end.lon, end.lat);
+            }
+            return new Point(g.lon(v), g.lat(v));
+        }
     }
 
     /**
@@ -48,6 +219,39 @@ public class Router {
         return null;
     }
 
+    /** The shortest path algorithms shortestPath can run. */
+    public enum Algorithm {
+        /** A* from the start vertex; see AStarSolver and IntAStarSolver. */
+        ASTAR,
+        /** A* from both ends at once; see BidirectionalAStarSolver. */
+        BIDIRECTIONAL_ASTAR,
+        /**
+         * Upward searches in a contraction hierarchy; see ContractionHierarchySolver.
+         * Falls back to ASTAR if the graph has no hierarchy.
+         */
+        CONTRACTION_HIERARCHY
+    }
+
+    /**
+     * Which algorithm one shortestPath query uses and how much work it may do.
+     * Defaults to the server-wide settings in Constants.
+     */
+    public static class RouteOptions {
+        /** The algorithm to search with. */
+        public Algorithm algorithm = Constants.ROUTE_ALGORITHM;
+        /** Seconds the search may run for. */
+        public double timeout = Constants.ROUTE_TIMEOUT;
+        /** Number of vertices the search may dequeue. */
+        public int maxStatesExplored = Constants.ROUTE_MAX_STATES_EXPLORED;
+        /**
+         * Whether the route starts and ends at the closest points on the roads, see
+         * AugmentedStreetMapGraph.snap, rather than at the closest vertices. Off
+         * unless set, so routes still run between the vertices closest to the two
+         * points; the server sets it from Constants.ROUTE_SNAP_TO_SEGMENTS.
+         */
+        public boolean snapToSegments = false;
+    }
+
     /**
      * Class to represent a navigation direction, which consists of 3 attributes:
      * a direction to go, a way, and the distance to travel for. This is only
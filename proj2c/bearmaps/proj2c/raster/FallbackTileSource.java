@@ -0,0 +1,24 @@
+package bearmaps.proj2c.raster;
+
+import java.nio.ByteBuffer;
+
+/** TileSource that reads tiles from one source, and those it lacks from another. */
+public class FallbackTileSource implements TileSource {
+    private final TileSource first;
+    private final TileSource second;
+
+    /** Makes a source of the tiles in FIRST, then of those in SECOND. */
+    public FallbackTileSource(TileSource first, TileSource second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public ByteBuffer read(int depth, int x, int y) {
+        ByteBuffer tile = first.read(depth, x, y);
+        if (tile != null) {
+            return tile;
+        }
+        return second.read(depth, x, y);
+    }
+}
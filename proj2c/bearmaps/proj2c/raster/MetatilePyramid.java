@@ -0,0 +1,82 @@
+package bearmaps.proj2c.raster;
+
+import bearmaps.proj2c.utils.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * TileSource of metatiles: blocks of metatileSize x metatileSize tiles, without
+ * the route, stitched by a TileCompositor and encoded as one PNG. Metatile
+ * (depth, x, y) has tile (depth, x * metatileSize, y * metatileSize) in its upper
+ * left corner, and is smaller at depths with fewer tiles a side than that.
+ *
+ * Stitching and encoding a metatile takes far longer than reading one, so main
+ * renders the whole pyramid once, ahead of time, into a TilePack. The server then
+ * crops rasters out of the packed metatiles through openCompositor, and only falls
+ * back on rendering metatiles the pack does not have.
+ */
+public class MetatilePyramid implements TileSource {
+    private final TileCompositor tiles;
+    private final int metatileSize;
+    private final PngEncoder encoder;
+
+    /**
+     * Makes a source of the metatiles of METATILESIZE x METATILESIZE tiles stitched by
+     * TILES and encoded by ENCODER.
+     */
+    public MetatilePyramid(TileCompositor tiles, int metatileSize, PngEncoder encoder) {
+        this.tiles = tiles;
+        this.metatileSize = metatileSize;
+        this.encoder = encoder;
+    }
+
+    @Override
+    public ByteBuffer read(int depth, int x, int y) {
+        int side = 1 << depth;
+        int x0 = x * metatileSize, y0 = y * metatileSize;
+        if (depth < 0 || x < 0 || y < 0 || x0 >= side || y0 >= side) {
+            return null;
+        }
+        return ByteBuffer.wrap(encoder.encode(tiles.composite(depth, x0, y0,
+                Math.min(metatileSize, side - x0), Math.min(metatileSize, side - y0)))).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a compositor that crops its images out of the metatiles in the pack at
+     * PACKPATH, keeping at most CACHEBYTES of them decoded, and renders from TILES
+     * those the pack does not have. If there is no pack at PACKPATH, or it cannot
+     * be read, just returns TILES.
+     */
+    public static TileCompositor openCompositor(String packPath, TileCompositor tiles, int metatileSize,
+                                                PngEncoder encoder, long cacheBytes, int threads) {
+        if (!new File(packPath).exists()) {
+            return tiles;
+        }
+        try {
+            TileSource metatiles = new FallbackTileSource(TilePack.open(packPath),
+                    new MetatilePyramid(tiles, metatileSize, encoder));
+            return new TileCompositor(new TileCache(metatiles, cacheBytes), tiles.tileSize(),
+                    metatileSize, threads);
+        } catch (IOException e) {
+            System.out.println("Ignoring metatile pack " + packPath + ": " + e);
+            return tiles;
+        }
+    }
+
+    /**
+     * Renders the metatiles of RasterServices.TILE_COMPOSITOR's tiles at depths 0
+     * through Constants.TILE_PACK_MAX_DEPTH into the pack Constants.METATILE_PACK_PATH,
+     * or into ARGS[0] if given, encoding them with RasterServices.RASTER_PNG_ENCODER.
+     */
+    public static void main(String[] args) throws IOException {
+        String path = args.length > 0 ? args[0] : Constants.METATILE_PACK_PATH;
+        long start = System.nanoTime();
+        TilePack.write(path, new MetatilePyramid(RasterServices.TILE_COMPOSITOR,
+                Constants.METATILE_SIZE, RasterServices.RASTER_PNG_ENCODER),
+                Constants.TILE_PACK_MAX_DEPTH);
+        System.out.printf("Wrote %s (%d MB) in %.1f s.%n", path, new File(path).length() >> 20,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
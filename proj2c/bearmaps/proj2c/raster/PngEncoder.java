@@ -0,0 +1,419 @@
+package bearmaps.proj2c.raster;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes images as 8-bit RGB PNGs, with the deflate level, deflate strategy and
+ * row filter chosen up front rather than left to ImageIO's defaults, and with the
+ * work split over a pool of its own threads.
+ *
+ * The image's rows are cut into chunks of about CHUNK_BYTES. Each chunk is
+ * filtered and then deflated on its own, as a raw deflate stream that is flushed
+ * to a byte boundary, and the streams are put one after the other behind a single
+ * zlib header, the way pigz does. Each chunk starts with the last 32 KB of the one
+ * before it as its dictionary, so matches across chunk boundaries are not lost, and
+ * the Adler-32 checksums of the chunks are combined into the one of the whole.
+ * The pool is sized and bounded like TileCompositor's: when its queue is full, the
+ * thread encoding the image does the chunk itself.
+ */
+public class PngEncoder {
+    /** How each row of pixels is filtered before it is deflated; see the PNG spec. */
+    public enum Filter {
+        NONE, SUB, UP, AVERAGE, PAETH,
+        /** Each row with whichever of the others gives the smallest sum of bytes. */
+        ADAPTIVE
+    }
+
+    /* filtered bytes in a chunk deflated on its own */
+    private static final int CHUNK_BYTES = 128 << 10;
+    /* bytes of the chunk before that a chunk's deflater may refer back to */
+    private static final int WINDOW_BYTES = 32 << 10;
+    /* most chunks waiting for a pool thread at once */
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int ADLER_BASE = 65521;
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+
+    private final int level;
+    private final int strategy;
+    private final Filter filter;
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Makes an encoder that deflates at LEVEL, from Deflater.NO_COMPRESSION to
+     * Deflater.BEST_COMPRESSION, with the Deflater strategy STRATEGY, filters rows
+     * with FILTER, and works on THREADS threads.
+     */
+    public PngEncoder(int level, int strategy, Filter filter, int threads) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("No such deflate level: " + level);
+        }
+        if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED
+                && strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("No such deflate strategy: " + strategy);
+        }
+        this.level = level;
+        this.strategy = strategy;
+        this.filter = filter;
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "png-encoder");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Returns an encoder that spends as little time as it can, for servers whose
+     * clients are close by: deflate level 1 over unfiltered rows. Map images are
+     * mostly runs of a few flat colors, which deflate finds better unfiltered than
+     * after any of the PNG filters; see TimePngEncoder.
+     */
+    public static PngEncoder fast(int threads) {
+        return new PngEncoder(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY, Filter.NONE, threads);
+    }
+
+    /**
+     * Returns an encoder that makes PNGs as small as it can, for servers whose clients
+     * are short of bandwidth: deflate level 9 over unfiltered rows, several times the
+     * work of fast for about a sixth fewer bytes.
+     */
+    public static PngEncoder quality(int threads) {
+        return new PngEncoder(Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY, Filter.NONE,
+                threads);
+    }
+
+    /** Writes IMG to OS as a PNG. */
+    public void write(BufferedImage img, OutputStream os) throws IOException {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int rowBytes = 1 + 3 * width;
+        int chunkRows = Math.max(1, CHUNK_BYTES / rowBytes);
+        int numChunks = (height + chunkRows - 1) / chunkRows;
+        byte[] filtered = new byte[rowBytes * height];
+
+        /* filter every chunk of rows, then deflate them, each step spread over the pool */
+        List<Callable<Object>> filterings = new ArrayList<>(numChunks);
+        for (int c = 0; c < numChunks; c += 1) {
+            int from = c * chunkRows, to = Math.min(height, from + chunkRows);
+            filterings.add(() -> {
+                filter(img, from, to, filtered);
+                return null;
+            });
+        }
+        run(filterings);
+        List<Callable<Object>> deflations = new ArrayList<>(numChunks);
+        for (int c = 0; c < numChunks; c += 1) {
+            int from = c * chunkRows * rowBytes;
+            int to = Math.min(height, (c + 1) * chunkRows) * rowBytes;
+            boolean last = c == numChunks - 1;
+            deflations.add(() -> deflate(filtered, from, to, last));
+        }
+        List<Object> chunks = run(deflations);
+
+        os.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // bits per sample
+        header[9] = 2;  // RGB
+        writeChunk(os, "IHDR", header, header.length);
+
+        /* zlib header: deflate with a 32 KB window, and a check so it divides by 31 */
+        int cmf = 0x78;
+        int flevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+        int flg = flevel << 6;
+        flg += (31 - (cmf * 256 + flg) % 31) % 31;
+        writeChunk(os, "IDAT", new byte[]{(byte) cmf, (byte) flg}, 2);
+        long adler = 1;
+        for (int c = 0; c < numChunks; c += 1) {
+            DeflatedChunk chunk = (DeflatedChunk) chunks.get(c);
+            writeChunk(os, "IDAT", chunk.bytes, chunk.length);
+            int length = Math.min(height, (c + 1) * chunkRows) * rowBytes - c * chunkRows * rowBytes;
+            adler = combineAdler32(adler, chunk.adler, length);
+        }
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) adler);
+        writeChunk(os, "IDAT", trailer, 4);
+        writeChunk(os, "IEND", new byte[0], 0);
+    }
+
+    /** Returns IMG as the bytes of a PNG. */
+    public byte[] encode(BufferedImage img) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            write(img, os);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to memory.", e);
+        }
+        return os.toByteArray();
+    }
+
+    /** Stops the pool's threads once the images already asked for are done. */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "level " + level + ", " + filter + " filter, "
+                + (strategy == Deflater.FILTERED ? "filtered" : strategy == Deflater.HUFFMAN_ONLY
+                ? "Huffman only" : "default") + " strategy, " + pool.getCorePoolSize() + " thread(s)";
+    }
+
+    /** A chunk deflated on its own: its first LENGTH BYTES, and the Adler-32 of its input. */
+    private static class DeflatedChunk {
+        private final byte[] bytes;
+        private final int length;
+        private final long adler;
+
+        DeflatedChunk(byte[] bytes, int length, long adler) {
+            this.bytes = bytes;
+            this.length = length;
+            this.adler = adler;
+        }
+    }
+
+    /**
+     * Runs TASKS on the pool, or on this thread if there is only one, and returns
+     * their results in order.
+     */
+    private List<Object> run(List<Callable<Object>> tasks) {
+        List<Object> results = new ArrayList<>(tasks.size());
+        try {
+            if (tasks.size() == 1) {
+                results.add(tasks.get(0).call());
+                return results;
+            }
+            List<Future<Object>> futures = new ArrayList<>(tasks.size());
+            for (Callable<Object> task : tasks) {
+                futures.add(pool.submit(task));
+            }
+            for (Future<Object> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while encoding a PNG.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not encode a PNG.", e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not encode a PNG.", e);
+        }
+    }
+
+    /**
+     * Deflates FILTERED from FROM up to TO as a raw deflate stream, with the bytes
+     * before FROM as its dictionary. Only the LAST chunk ends the stream; the others
+     * are flushed to a byte boundary so the next can follow straight on.
+     */
+    private DeflatedChunk deflate(byte[] filtered, int from, int to, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        deflater.setStrategy(strategy);
+        /* a new strategy only takes effect on the next deflate, which must come before
+           the dictionary is set or the dictionary is lost */
+        deflater.deflate(filtered, 0, 0, Deflater.NO_FLUSH);
+        if (from > 0) {
+            int window = Math.min(from, WINDOW_BYTES);
+            deflater.setDictionary(filtered, from - window, window);
+        }
+        deflater.setInput(filtered, from, to - from);
+        byte[] out = new byte[Math.max(64, (to - from) / 4)];
+        int length = 0;
+        if (last) {
+            deflater.finish();
+        }
+        while (true) {
+            if (length == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            int n = deflater.deflate(out, length, out.length - length,
+                    last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            length += n;
+            /* done once the stream is finished, or flushed with room to spare */
+            if (last ? deflater.finished() : length < out.length) {
+                break;
+            }
+        }
+        deflater.end();
+        Adler32 adler = new Adler32();
+        adler.update(filtered, from, to - from);
+        return new DeflatedChunk(out, length, adler.getValue());
+    }
+
+    /**
+     * Writes rows FROM up to TO of IMG, each filtered and led by its filter type, to
+     * their place in FILTERED.
+     */
+    private void filter(BufferedImage img, int from, int to, byte[] filtered) {
+        int width = img.getWidth();
+        int rowBytes = 3 * width;
+        byte[] prev = new byte[rowBytes];
+        byte[] cur = new byte[rowBytes];
+        byte[][] candidates = filter == Filter.ADAPTIVE ? new byte[Filter.ADAPTIVE.ordinal()][rowBytes] : null;
+        int[] rgb = new int[width];
+        if (from > 0) {
+            rgbBytes(img, from - 1, rgb, prev);
+        }
+        for (int y = from; y < to; y += 1) {
+            rgbBytes(img, y, rgb, cur);
+            int at = y * (rowBytes + 1);
+            if (filter != Filter.ADAPTIVE) {
+                filtered[at] = (byte) filter.ordinal();
+                filterRow(filter, cur, prev, filtered, at + 1);
+            } else {
+                int best = 0;
+                long bestSum = Long.MAX_VALUE;
+                for (int f = 0; f < candidates.length; f += 1) {
+                    filterRow(Filter.values()[f], cur, prev, candidates[f], 0);
+                    long sum = 0;
+                    for (byte b : candidates[f]) {
+                        sum += Math.abs(b);
+                    }
+                    if (sum < bestSum) {
+                        best = f;
+                        bestSum = sum;
+                    }
+                }
+                filtered[at] = (byte) best;
+                System.arraycopy(candidates[best], 0, filtered, at + 1, rowBytes);
+            }
+            byte[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+    }
+
+    /** Writes row CUR, filtered with F against the row PREV above it, to OUT from AT. */
+    private static void filterRow(Filter f, byte[] cur, byte[] prev, byte[] out, int at) {
+        int n = cur.length;
+        switch (f) {
+            case NONE:
+                System.arraycopy(cur, 0, out, at, n);
+                break;
+            case SUB:
+                for (int i = 0; i < n; i += 1) {
+                    out[at + i] = (byte) (cur[i] - (i < 3 ? 0 : cur[i - 3]));
+                }
+                break;
+            case UP:
+                for (int i = 0; i < n; i += 1) {
+                    out[at + i] = (byte) (cur[i] - prev[i]);
+                }
+                break;
+            case AVERAGE:
+                for (int i = 0; i < n; i += 1) {
+                    int left = i < 3 ? 0 : cur[i - 3] & 0xff;
+                    out[at + i] = (byte) (cur[i] - ((left + (prev[i] & 0xff)) >> 1));
+                }
+                break;
+            case PAETH:
+                for (int i = 0; i < n; i += 1) {
+                    int a = i < 3 ? 0 : cur[i - 3] & 0xff;
+                    int b = prev[i] & 0xff;
+                    int c = i < 3 ? 0 : prev[i - 3] & 0xff;
+                    int pa = Math.abs(b - c), pb = Math.abs(a - c), pc = Math.abs(a + b - 2 * c);
+                    int predictor = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                    out[at + i] = (byte) (cur[i] - predictor);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Not a single filter: " + f);
+        }
+    }
+
+    /** Puts the red, green and blue bytes of row Y of IMG in OUT, using RGB for room. */
+    private static void rgbBytes(BufferedImage img, int y, int[] rgb, byte[] out) {
+        int width = img.getWidth();
+        WritableRaster raster = img.getRaster();
+        int[] pixels;
+        int start;
+        if (img.getType() == BufferedImage.TYPE_INT_RGB
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            /* read the pixels in place rather than through getRGB's color model */
+            SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+            start = raster.getDataBuffer().getOffset() + model.getOffset(
+                    -raster.getSampleModelTranslateX(), y - raster.getSampleModelTranslateY());
+        } else {
+            img.getRGB(0, y, width, 1, rgb, 0, width);
+            pixels = rgb;
+            start = 0;
+        }
+        for (int x = 0, i = 0; x < width; x += 1, i += 3) {
+            int p = pixels[start + x];
+            out[i] = (byte) (p >> 16);
+            out[i + 1] = (byte) (p >> 8);
+            out[i + 2] = (byte) p;
+        }
+    }
+
+    /**
+     * Returns the Adler-32 of two blocks of bytes one after the other, given ADLER1
+     * of the first, ADLER2 of the second and its length LENGTH2; zlib's
+     * adler32_combine.
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= 2L * ADLER_BASE) {
+            sum2 -= 2L * ADLER_BASE;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    /** Writes the PNG chunk of type TYPE holding the first LENGTH bytes of DATA to OS. */
+    private static void writeChunk(OutputStream os, String type, byte[] data, int length)
+            throws IOException {
+        byte[] word = new byte[4];
+        putInt(word, 0, length);
+        os.write(word);
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        os.write(typeBytes);
+        os.write(data, 0, length);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        putInt(word, 0, (int) crc.getValue());
+        os.write(word);
+    }
+
+    /** Puts VALUE in BYTES from AT, big-endian. */
+    private static void putInt(byte[] bytes, int at, int value) {
+        bytes[at] = (byte) (value >>> 24);
+        bytes[at + 1] = (byte) (value >>> 16);
+        bytes[at + 2] = (byte) (value >>> 8);
+        bytes[at + 3] = (byte) value;
+    }
+}
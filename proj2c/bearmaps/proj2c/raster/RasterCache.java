@@ -0,0 +1,111 @@
+package bearmaps.proj2c.raster;
+
+/**
+ * Bounded cache of encoded raster images, keyed by the block of tiles they show
+ * (depth and the x and y range of the tiles) and the version of the route drawn on
+ * them. Rasters are weighed by their encoded length, and the least recently used
+ * ones are evicted to keep the cache under maxBytes.
+ *
+ * Only rasters of the newest route version seen are kept. Asking for a newer
+ * version drops everything cached, and rasters drawn for an older version than
+ * the cache has seen are not added. Lookups and additions hold the lock on the
+ * cache while they check the version, so a raster for an old route cannot slip in
+ * after a newer version has cleared the cache. Cached arrays are shared and must
+ * not be changed.
+ */
+public class RasterCache {
+    /* bits given to each coordinate of a key */
+    private static final int BITS = 12;
+
+    private final WeightedLruCache<byte[]> rasters;
+    /* newest route version seen; guarded by this */
+    private long routeVersion;
+    private long invalidations;
+
+    /** Makes an empty cache holding at most MAXBYTES of encoded rasters. */
+    public RasterCache(long maxBytes) {
+        rasters = new WeightedLruCache<>(maxBytes, png -> png.length);
+    }
+
+    /**
+     * Returns the raster of the tiles at DEPTH from column X0 through X1 and row Y0
+     * through Y1 with route ROUTEVERSION drawn on it, or null if it is not cached.
+     */
+    public synchronized byte[] get(int depth, int x0, int y0, int x1, int y1, long routeVersion) {
+        if (!checkVersion(routeVersion)) {
+            return null;
+        }
+        return rasters.get(key(depth, x0, y0, x1, y1));
+    }
+
+    /**
+     * Caches PNG as the raster of the tiles at DEPTH from column X0 through X1 and
+     * row Y0 through Y1 with route ROUTEVERSION drawn on it, unless ROUTEVERSION is
+     * older than the newest the cache has seen.
+     */
+    public synchronized void put(int depth, int x0, int y0, int x1, int y1, long routeVersion, byte[] png) {
+        if (checkVersion(routeVersion)) {
+            rasters.put(key(depth, x0, y0, x1, y1), png);
+        }
+    }
+
+    /** Returns the number of rasters in the cache. */
+    public int size() {
+        return rasters.size();
+    }
+
+    /** Returns the number of bytes the cached rasters take. */
+    public long bytes() {
+        return rasters.weight();
+    }
+
+    /** Returns the number of lookups that found their raster in the cache. */
+    public long hits() {
+        return rasters.hits();
+    }
+
+    /** Returns the number of lookups that did not. */
+    public long misses() {
+        return rasters.misses();
+    }
+
+    /** Returns the number of rasters evicted to make room for others. */
+    public long evictions() {
+        return rasters.evictions();
+    }
+
+    /** Returns the number of times rasters were dropped because the route changed. */
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+
+    /** Returns the fraction of lookups that found their raster in the cache. */
+    public double hitRate() {
+        return rasters.hitRate();
+    }
+
+    @Override
+    public String toString() {
+        return rasters + ", " + invalidations() + " invalidations";
+    }
+
+    /**
+     * Empties the cache if VERSION is newer than any route version seen before.
+     * Returns whether VERSION is the newest, so that rasters for it may be cached.
+     */
+    private synchronized boolean checkVersion(long version) {
+        if (version > routeVersion) {
+            routeVersion = version;
+            if (rasters.size() > 0) {
+                rasters.clear();
+                invalidations += 1;
+            }
+        }
+        return version == routeVersion;
+    }
+
+    private static long key(int depth, int x0, int y0, int x1, int y1) {
+        return ((long) depth << (4 * BITS)) | ((long) x0 << (3 * BITS)) | ((long) y0 << (2 * BITS))
+                | ((long) x1 << BITS) | y1;
+    }
+}
@@ -0,0 +1,44 @@
+package bearmaps.proj2c.raster;
+
+import bearmaps.proj2c.utils.Constants;
+
+/**
+ * The shared objects that raster and tile requests are served with, made from the
+ * settings in Constants. They map the tile packs and start thread pools, so they
+ * live here rather than in Constants: nothing is opened or started until one of
+ * them is first used, and code that only reads a setting never pays for them.
+ */
+public class RasterServices {
+
+    /**
+     * Where tiles are read from, as they are stored: the tile pack if there is one,
+     * and Constants.IMG_ROOT for the rest. Raster requests decode them through
+     * TILE_CACHE, and TileAPIHandler serves them as they are.
+     */
+    public static final TileSource TILE_SOURCE = TilePack.openWithFallback(
+            Constants.TILE_PACK_PATH, Constants.IMG_ROOT);
+
+    /** Decoded tiles shared by every raster request; see TileCache. */
+    public static final TileCache TILE_CACHE = new TileCache(TILE_SOURCE,
+            Constants.TILE_CACHE_BYTES);
+
+    /** Stitches tiles for raster requests, when there are no metatiles; see TileCompositor. */
+    public static final TileCompositor TILE_COMPOSITOR = new TileCompositor(TILE_CACHE,
+            Constants.TILE_SIZE, Constants.TILE_COMPOSITOR_THREADS);
+
+    /** Encodes the PNG of every raster request. */
+    public static final PngEncoder RASTER_PNG_ENCODER = Constants.RASTER_PNG_QUALITY
+            ? PngEncoder.quality(Constants.RASTER_PNG_THREADS)
+            : PngEncoder.fast(Constants.RASTER_PNG_THREADS);
+
+    /**
+     * Makes the base image of every raster request: cropped from the metatile pack if
+     * there is one, else stitched from single tiles by TILE_COMPOSITOR.
+     */
+    public static final TileCompositor RASTER_COMPOSITOR = MetatilePyramid.openCompositor(
+            Constants.METATILE_PACK_PATH, TILE_COMPOSITOR, Constants.METATILE_SIZE,
+            RASTER_PNG_ENCODER, Constants.METATILE_CACHE_BYTES, Constants.TILE_COMPOSITOR_THREADS);
+
+    /** Encoded rasters shared by every raster request; see RasterCache. */
+    public static final RasterCache RASTER_CACHE = new RasterCache(Constants.RASTER_CACHE_BYTES);
+}
@@ -0,0 +1,178 @@
+package bearmaps.proj2c.raster;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded cache of decoded map tiles, keyed by (depth, x, y). Tiles are read from
+ * a TileSource, such as the PNG files under a root folder named like
+ * d{depth}_x{x}_y{y}.png or a TilePack, the first time they are asked for, and
+ * kept as TYPE_INT_RGB images so that drawing one onto a raster is a plain copy.
+ *
+ * The cache holds at most maxBytes of pixels, counting 4 bytes a pixel, and evicts
+ * the least recently used tiles to stay under that. Lookups take one short lock;
+ * tiles are decoded outside of it, so threads missing on different tiles decode
+ * them at the same time. Two threads missing on the same tile may both decode it,
+ * which costs a little work but no correctness. Cached images are shared and must
+ * not be drawn on.
+ */
+public class TileCache {
+    /* bytes each pixel of a cached tile takes */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final TileSource source;
+    private final WeightedLruCache<BufferedImage> tiles;
+
+    /** Makes an empty cache of the tiles under ROOT holding at most MAXBYTES of pixels. */
+    public TileCache(String root, long maxBytes) {
+        this(new TileDirectory(root), maxBytes);
+    }
+
+    /** Makes an empty cache of the tiles of SOURCE holding at most MAXBYTES of pixels. */
+    public TileCache(TileSource source, long maxBytes) {
+        this.source = source;
+        tiles = new WeightedLruCache<>(maxBytes, TileCache::weight);
+    }
+
+    /** Returns the name of the file tile (DEPTH, X, Y) is stored in. */
+    public static String fileName(int depth, int x, int y) {
+        return "d" + depth + "_x" + x + "_y" + y + ".png";
+    }
+
+    /**
+     * Returns {depth, x, y} of the tile stored in the file NAME, the inverse of
+     * fileName.
+     * @throws IllegalArgumentException if NAME is not a tile file name.
+     */
+    public static int[] parseFileName(String name) {
+        int x = name.indexOf("_x");
+        int y = name.indexOf("_y");
+        if (!name.startsWith("d") || x < 0 || y < x || !name.endsWith(".png")) {
+            throw new IllegalArgumentException("Not a tile file name: " + name);
+        }
+        try {
+            return new int[]{Integer.parseInt(name.substring(1, x)),
+                Integer.parseInt(name.substring(x + 2, y)),
+                Integer.parseInt(name.substring(y + 2, name.length() - 4))};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a tile file name: " + name);
+        }
+    }
+
+    /**
+     * Returns the tile (DEPTH, X, Y), reading it from disk if it is not cached, or
+     * null if it cannot be read.
+     */
+    public BufferedImage get(int depth, int x, int y) {
+        long key = key(depth, x, y);
+        BufferedImage tile = tiles.get(key);
+        if (tile != null) {
+            return tile;
+        }
+        tile = decode(source.read(depth, x, y));
+        if (tile == null) {
+            return null;
+        }
+        return tiles.put(key, tile);
+    }
+
+    /**
+     * Reads every tile at depths 0 through MAXDEPTH into the cache, as far as there
+     * is room, so that the first requests for zoomed out views do not go to disk.
+     */
+    public void warm(int maxDepth) {
+        List<int[]> keys = new ArrayList<>();
+        for (int depth = 0; depth <= maxDepth; depth += 1) {
+            for (int y = 0; y < 1 << depth; y += 1) {
+                for (int x = 0; x < 1 << depth; x += 1) {
+                    keys.add(new int[]{depth, x, y});
+                }
+            }
+        }
+        keys.parallelStream().forEach(k -> get(k[0], k[1], k[2]));
+    }
+
+    /** Returns the number of tiles in the cache. */
+    public int size() {
+        return tiles.size();
+    }
+
+    /** Returns the number of bytes of pixels the cached tiles take. */
+    public long bytes() {
+        return tiles.weight();
+    }
+
+    /** Returns the number of lookups that found their tile in the cache. */
+    public long hits() {
+        return tiles.hits();
+    }
+
+    /** Returns the number of lookups that had to read their tile from disk. */
+    public long misses() {
+        return tiles.misses();
+    }
+
+    /** Returns the number of tiles evicted to make room for others. */
+    public long evictions() {
+        return tiles.evictions();
+    }
+
+    /** Returns the fraction of lookups that found their tile in the cache. */
+    public double hitRate() {
+        return tiles.hitRate();
+    }
+
+    @Override
+    public String toString() {
+        return tiles.toString();
+    }
+
+    private static long key(int depth, int x, int y) {
+        return ((long) depth << 48) | ((long) x << 24) | y;
+    }
+
+    private static long weight(BufferedImage tile) {
+        return (long) tile.getWidth() * tile.getHeight() * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Decodes the PNG bytes PNG as a TYPE_INT_RGB image, or returns null if there are
+     * none or they cannot be decoded.
+     */
+    private static BufferedImage decode(ByteBuffer png) {
+        if (png == null) {
+            return null;
+        }
+        byte[] bytes;
+        int offset = 0;
+        if (png.hasArray()) {
+            bytes = png.array();
+            offset = png.arrayOffset() + png.position();
+        } else {
+            bytes = new byte[png.remaining()];
+            png.duplicate().get(bytes);
+        }
+        BufferedImage decoded;
+        try {
+            decoded = ImageIO.read(new ByteArrayInputStream(bytes, offset, png.remaining()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (decoded == null || decoded.getType() == BufferedImage.TYPE_INT_RGB) {
+            return decoded;
+        }
+        BufferedImage tile = new BufferedImage(decoded.getWidth(), decoded.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics g = tile.getGraphics();
+        g.drawImage(decoded, 0, 0, null);
+        g.dispose();
+        return tile;
+    }
+}
@@ -0,0 +1,141 @@
+package bearmaps.proj2c.raster;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stitches blocks of tiles from a TileCache into one image, reading and copying
+ * the tiles on a pool of its own threads. Each tile's pixels are copied row by row
+ * straight into its own part of the target's raster, so the threads never share a
+ * Graphics or touch the same pixels.
+ *
+ * The cache may hold metatiles instead: square blocks of metatileSize tiles a side,
+ * stitched ahead of time by MetatilePyramid, where metatile (depth, x, y) has tile
+ * (depth, x * metatileSize, y * metatileSize) in its upper left corner. Then the
+ * part of each metatile the image needs is cropped out and copied, so a block of
+ * many tiles takes only a few lookups.
+ *
+ * The pool has a fixed number of threads and a bounded queue of tiles waiting for
+ * them. When the queue is full, the thread asking for the image copies the tile
+ * itself, so a burst of large requests slows down instead of piling up work.
+ */
+public class TileCompositor {
+    /* most tiles waiting for a pool thread at once */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final TileCache tiles;
+    private final int tileSize;
+    private final int metatileSize;
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Makes a compositor of the TILESIZE x TILESIZE tiles in TILES that works on
+     * THREADS threads.
+     */
+    public TileCompositor(TileCache tiles, int tileSize, int threads) {
+        this(tiles, tileSize, 1, threads);
+    }
+
+    /**
+     * Makes a compositor of TILESIZE x TILESIZE tiles cut from the metatiles in
+     * TILES, each METATILESIZE tiles a side, that works on THREADS threads.
+     */
+    public TileCompositor(TileCache tiles, int tileSize, int metatileSize, int threads) {
+        this.tiles = tiles;
+        this.tileSize = tileSize;
+        this.metatileSize = metatileSize;
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "tile-compositor");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Returns a TYPE_INT_RGB image of the COLS x ROWS block of tiles at DEPTH whose
+     * upper left tile is (X, Y). Tiles that cannot be read are left black.
+     */
+    public BufferedImage composite(int depth, int x, int y, int cols, int rows) {
+        BufferedImage img = new BufferedImage(cols * tileSize, rows * tileSize,
+                BufferedImage.TYPE_INT_RGB);
+        WritableRaster raster = img.getRaster();
+        int mx0 = x / metatileSize, mx1 = (x + cols - 1) / metatileSize;
+        int my0 = y / metatileSize, my1 = (y + rows - 1) / metatileSize;
+        if (mx0 == mx1 && my0 == my1) {
+            copy(raster, depth, mx0, my0, x, y);
+            return img;
+        }
+        List<Future<?>> copies = new ArrayList<>((mx1 - mx0 + 1) * (my1 - my0 + 1));
+        for (int my = my0; my <= my1; my += 1) {
+            for (int mx = mx0; mx <= mx1; mx += 1) {
+                int col = mx, row = my;
+                copies.add(pool.submit(() -> copy(raster, depth, col, row, x, y)));
+            }
+        }
+        try {
+            for (Future<?> copy : copies) {
+                copy.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stitching tiles.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not stitch tiles.", e.getCause());
+        }
+        return img;
+    }
+
+    /** Returns the cache the tiles, or metatiles, are read from. */
+    public TileCache tiles() {
+        return tiles;
+    }
+
+    /** Returns the number of pixels a side of a tile. */
+    public int tileSize() {
+        return tileSize;
+    }
+
+    /** Returns the number of tiles a side of the metatiles read, 1 if they are tiles. */
+    public int metatileSize() {
+        return metatileSize;
+    }
+
+    /** Stops the pool's threads once the images already asked for are done. */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Copies the part of metatile (DEPTH, MX, MY) that the block of tiles in RASTER
+     * shows, whose upper left tile is (X, Y), into its place in RASTER.
+     */
+    private void copy(WritableRaster raster, int depth, int mx, int my, int x, int y) {
+        BufferedImage metatile = tiles.get(depth, mx, my);
+        if (metatile == null) {
+            return;
+        }
+        /* both are TYPE_INT_RGB images, one int a pixel, so copy the pixels row by row */
+        int[] from = ((DataBufferInt) metatile.getRaster().getDataBuffer()).getData();
+        int[] to = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int fromWidth = metatile.getWidth();
+        int toWidth = raster.getWidth();
+        /* pixels of the metatile's upper left corner, and of the part to copy, in RASTER */
+        int cornerX = (mx * metatileSize - x) * tileSize, cornerY = (my * metatileSize - y) * tileSize;
+        int left = Math.max(0, cornerX), top = Math.max(0, cornerY);
+        int right = Math.min(toWidth, cornerX + fromWidth);
+        int bottom = Math.min(raster.getHeight(), cornerY + metatile.getHeight());
+        for (int r = top; r < bottom; r += 1) {
+            System.arraycopy(from, (r - cornerY) * fromWidth + left - cornerX, to, r * toWidth + left,
+                    right - left);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package bearmaps.proj2c.raster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** TileSource of the tile files in a folder, each named as TileCache.fileName says. */
+public class TileDirectory implements TileSource {
+    private final Path root;
+
+    /** Makes a source of the tiles in the folder ROOT. */
+    public TileDirectory(String root) {
+        this.root = Paths.get(root);
+    }
+
+    @Override
+    public ByteBuffer read(int depth, int x, int y) {
+        Path file = root.resolve(TileCache.fileName(depth, x, y));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
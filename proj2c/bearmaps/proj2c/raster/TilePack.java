@@ -0,0 +1,206 @@
+package bearmaps.proj2c.raster;
+
+import bearmaps.proj2c.utils.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * All the tiles of a pyramid in one file, so that reading a tile is a lookup in
+ * memory rather than an open, read and close of a file of its own. The file is
+ * memory-mapped, and read returns slices of the mapping, so serving a tile from a
+ * pack copies nothing on the way.
+ *
+ * The index has a fixed-size entry for every tile at depths 0 through maxDepth,
+ * whether or not it exists, so the entry of (depth, x, y) is found by arithmetic:
+ * the depths before it have (4^depth - 1) / 3 tiles, and each depth is stored row
+ * by row. Missing tiles have length 0.
+ *
+ * Layout, all numbers big-endian:
+ * <pre>
+ *   int magic, int version, int maxDepth
+ *   for each tile: long offset in the file, int length
+ *   the PNG bytes of the tiles
+ * </pre>
+ */
+public class TilePack implements TileSource {
+    private static final int MAGIC = 0x424d5450;  // "BMTP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int ENTRY_BYTES = 12;
+    /* deepest maxDepth whose tile count fits in an int */
+    private static final int MAX_DEPTH = 14;
+
+    private final MappedByteBuffer pack;
+    private final int maxDepth;
+
+    private TilePack(MappedByteBuffer pack, int maxDepth) {
+        this.pack = pack;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Maps the pack at PATH.
+     * @throws IOException if it cannot be read, is not a tile pack of this version, or
+     * is too big to map at once.
+     */
+    public static TilePack open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too big to map.");
+            }
+            MappedByteBuffer pack = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (pack.remaining() < HEADER_BYTES || pack.getInt(0) != MAGIC
+                    || pack.getInt(4) != VERSION) {
+                throw new IOException(path + " is not a tile pack.");
+            }
+            int maxDepth = pack.getInt(8);
+            if (maxDepth < 0 || maxDepth > MAX_DEPTH || indexBytes(maxDepth) > pack.capacity()) {
+                throw new IOException(path + " has a broken index.");
+            }
+            return new TilePack(pack, maxDepth);
+        }
+    }
+
+    /**
+     * Returns the tiles in the pack at PACKPATH, and the files under ROOT for tiles
+     * the pack does not have. If there is no pack at PACKPATH, or it cannot be read,
+     * just returns the files under ROOT.
+     */
+    public static TileSource openWithFallback(String packPath, String root) {
+        TileSource files = new TileDirectory(root);
+        if (!new File(packPath).exists()) {
+            return files;
+        }
+        try {
+            return new FallbackTileSource(open(packPath), files);
+        } catch (IOException e) {
+            System.out.println("Ignoring tile pack " + packPath + ": " + e);
+            return files;
+        }
+    }
+
+    /** Returns the deepest depth the pack has room for. */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    @Override
+    public ByteBuffer read(int depth, int x, int y) {
+        if (depth < 0 || depth > maxDepth || x < 0 || y < 0 || x >= 1 << depth || y >= 1 << depth) {
+            return null;
+        }
+        /* open checked that the whole index lies inside the mapping */
+        int entry = (int) (HEADER_BYTES + (long) slot(depth, x, y) * ENTRY_BYTES);
+        long offset = pack.getLong(entry);
+        int length = pack.getInt(entry + 8);
+        if (length == 0 || offset < 0 || offset + length > pack.capacity()) {
+            return null;
+        }
+        /* absolute reads and a duplicate never move the shared buffer's position */
+        ByteBuffer tile = pack.duplicate();
+        tile.position((int) offset);
+        tile.limit((int) offset + length);
+        return tile.slice();
+    }
+
+    /**
+     * Writes a pack of every tile of SOURCE at depths 0 through MAXDEPTH to PATH. The
+     * tiles of each row are read from SOURCE at the same time, which pays off when
+     * SOURCE makes them rather than reads them. The file is written next to PATH
+     * first and then moved into place, so a reader never sees half a pack.
+     * @throws IllegalArgumentException if the index for MAXDEPTH would not fit in
+     * memory at once.
+     */
+    public static void write(String path, TileSource source, int maxDepth) throws IOException {
+        if (maxDepth < 0 || maxDepth > MAX_DEPTH || indexBytes(maxDepth) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot pack tiles down to depth " + maxDepth);
+        }
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        int slots = (int) slots(maxDepth);
+        long[] offsets = new long[slots];
+        int[] lengths = new int[slots];
+        long offset = indexBytes(maxDepth);
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            /* the tiles first, after room for the header and index... */
+            channel.position(offset);
+            for (int depth = 0; depth <= maxDepth; depth += 1) {
+                for (int y = 0; y < 1 << depth; y += 1) {
+                    int d = depth, row = y;
+                    ByteBuffer[] tiles = IntStream.range(0, 1 << depth).parallel()
+                            .mapToObj(x -> source.read(d, x, row)).toArray(ByteBuffer[]::new);
+                    for (int x = 0; x < 1 << depth; x += 1) {
+                        ByteBuffer tile = tiles[x];
+                        if (tile == null) {
+                            continue;
+                        }
+                        int slot = slot(depth, x, y);
+                        offsets[slot] = offset;
+                        lengths[slot] = tile.remaining();
+                        offset += tile.remaining();
+                        writeFully(channel, tile.duplicate(), channel.position());
+                    }
+                }
+            }
+
+            /* ...then the header and index at the front */
+            ByteBuffer index = ByteBuffer.allocate((int) indexBytes(maxDepth));
+            index.putInt(MAGIC).putInt(VERSION).putInt(maxDepth);
+            for (int slot = 0; slot < slots; slot += 1) {
+                index.putLong(offsets[slot]).putInt(lengths[slot]);
+            }
+            index.flip();
+            writeFully(channel, index, 0);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Writes all of BYTES to CHANNEL starting at POSITION, and moves the channel past them. */
+    private static void writeFully(FileChannel channel, ByteBuffer bytes, long position)
+            throws IOException {
+        channel.position(position);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /** Returns the number of tiles at depths 0 through MAXDEPTH. */
+    private static long slots(int maxDepth) {
+        return ((1L << (2 * (maxDepth + 1))) - 1) / 3;
+    }
+
+    /** Returns the number of bytes the header and index of a pack to MAXDEPTH take. */
+    private static long indexBytes(int maxDepth) {
+        return HEADER_BYTES + slots(maxDepth) * ENTRY_BYTES;
+    }
+
+    /** Returns the index entry of tile (DEPTH, X, Y), for DEPTH at most MAX_DEPTH. */
+    private static int slot(int depth, int x, int y) {
+        return (int) slots(depth - 1) + (y << depth) + x;
+    }
+
+    /**
+     * Builds the tile pack Constants.TILE_PACK_PATH of the tiles in
+     * Constants.IMG_ROOT, or the pack ARGS[1] of the tiles in the folder ARGS[0].
+     */
+    public static void main(String[] args) throws IOException {
+        String root = args.length > 0 ? args[0] : Constants.IMG_ROOT;
+        String path = args.length > 1 ? args[1] : Constants.TILE_PACK_PATH;
+        long start = System.nanoTime();
+        write(path, new TileDirectory(root), Constants.TILE_PACK_MAX_DEPTH);
+        System.out.printf("Wrote %s (%d MB) in %.1f s.%n", path, new File(path).length() >> 20,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,13 @@
+package bearmaps.proj2c.raster;
+
+import java.nio.ByteBuffer;
+
+/** Somewhere the encoded PNG files of map tiles can be read from. */
+public interface TileSource {
+    /**
+     * Returns the PNG bytes of tile (DEPTH, X, Y), from the buffer's position to its
+     * limit, or null if there is no such tile or it cannot be read. The buffer may
+     * be shared with other callers, so it must not be written to.
+     */
+    ByteBuffer read(int depth, int x, int y);
+}
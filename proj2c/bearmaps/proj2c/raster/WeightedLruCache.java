@@ -0,0 +1,101 @@
+package bearmaps.proj2c.raster;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Map from long keys to values that holds values weighing at most maxWeight in all,
+ * evicting the least recently used ones to stay under it, and counts its hits,
+ * misses and evictions. Every method takes the cache's lock, so callers should do
+ * any slow work to produce a value outside of it.
+ */
+class WeightedLruCache<V> {
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    /* values in access order, least recently used first */
+    private final LinkedHashMap<Long, V> values = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+    private long hits, misses, evictions;
+
+    /** Makes an empty cache of values weighing at most MAXWEIGHT by WEIGHER. */
+    WeightedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /** Returns the value for KEY, or null after counting a miss if there is none. */
+    synchronized V get(long key) {
+        V value = values.get(key);
+        if (value != null) {
+            hits += 1;
+        } else {
+            misses += 1;
+        }
+        return value;
+    }
+
+    /**
+     * Adds VALUE for KEY unless the cache already has a value for it, and returns
+     * the value the cache now has. A value heavier than the whole cache is returned
+     * but not kept.
+     */
+    synchronized V put(long key, V value) {
+        V other = values.get(key);
+        if (other != null) {
+            return other;
+        }
+        long w = weigher.applyAsLong(value);
+        if (w > maxWeight) {
+            return value;
+        }
+        values.put(key, value);
+        weight += w;
+        Iterator<Map.Entry<Long, V>> it = values.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            weight -= weigher.applyAsLong(it.next().getValue());
+            it.remove();
+            evictions += 1;
+        }
+        return value;
+    }
+
+    /** Removes every value, which does not count as evicting them. */
+    synchronized void clear() {
+        values.clear();
+        weight = 0;
+    }
+
+    synchronized int size() {
+        return values.size();
+    }
+
+    synchronized long weight() {
+        return weight;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    /** Returns the fraction of lookups that were hits, or 0 if there were none. */
+    synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries, %d MB, %d hits, %d misses (%.1f%% hits), %d evictions",
+                values.size(), weight >> 20, hits, misses, 100 * hitRate(), evictions);
+    }
+}
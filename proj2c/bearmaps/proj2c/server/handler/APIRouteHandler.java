@@ -84,4 +84,55 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
         }
         return params;
     }
+
+    /**
+     * Returns a parameter map of whichever of the optional request parameters are
+     * present. Requires that all of them are doubles.
+     * @param req HTTP Request.
+     * @param optionalParams Parameters to look for.
+     * @return A map of each present input parameter to its numerical value.
+     */
+    protected HashMap<String, Double> getOptionalRequestParams(
+            spark.Request req, String[] optionalParams) {
+        Set<String> reqParams = req.queryParams();
+        HashMap<String, Double> params = new HashMap<>();
+        for (String param : optionalParams) {
+            if (reqParams.contains(param)) {
+                try {
+                    params.put(param, Double.parseDouble(req.queryParams(param)));
+                } catch (NumberFormatException e) {
+                    e.printStackTrace();
+                    halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Validate & return a request parameter that is a comma-separated list of doubles.
+     * @param req HTTP Request.
+     * @param param Name of the parameter.
+     * @return The numbers in the list, in order; empty if the parameter is empty.
+     */
+    protected double[] getRequestDoubles(spark.Request req, String param) {
+        String value = req.queryParams(param);
+        if (value == null) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        value = value.trim();
+        if (value.isEmpty()) {
+            return new double[0];
+        }
+        String[] parts = value.split(",");
+        double[] values = new double[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i += 1) {
+                values[i] = Double.parseDouble(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+        }
+        return values;
+    }
 }
@@ -19,9 +19,14 @@ public class APIRouteHandlerFactory {
     static {
         handlerMap = new HashMap<>();
         handlerMap.put("raster", new RasterAPIHandler());
+        handlerMap.put(RasterAPIHandler.IMAGE_PATH.substring(1), new RasterImageAPIHandler());
         handlerMap.put("route", new RoutingAPIHandler());
         handlerMap.put("clear_route", new ClearRouteAPIHandler());
         handlerMap.put("search", new SearchAPIHandler());
+        handlerMap.put("closest_all", new ClosestAllAPIHandler());
+        handlerMap.put("cache_stats", new CacheStatsAPIHandler());
+        handlerMap.put("tiles/:depth/:x/:y", new TileAPIHandler());
+        handlerMap.put("route_points", new RoutePointsAPIHandler());
         handlerMap.put("", new RedirectAPIHandler());
     }
 
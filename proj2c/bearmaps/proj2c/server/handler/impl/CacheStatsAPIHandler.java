@@ -0,0 +1,59 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.proj2c.raster.RasterServices.RASTER_CACHE;
+import static bearmaps.proj2c.raster.RasterServices.RASTER_COMPOSITOR;
+import static bearmaps.proj2c.raster.RasterServices.TILE_CACHE;
+
+/**
+ * Reports how well the raster caches are doing: for the decoded tile cache under
+ * "tiles", the decoded metatile cache under "metatiles" if rasters are cropped from
+ * metatiles, and the encoded raster cache under "rasters", how many entries and bytes
+ * each holds, and its hits, misses, hit rate and evictions.
+ */
+public class CacheStatsAPIHandler extends APIRouteHandler<Object, Map<String, Map<String, Object>>> {
+
+    @Override
+    protected Object parseRequestParams(Request request) {
+        return null;
+    }
+
+    @Override
+    protected Map<String, Map<String, Object>> processRequest(Object requestParams, Response response) {
+        Map<String, Object> rasters = new HashMap<>();
+        rasters.put("entries", RASTER_CACHE.size());
+        rasters.put("bytes", RASTER_CACHE.bytes());
+        rasters.put("hits", RASTER_CACHE.hits());
+        rasters.put("misses", RASTER_CACHE.misses());
+        rasters.put("hit_rate", RASTER_CACHE.hitRate());
+        rasters.put("evictions", RASTER_CACHE.evictions());
+        rasters.put("invalidations", RASTER_CACHE.invalidations());
+
+        Map<String, Map<String, Object>> stats = new HashMap<>();
+        stats.put("tiles", stats(TILE_CACHE));
+        if (RASTER_COMPOSITOR.metatileSize() > 1) {
+            stats.put("metatiles", stats(RASTER_COMPOSITOR.tiles()));
+        }
+        stats.put("rasters", rasters);
+        return stats;
+    }
+
+    /** Returns the numbers reported for the decoded tile or metatile cache CACHE. */
+    private static Map<String, Object> stats(TileCache cache) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", cache.size());
+        stats.put("bytes", cache.bytes());
+        stats.put("hits", cache.hits());
+        stats.put("misses", cache.misses());
+        stats.put("hit_rate", cache.hitRate());
+        stats.put("evictions", cache.evictions());
+        return stats;
+    }
+}
@@ -0,0 +1,35 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Snaps a batch of points to the graph in one request. Takes the parameters "lons"
+ * and "lats", each a comma-separated list of numbers, and returns the id of the
+ * vertex closest to each point as one JSON array, in the same order. Large batches
+ * can be POSTed as a form body instead of put in the query string.
+ */
+public class ClosestAllAPIHandler extends APIRouteHandler<double[][], long[]> {
+
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
+
+    @Override
+    protected double[][] parseRequestParams(Request request) {
+        double[] lons = getRequestDoubles(request, "lons");
+        double[] lats = getRequestDoubles(request, "lats");
+        if (lons.length != lats.length) {
+            halt(HALT_RESPONSE, "Incorrect parameters - as many lons as lats are needed.");
+        }
+        return new double[][]{lons, lats};
+    }
+
+    @Override
+    protected long[] processRequest(double[][] requestParams, Response response) {
+        return SEMANTIC_STREET_GRAPH.closestAll(requestParams[0], requestParams[1]);
+    }
+}
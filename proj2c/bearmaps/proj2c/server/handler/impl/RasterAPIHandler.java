@@ -1,21 +1,24 @@
 package bearmaps.proj2c.server.handler.impl;
 
 import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.raster.TileCache;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
 import bearmaps.proj2c.utils.Constants;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.util.*;
 import java.util.List;
 
+import static bearmaps.proj2c.raster.RasterServices.RASTER_CACHE;
+import static bearmaps.proj2c.raster.RasterServices.RASTER_COMPOSITOR;
+import static bearmaps.proj2c.raster.RasterServices.RASTER_PNG_ENCODER;
 import static bearmaps.proj2c.utils.Constants.*;
 
 /**
@@ -36,6 +39,16 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     private static final String[] REQUIRED_RASTER_REQUEST_PARAMS = {"ullat", "ullon", "lrlat",
             "lrlon", "w", "h"};
 
+    /**
+     * image_url : if present and not 0, the result carries the path of the rastered
+     * image under "image_url", to be fetched as PNG bytes from RasterImageAPIHandler,
+     * instead of the image itself Base64 encoded under "b64_encoded_image_data".
+     */
+    private static final String[] OPTIONAL_RASTER_REQUEST_PARAMS = {"image_url"};
+
+    /** Path RasterImageAPIHandler serves rastered images at. */
+    public static final String IMAGE_PATH = "/raster.png";
+
     /**
      * The result of rastering must be a map containing all of the
      * fields listed in the comments for RasterAPIHandler.processRequest.
@@ -46,7 +59,9 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
 
     @Override
     protected Map<String, Double> parseRequestParams(Request request) {
-        return getRequestParams(request, REQUIRED_RASTER_REQUEST_PARAMS);
+        Map<String, Double> params = getRequestParams(request, REQUIRED_RASTER_REQUEST_PARAMS);
+        params.putAll(getOptionalRequestParams(request, OPTIONAL_RASTER_REQUEST_PARAMS));
+        return params;
     }
 
     /**
@@ -139,10 +154,34 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
 
         String[][] grid2DArray = retrieveImgs(renderULLON, renderULLAT, renderLRLON, renderLRLAT, depth);
         results.put("render_grid", grid2DArray);
+        /* a box that cannot be rastered gives an empty grid, which has no size */
+        if (grid2DArray.length > 0 && grid2DArray[0].length > 0) {
+            results.put("raster_width", grid2DArray[0].length * Constants.TILE_SIZE);
+            results.put("raster_height", grid2DArray.length * Constants.TILE_SIZE);
+        }
+
+        Double imageUrl = requestParams.get("image_url");
+        if (imageUrl != null && imageUrl != 0) {
+            results.put("image_url", imageUrl(requestParams));
+        }
 
         return results;
     }
 
+    /**
+     * Returns the path at which the image for the request REQUESTPARAMS is served.
+     * The path names the current route version, so it changes whenever the route
+     * drawn on the image does and browsers do not show a stale image.
+     */
+    private String imageUrl(Map<String, Double> requestParams) {
+        StringJoiner query = new StringJoiner("&", IMAGE_PATH + "?", "");
+        for (String param : REQUIRED_RASTER_REQUEST_PARAMS) {
+            query.add(param + "=" + requestParams.get(param));
+        }
+        query.add("route=" + ROUTE_VERSION.get());
+        return query.toString();
+    }
+
     // user ullon, ullat, lron, lrlat
     private double[] checkAndConfigCoordinates(double ULLON, double ULLAT, double LRLON, double LRLAT){
 
@@ -172,8 +211,7 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
 
             ArrayList<String> imgGrid = new ArrayList<>();
             for(int x = renderULLON; x <= renderLRLON; x++){
-                imgGrid.add("d" + Integer.toString(depth) + "_x" + Integer.toString(x)
-                        + "_y" + Integer.toString(y) + ".png");
+                imgGrid.add(TileCache.fileName(depth, x, y));
             }
             grid.add(imgGrid);
         }
@@ -310,10 +348,8 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     protected Object buildJsonResponse(Map<String, Object> result) {
         boolean rasterSuccess = validateRasteredImgParams(result);
 
-        if (rasterSuccess) {
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            writeImagesToOutputStream(result, os);
-            String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
+        if (rasterSuccess && !result.containsKey("image_url")) {
+            String encodedImage = Base64.getEncoder().encodeToString(encodedRaster(result));
             result.put("b64_encoded_image_data", encodedImage);
         }
         return super.buildJsonResponse(result);
@@ -335,7 +371,7 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
      * Validates that Rasterer has returned a result that can be rendered.
      * @param rip : Parameters provided by the rasterer
      */
-    private boolean validateRasteredImgParams(Map<String, Object> rip) {
+    protected boolean validateRasteredImgParams(Map<String, Object> rip) {
         for (String p : REQUIRED_RASTER_RESULT_PARAMS) {
             if (!rip.containsKey(p)) {
                 System.out.println("Your rastering result is missing the " + p + " field.");
@@ -352,32 +388,52 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         return true;
     }
 
+    /** Writes the PNG of the rastered image for RASTEREDIMAGEPARAMS to OS. */
+    protected void writeRasterToOutputStream(Map<String, Object> rasteredImageParams,
+                                             OutputStream os) throws IOException {
+        os.write(encodedRaster(rasteredImageParams));
+    }
+
+    /**
+     * Returns the PNG of the rastered image for RASTEREDIMAGEPARAMS, from the raster
+     * cache if the same tiles have been rastered with the current route before.
+     */
+    private byte[] encodedRaster(Map<String, Object> rasteredImageParams) {
+        String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
+        int[] ulTile = TileCache.parseFileName(renderGrid[0][0]);
+        int[] lrTile = TileCache.parseFileName(renderGrid[renderGrid.length - 1][renderGrid[0].length - 1]);
+        /* read before drawing, so a route that changes meanwhile is not cached as this version */
+        long routeVersion = ROUTE_VERSION.get();
+        byte[] png = RASTER_CACHE.get(ulTile[0], ulTile[1], ulTile[2], lrTile[1], lrTile[2],
+                routeVersion);
+        if (png == null) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            writeImagesToOutputStream(rasteredImageParams, os);
+            png = os.toByteArray();
+            RASTER_CACHE.put(ulTile[0], ulTile[1], ulTile[2], lrTile[1], lrTile[2], routeVersion, png);
+        }
+        return png;
+    }
+
     /**
      * Writes the images corresponding to rasteredImgParams to the output stream.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we made this into provided code since it was just a bit too low level.
+     * The tiles come from RASTER_COMPOSITOR, cropped out of metatiles rendered ahead
+     * of time if there are any, so that only the route is drawn here.
+     * The PNG is written by RASTER_PNG_ENCODER rather than ImageIO, whose default
+     * deflate settings made encoding the most expensive part of a raster request.
      */
-    private  void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
-                                            ByteArrayOutputStream os) {
+    private void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
+                                           OutputStream os) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
         int numVertTiles = renderGrid.length;
         int numHorizTiles = renderGrid[0].length;
 
-        BufferedImage img = new BufferedImage(numHorizTiles * Constants.TILE_SIZE,
-                numVertTiles * Constants.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        int[] ulTile = TileCache.parseFileName(renderGrid[0][0]);
+        BufferedImage img = RASTER_COMPOSITOR.composite(ulTile[0], ulTile[1], ulTile[2],
+                numHorizTiles, numVertTiles);
         Graphics graphic = img.getGraphics();
-        int x = 0, y = 0;
-
-        for (int r = 0; r < numVertTiles; r += 1) {
-            for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(getImage(Constants.IMG_ROOT + renderGrid[r][c]), x, y, null);
-                x += Constants.TILE_SIZE;
-                if (x >= img.getWidth()) {
-                    x = 0;
-                    y += Constants.TILE_SIZE;
-                }
-            }
-        }
 
         /* If there is a route, draw it. */
         double ullon = (double) rasteredImageParams.get("raster_ul_lon"); //tiles.get(0).ulp;
@@ -404,29 +460,11 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
             });
         }
 
-        rasteredImageParams.put("raster_width", img.getWidth());
-        rasteredImageParams.put("raster_height", img.getHeight());
-
         try {
-            ImageIO.write(img, "png", os);
+            RASTER_PNG_ENCODER.write(img, os);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
     }
-
-    private BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
-        if (tileImg == null) {
-            try {
-                File in = new File(imgPath);
-                tileImg = ImageIO.read(in);
-                //tileImg = ImageIO.read(Thread.currentThread().getContextClassLoader().getResource(imgPath));
-
-            } catch (IOException | NullPointerException e) {
-                e.printStackTrace();
-            }
-        }
-        return tileImg;
-    }
 }
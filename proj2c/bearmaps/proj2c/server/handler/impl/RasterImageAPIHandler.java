@@ -0,0 +1,36 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import spark.Request;
+import spark.Response;
+
+import java.io.OutputStream;
+import java.util.Map;
+
+import static spark.Spark.halt;
+
+/**
+ * Serves rastered images as PNG bytes, for clients that ask RasterAPIHandler for
+ * an image_url instead of Base64 image data. Takes the same parameters as a raster
+ * request and writes the PNG, from the raster cache when it is there, straight to
+ * the response without wrapping it in JSON. The image depends on the route, which
+ * can change under the same URL, so browsers are told to check before reusing it.
+ */
+public class RasterImageAPIHandler extends RasterAPIHandler {
+
+    /** HTTP response when there is no image for the request. */
+    private static final int NOT_FOUND_RESPONSE = 404;
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        Map<String, Object> result = processRequest(parseRequestParams(request), response);
+        if (!validateRasteredImgParams(result)) {
+            halt(NOT_FOUND_RESPONSE, "No image for this view.");
+        }
+        response.type("image/png");
+        response.header("Cache-Control", "no-cache");
+        OutputStream os = response.raw().getOutputStream();
+        writeRasterToOutputStream(result, os);
+        os.flush();
+        return "";
+    }
+}
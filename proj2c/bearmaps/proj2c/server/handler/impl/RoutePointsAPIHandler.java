@@ -0,0 +1,43 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ROUTE_LIST;
+import static bearmaps.proj2c.utils.Constants.ROUTE_VERSION;
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+
+/**
+ * Gives the current route as points, for clients that draw it themselves over the
+ * tiles from TileAPIHandler instead of getting it drawn into a raster. Returns
+ * "route_version", which goes up every time the route changes, and "route", the
+ * list of [lon, lat] of each vertex on the route in order; empty if there is none.
+ */
+public class RoutePointsAPIHandler extends APIRouteHandler<Object, Map<String, Object>> {
+
+    @Override
+    protected Object parseRequestParams(Request request) {
+        return null;
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(Object requestParams, Response response) {
+        long version = ROUTE_VERSION.get();
+        AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
+        List<double[]> points = new ArrayList<>();
+        for (long v : ROUTE_LIST) {
+            points.add(new double[]{graph.lon(v), graph.lat(v)});
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("route_version", version);
+        result.put("route", points);
+        return result;
+    }
+}
@@ -11,6 +11,8 @@ import java.util.Map;
 
 import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
 import static bearmaps.proj2c.utils.Constants.ROUTE_LIST;
+import static bearmaps.proj2c.utils.Constants.ROUTE_VERSION;
+import static bearmaps.proj2c.utils.Constants.ROUTE_SNAP_TO_SEGMENTS;
 
 /**
  * Handles requests from the web browser for routes between locations. The
@@ -28,9 +30,19 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
     private static final String[] REQUIRED_ROUTE_REQUEST_PARAMS = {"start_lat", "start_lon",
             "end_lat", "end_lon"};
 
+    /**
+     * Route requests may also lower the server's search limits with these parameters:<br>
+     * timeout : seconds the search may run for,<br>
+     * max_states : number of vertices the search may explore.<br>
+     * Values above the server defaults in Constants are capped at those defaults.
+     **/
+    private static final String[] OPTIONAL_ROUTE_REQUEST_PARAMS = {"timeout", "max_states"};
+
     @Override
     protected Map<String, Double> parseRequestParams(Request request) {
-        return getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
+        Map<String, Double> params = getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
+        params.putAll(getOptionalRequestParams(request, OPTIONAL_ROUTE_REQUEST_PARAMS));
+        return params;
     }
 
     /**
@@ -61,8 +73,10 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
         List<Long> route = Router.shortestPath(
                 SEMANTIC_STREET_GRAPH,
                 requestParams.get("start_lon"), requestParams.get("start_lat"),
-                requestParams.get("end_lon"), requestParams.get("end_lat"));
+                requestParams.get("end_lon"), requestParams.get("end_lat"),
+                routeOptions(requestParams));
         ROUTE_LIST.addAll(route);
+        ROUTE_VERSION.incrementAndGet();
         String directions = getDirectionsText();
 
         Map<String, Object> routeParams = new HashMap<>();
@@ -72,6 +86,24 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
         return routeParams;
     }
 
+    /**
+     * Builds the search limits for a request, letting the optional parameters lower
+     * but never raise the server defaults.
+     */
+    private Router.RouteOptions routeOptions(Map<String, Double> requestParams) {
+        Router.RouteOptions options = new Router.RouteOptions();
+        options.snapToSegments = ROUTE_SNAP_TO_SEGMENTS;
+        if (requestParams.containsKey("timeout")) {
+            options.timeout = Math.min(options.timeout,
+                    Math.max(0, requestParams.get("timeout")));
+        }
+        if (requestParams.containsKey("max_states")) {
+            options.maxStatesExplored = (int) Math.min(options.maxStatesExplored,
+                    Math.max(0, requestParams.get("max_states")));
+        }
+        return options;
+    }
+
     /**
      * Takes the route of this MapServer and converts it into an HTML friendly
      * String to be passed to the frontend.
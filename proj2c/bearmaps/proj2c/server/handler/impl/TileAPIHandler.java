@@ -0,0 +1,129 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import org.eclipse.jetty.server.HttpOutput;
+import spark.Request;
+import spark.Response;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static bearmaps.proj2c.raster.RasterServices.TILE_SOURCE;
+import static bearmaps.proj2c.utils.Constants.TILE_MAX_AGE_SECONDS;
+import static spark.Spark.halt;
+
+/**
+ * Serves single map tiles at /tiles/{depth}/{x}/{y}.png, as the PNG bytes they are
+ * stored as, without decoding them. Browsers and proxies may keep tiles for
+ * TILE_MAX_AGE_SECONDS, and after that can check whether theirs is still current
+ * by sending back its ETag in If-None-Match, which is answered with an empty 304
+ * if it is. Tiles are taken not to change while the server runs, so the ETag last
+ * served for a tile is remembered and a matching If-None-Match is answered without
+ * reading the tile at all. The route is not drawn on tiles; clients get it from
+ * RoutePointsAPIHandler and draw it over them.
+ */
+public class TileAPIHandler extends APIRouteHandler<int[], ByteBuffer> {
+
+    /** HTTP response when there is no such tile. */
+    private static final int NOT_FOUND_RESPONSE = 404;
+
+    /** HTTP response when the client's copy of the tile is current. */
+    private static final int NOT_MODIFIED_RESPONSE = 304;
+
+    /* ETag of the bytes last served for each tile, by TileAPIHandler.key */
+    private final Map<Long, String> etags = new ConcurrentHashMap<>();
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        int[] tile = parseRequestParams(request);
+        String ifNoneMatch = request.headers("If-None-Match");
+        /* a client holding the ETag last served for the tile needs no bytes read */
+        String etag = etags.get(key(tile));
+        ByteBuffer png = null;
+        if (etag == null || !matches(ifNoneMatch, etag)) {
+            png = processRequest(tile, response);
+            etag = etag(png);
+            etags.put(key(tile), etag);
+        }
+        response.header("ETag", etag);
+        response.header("Cache-Control", "public, max-age=" + TILE_MAX_AGE_SECONDS);
+        if (matches(ifNoneMatch, etag)) {
+            response.status(NOT_MODIFIED_RESPONSE);
+            return "";
+        }
+        response.type("image/png");
+        response.raw().setContentLength(png.remaining());
+        OutputStream os = response.raw().getOutputStream();
+        if (png.hasArray()) {
+            os.write(png.array(), png.arrayOffset() + png.position(), png.remaining());
+        } else if (os instanceof HttpOutput) {
+            /* Jetty writes a tile pack's mapped bytes to the socket without copying them */
+            ((HttpOutput) os).write(png.duplicate());
+        } else {
+            Channels.newChannel(os).write(png.duplicate());
+        }
+        os.flush();
+        return "";
+    }
+
+    /** Returns {depth, x, y} of the tile asked for. */
+    @Override
+    protected int[] parseRequestParams(Request request) {
+        String y = request.params(":y");
+        if (y.endsWith(".png")) {
+            y = y.substring(0, y.length() - ".png".length());
+        }
+        try {
+            return new int[]{Integer.parseInt(request.params(":depth")),
+                Integer.parseInt(request.params(":x")), Integer.parseInt(y)};
+        } catch (NumberFormatException e) {
+            halt(NOT_FOUND_RESPONSE, "No such tile.");
+            return null;
+        }
+    }
+
+    /** Returns the bytes of TILE, or halts with a 404 if there is no such tile. */
+    @Override
+    protected ByteBuffer processRequest(int[] tile, Response response) {
+        ByteBuffer png = TILE_SOURCE.read(tile[0], tile[1], tile[2]);
+        if (png == null) {
+            halt(NOT_FOUND_RESPONSE, "No such tile.");
+        }
+        return png;
+    }
+
+    /**
+     * Returns a strong ETag for the tile PNG, made from the CRC-32 and length of its
+     * bytes so that it changes whenever they do.
+     */
+    private static String etag(ByteBuffer png) {
+        CRC32 crc = new CRC32();
+        crc.update(png.duplicate());
+        return "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(png.remaining()) + "\"";
+    }
+
+    /**
+     * Returns whether the If-None-Match header IFNONEMATCH lists ETAG, comparing them
+     * weakly as RFC 7232 asks for that header.
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long key(int[] tile) {
+        return ((long) tile[0] << 48) | ((long) tile[1] << 24) | tile[2];
+    }
+}
@@ -1,10 +1,12 @@
 package bearmaps.proj2c.utils;
 
 import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
 
 import java.awt.*;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class holding all the constant values used throughout the project
@@ -27,6 +29,59 @@ public class Constants {
      **/
     public static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
 
+    /**
+     * Binary snapshot of the parsed OSM_DB_PATH, loaded instead of the XML on startup
+     * while it is up to date; see StreetMapSnapshot. The server writes it, so git
+     * ignores it.
+     */
+    public static final String GRAPH_SNAPSHOT_PATH = OSM_DB_PATH + ".snapshot";
+
+    /**
+     * Whether routes are computed on an array-backed CompactStreetMapGraph copy of the
+     * street graph instead of the HashMap-backed one.
+     */
+    public static final boolean USE_COMPACT_ROUTING_GRAPH = true;
+
+    /**
+     * Whether the vertex closest to a point is found with a uniform grid over the
+     * vertices rather than with a 2-d tree.
+     */
+    public static final boolean USE_GRID_POINT_INDEX = true;
+
+    /**
+     * Number of landmarks whose precomputed distances sharpen the A* heuristic on the
+     * compact routing graph, or 0 to use only great-circle distances. Landmarks are
+     * only computed when ROUTE_ALGORITHM is an A* search.
+     */
+    public static final int NUM_LANDMARKS = 16;
+
+    /** Where the landmark distance tables are cached between server starts; git ignores it. */
+    public static final String LANDMARKS_PATH = OSM_DB_PATH + ".landmarks";
+
+    /** Where the contraction hierarchy is cached between server starts; git ignores it. */
+    public static final String CONTRACTION_HIERARCHY_PATH = OSM_DB_PATH + ".ch";
+
+    /**
+     * The shortest path algorithm routes are computed with. The server builds a
+     * contraction hierarchy at startup if this is CONTRACTION_HIERARCHY.
+     */
+    public static final Router.Algorithm ROUTE_ALGORITHM = Router.Algorithm.CONTRACTION_HIERARCHY;
+
+    /** Longest time, in seconds, a single route search may run before giving up. */
+    public static final double ROUTE_TIMEOUT = 20;
+
+    /**
+     * Most vertices a single route search may dequeue before giving up, e.g. when one
+     * endpoint sits on a small island that is disconnected from the rest of the map.
+     */
+    public static final int ROUTE_MAX_STATES_EXPLORED = 2000000;
+
+    /**
+     * Whether routes start and end at the closest points on the roads to where the
+     * user clicked, rather than at the closest intersections.
+     */
+    public static final boolean ROUTE_SNAP_TO_SEGMENTS = true;
+
     /** The tile images are in the IMG_ROOT folder. */
     public static final String IMG_ROOT = "../library-sp19/data/proj2c_imgs/";
 
@@ -39,6 +94,61 @@ public class Constants {
     /** Each tile is 256x256 pixels. */
     public static final int TILE_SIZE = 256;
 
+    /**
+     * File all the tiles are packed into by TilePack.main, to be read from memory
+     * rather than one file at a time. Tiles it does not have are read from IMG_ROOT.
+     */
+    public static final String TILE_PACK_PATH = "../library-sp19/data/proj2c_tiles.pack";
+
+    /** Deepest depth of tiles TilePack.main packs. */
+    public static final int TILE_PACK_MAX_DEPTH = 7;
+
+    /**
+     * Most bytes of decoded tile pixels kept in memory, 4 per pixel; a 256x256 tile
+     * takes 256 KB.
+     */
+    public static final long TILE_CACHE_BYTES = 128L << 20;
+
+    /**
+     * Tiles at depths 0 through this one are read into the tile cache when the
+     * server starts, or into the metatile cache if there is a metatile pack, or
+     * none if this is negative.
+     */
+    public static final int TILE_CACHE_WARM_DEPTH = 3;
+
+    /** Threads raster requests stitch their tiles on. */
+    public static final int TILE_COMPOSITOR_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** How long browsers and proxies may keep a tile before checking it is current. */
+    public static final int TILE_MAX_AGE_SECONDS = 7 * 24 * 60 * 60;
+
+    /**
+     * Whether rasters are encoded as small as they can be, at a few times the CPU,
+     * rather than as fast as they can be; see PngEncoder.fast and quality.
+     */
+    public static final boolean RASTER_PNG_QUALITY = false;
+
+    /** Threads each raster's PNG is filtered and deflated on. */
+    public static final int RASTER_PNG_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * File the route-free metatiles of every depth are rendered into ahead of time by
+     * MetatilePyramid.main, for raster requests to crop from.
+     */
+    public static final String METATILE_PACK_PATH = "../library-sp19/data/proj2c_metatiles.pack";
+
+    /** Tiles a side of each metatile; a 4 x 4 metatile covers most screens in a few. */
+    public static final int METATILE_SIZE = 4;
+
+    /**
+     * Most bytes of decoded metatile pixels kept in memory, 4 per pixel; a 4 x 4
+     * metatile takes 4 MB.
+     */
+    public static final long METATILE_CACHE_BYTES = 128L << 20;
+
+    /** Most bytes of encoded rasters kept in memory for repeated views. */
+    public static final long RASTER_CACHE_BYTES = 64L << 20;
+
     public static AugmentedStreetMapGraph SEMANTIC_STREET_GRAPH;
 
     /**
@@ -46,4 +156,10 @@ public class Constants {
      * from everywhere in the code. Enum is a cleaner way to achieve such a singleton pattern.
      */
     public static final List<Long> ROUTE_LIST = new LinkedList<>();
+
+    /**
+     * Goes up by one every time ROUTE_LIST changes, so that rasters drawn with an
+     * older route are not served from RasterServices.RASTER_CACHE.
+     */
+    public static final AtomicLong ROUTE_VERSION = new AtomicLong();
 }
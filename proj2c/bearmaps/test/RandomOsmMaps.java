@@ -0,0 +1,92 @@
+package bearmaps.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Writes random street maps in the OSM XML format, for tests that need more than the
+ * handful of intersections in the bundled extracts. A map is a jittered ROWS x COLS
+ * grid of intersections around Berkeley. Every row and column is one named way, and
+ * roughly one block in five is missing so that routes have to take detours. A short
+ * street far off to the side is not connected to the grid at all.
+ */
+class RandomOsmMaps {
+    private static final double ULLAT = 37.88, ULLON = -122.29;
+    private static final double SPACING = 0.001;
+    private static final long ISLAND_ID = 1000000000L;
+
+    /** Writes a random map to a temporary file and returns the file's path. */
+    static String write(int rows, int cols, long seed) throws IOException {
+        Random random = new Random(seed);
+        File file = File.createTempFile("random-map", ".osm.xml");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("<?xml version='1.0' encoding='UTF-8'?>");
+            out.println("<osm version=\"0.6\">");
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    double lat = ULLAT - r * SPACING + (random.nextDouble() - 0.5) * SPACING / 3;
+                    double lon = ULLON + c * SPACING + (random.nextDouble() - 0.5) * SPACING / 3;
+                    out.printf("  <node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\"", id(r, c, cols), lat, lon);
+                    if (random.nextInt(20) == 0) {
+                        out.printf(">%n    <tag k=\"name\" v=\"Place %d-%d\"/>%n  </node>%n", r, c);
+                    } else {
+                        out.println("/>");
+                    }
+                }
+            }
+            out.printf("  <node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\"/>%n",
+                    ISLAND_ID, ULLAT + 0.01, ULLON - 0.01);
+            out.printf("  <node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\"/>%n",
+                    ISLAND_ID + 1, ULLAT + 0.011, ULLON - 0.01);
+
+            long wayId = 1;
+            for (int r = 0; r < rows; r++) {
+                int row = r;
+                writeWay(out, wayId++, "Row " + r, random, cols, c -> id(row, c, cols));
+            }
+            for (int c = 0; c < cols; c++) {
+                int col = c;
+                writeWay(out, wayId++, "Column " + c, random, rows, r -> id(r, col, cols));
+            }
+            out.printf("  <way id=\"%d\">%n    <nd ref=\"%d\"/>%n    <nd ref=\"%d\"/>%n"
+                    + "    <tag k=\"highway\" v=\"residential\"/>%n  </way>%n",
+                    wayId, ISLAND_ID, ISLAND_ID + 1);
+            out.println("</osm>");
+        }
+        return file.getPath();
+    }
+
+    /** Id of a vertex on the street that is not connected to the grid. */
+    static long islandId() {
+        return ISLAND_ID;
+    }
+
+    private interface IdAt {
+        long id(int i);
+    }
+
+    /** Writes one way through LENGTH nodes, cut into pieces where blocks are missing. */
+    private static void writeWay(PrintWriter out, long wayId, String name, Random random,
+                                 int length, IdAt ids) {
+        out.printf("  <way id=\"%d\">%n", wayId);
+        out.printf("    <nd ref=\"%d\"/>%n", ids.id(0));
+        for (int i = 1; i < length; i++) {
+            if (random.nextInt(5) == 0) {
+                out.printf("    <tag k=\"highway\" v=\"residential\"/>%n");
+                out.printf("    <tag k=\"name\" v=\"%s\"/>%n  </way>%n", name);
+                wayId = wayId * 1000 + i;
+                out.printf("  <way id=\"%d\">%n", wayId);
+            }
+            out.printf("    <nd ref=\"%d\"/>%n", ids.id(i));
+        }
+        out.printf("    <tag k=\"highway\" v=\"residential\"/>%n");
+        out.printf("    <tag k=\"name\" v=\"%s\"/>%n  </way>%n", name);
+    }
+
+    private static long id(int r, int c, int cols) {
+        return 1 + (long) r * cols + c;
+    }
+}
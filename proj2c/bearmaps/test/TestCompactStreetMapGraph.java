@@ -0,0 +1,156 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.IntAStarSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/** Checks that the array-backed graph behaves exactly like the HashMap-backed one. */
+public class TestCompactStreetMapGraph {
+    private static final String OSM_DB_PATH_SMALL = "../library-sp19/data/proj2c_xml/berkeley-2019-small.osm.xml";
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private static AugmentedStreetMapGraph graph;
+    private static CompactStreetMapGraph compact;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH_SMALL);
+        compact = graph.compact();
+        initialized = true;
+    }
+
+    @Test
+    public void testSameVerticesAndEdges() {
+        for (int i = 0; i < compact.numVertices(); i++) {
+            long id = compact.idAt(i);
+            assertEquals(i, compact.index(id));
+            assertEquals(graph.lat(id), compact.lat(id), 0.0);
+            assertEquals(graph.lon(id), compact.lon(id), 0.0);
+            assertEquals(graph.name(id), compact.name(id));
+
+            List<WeightedEdge<Long>> expected = graph.neighbors(id);
+            List<WeightedEdge<Long>> actual = compact.neighbors(id);
+            assertEquals(expected.size(), actual.size());
+            Map<Long, WeightedEdge<Long>> byTarget = new HashMap<>();
+            for (WeightedEdge<Long> e : actual) {
+                byTarget.put(e.to(), e);
+            }
+            for (WeightedEdge<Long> e : expected) {
+                WeightedEdge<Long> other = byTarget.get(e.to());
+                assertNotNull(other);
+                assertEquals(e.from(), other.from());
+                assertEquals(e.weight(), other.weight(), 0.0);
+                assertEquals(e.getName(), other.getName());
+            }
+        }
+        assertEquals(-1, compact.index(-1));
+    }
+
+    @Test
+    public void testSameShortestPaths() {
+        Random random = new Random(61);
+        int n = compact.numVertices();
+        for (int i = 0; i < 200; i++) {
+            long start = compact.idAt(random.nextInt(n));
+            long end = compact.idAt(random.nextInt(n));
+            AStarSolver<Long> expected = new AStarSolver<>(graph, start, end, 20);
+            AStarSolver<Long> actual = new AStarSolver<>(compact, start, end, 20);
+            assertEquals(expected.outcome(), actual.outcome());
+            assertEquals(expected.solution(), actual.solution());
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), 0.0);
+        }
+    }
+
+    @Test
+    public void testIntSolverMatchesAStarSolver() {
+        Random random = new Random(62);
+        int n = compact.numVertices();
+        IntAStarSolver solver = new IntAStarSolver(compact);
+        for (int i = 0; i < 200; i++) {
+            int start = random.nextInt(n);
+            int end = random.nextInt(n);
+            AStarSolver<Long> expected = new AStarSolver<>(graph, compact.idAt(start),
+                    compact.idAt(end), 20);
+            solver.solve(start, end, 20);
+            assertEquals(expected.outcome(), solver.outcome());
+            assertEquals(expected.solution(), compact.ids(solver.solutionPath()));
+            assertEquals(expected.solutionWeight(), solver.solutionWeight(), 0.0);
+            assertEquals(expected.numStatesExplored(), solver.numStatesExplored());
+        }
+    }
+
+    @Test
+    public void testRouterOnCompactGraph() {
+        AugmentedStreetMapGraph tiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        tiny.useCompactRouting();
+        assertEquals(List.of(22L, 46L, 66L), Router.shortestPath(tiny, 0.2, 38.2, 0.6, 38.6));
+        assertEquals(List.of(41L, 63L, 66L, 46L), Router.shortestPath(tiny, 0.4, 38.1, 0.4, 38.6));
+    }
+
+    @Test
+    public void testCompactInPlace() {
+        AugmentedStreetMapGraph released = new AugmentedStreetMapGraph(OSM_DB_PATH_SMALL);
+        released.useCompactRouting();
+        assertEquals(graph, released);
+        Random random = new Random(1);
+        for (int k = 0; k < 500; k++) {
+            long id = compact.idAt(random.nextInt(compact.numVertices()));
+            assertEquals(graph.lat(id), released.lat(id), 0.0);
+            assertEquals(graph.lon(id), released.lon(id), 0.0);
+            assertEquals(graph.name(id), released.name(id));
+            assertEquals(graph.neighbors(id).size(), released.neighbors(id).size());
+            long goal = compact.idAt(random.nextInt(compact.numVertices()));
+            assertEquals(graph.estimatedDistanceToGoal(id, goal),
+                    released.estimatedDistanceToGoal(id, goal), 1e-12);
+        }
+        assertEquals(0.0, released.lon(-1), 0.0);
+        assertEquals(graph.closest(-122.26, 37.87), released.closest(-122.26, 37.87));
+    }
+
+    @Test
+    public void testSearchLimits() {
+        AugmentedStreetMapGraph tiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        CompactStreetMapGraph tinyCompact = tiny.compact();
+
+        AStarSolver<Long> solver = new AStarSolver<>(tiny, 41L, 46L, 20, 1);
+        assertEquals(SolverOutcome.TIMEOUT, solver.outcome());
+        assertEquals(1, solver.numStatesExplored());
+        assertEquals(0, solver.solution().size());
+
+        IntAStarSolver intSolver = new IntAStarSolver(tinyCompact);
+        intSolver.solve(tinyCompact.index(41), tinyCompact.index(46), 20, 2);
+        assertEquals(SolverOutcome.TIMEOUT, intSolver.outcome());
+        assertEquals(2, intSolver.numStatesExplored());
+        assertEquals(0, intSolver.solutionPath().length);
+
+        intSolver.solve(tinyCompact.index(41), tinyCompact.index(46), -1);
+        assertEquals(SolverOutcome.TIMEOUT, intSolver.outcome());
+        assertEquals(0, intSolver.numStatesExplored());
+
+        intSolver.solve(tinyCompact.index(41), tinyCompact.index(46), 20);
+        int needed = intSolver.numStatesExplored();
+        intSolver.solve(tinyCompact.index(41), tinyCompact.index(46), 20, needed);
+        assertEquals(SolverOutcome.SOLVED, intSolver.outcome());
+
+        Router.RouteOptions options = new Router.RouteOptions();
+        options.maxStatesExplored = 1;
+        assertEquals(List.of(), Router.shortestPath(tiny, 0.4, 38.1, 0.4, 38.6, options));
+    }
+}
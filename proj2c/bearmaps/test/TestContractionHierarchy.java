@@ -0,0 +1,137 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.ch.ContractionHierarchy;
+import bearmaps.hw4.ch.ContractionHierarchySolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks contraction hierarchy queries against AStarSolver on a random street grid. */
+public class TestContractionHierarchy {
+    private static final int NUM_QUERIES = 300;
+    private static final double WEIGHT_THRESHOLD = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static CompactStreetMapGraph compact;
+    private static ContractionHierarchy ch;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(RandomOsmMaps.write(40, 40, 61));
+        compact = graph.compact();
+        ch = ContractionHierarchy.build(compact);
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        checkQueries(new ContractionHierarchySolver(ch), new Random(61));
+    }
+
+    @Test
+    public void testUnsolvable() {
+        ContractionHierarchySolver solver = new ContractionHierarchySolver(ch);
+        solver.solve(0, compact.index(RandomOsmMaps.islandId()), 20);
+        assertEquals(SolverOutcome.UNSOLVABLE, solver.outcome());
+        assertEquals(0, solver.solutionPath().length);
+
+        solver.solve(0, 0, 20);
+        assertEquals(SolverOutcome.SOLVED, solver.outcome());
+        assertEquals(List.of(0), solver.solution());
+        assertEquals(0, solver.solutionWeight(), 0);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File file = File.createTempFile("hierarchy", ".ch");
+        file.deleteOnExit();
+        ch.save(file.getPath(), compact);
+        ContractionHierarchy loaded = ContractionHierarchy.load(file.getPath(), compact);
+        assertEquals(ch.numEdges(), loaded.numEdges());
+        assertEquals(ch.numShortcuts(), loaded.numShortcuts());
+        checkQueries(new ContractionHierarchySolver(loaded), new Random(62));
+    }
+
+    @Test
+    public void testRouter() throws IOException {
+        File file = File.createTempFile("hierarchy", ".ch");
+        file.delete();
+        file.deleteOnExit();
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(RandomOsmMaps.write(10, 10, 61));
+        g.useContractionHierarchy(file.getPath());
+        assertTrue(file.exists());
+        g.useContractionHierarchy(file.getPath());
+
+        Router.RouteOptions aStar = new Router.RouteOptions();
+        aStar.algorithm = Router.Algorithm.ASTAR;
+        Router.RouteOptions hierarchy = new Router.RouteOptions();
+        hierarchy.algorithm = Router.Algorithm.CONTRACTION_HIERARCHY;
+        Random random = new Random(61);
+        for (int i = 0; i < 50; i++) {
+            double stlon = -122.29 + random.nextDouble() * 0.01;
+            double stlat = 37.87 + random.nextDouble() * 0.01;
+            double destlon = -122.29 + random.nextDouble() * 0.01;
+            double destlat = 37.87 + random.nextDouble() * 0.01;
+            List<Long> expected = Router.shortestPath(g, stlon, stlat, destlon, destlat, aStar);
+            List<Long> actual = Router.shortestPath(g, stlon, stlat, destlon, destlat, hierarchy);
+            assertEquals(pathWeight(g, expected), pathWeight(g, actual), WEIGHT_THRESHOLD);
+            if (!expected.isEmpty()) {
+                assertEquals(expected.get(0), actual.get(0));
+                assertEquals(expected.get(expected.size() - 1), actual.get(actual.size() - 1));
+            }
+        }
+    }
+
+    /** Runs random queries on SOLVER and compares them to AStarSolver. */
+    private void checkQueries(ContractionHierarchySolver solver, Random random) {
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            int start = random.nextInt(compact.numVertices());
+            int end = random.nextInt(compact.numVertices());
+            AStarSolver<Long> expected = new AStarSolver<>(graph, compact.idAt(start),
+                    compact.idAt(end), 20);
+            solver.solve(start, end, 20);
+            assertEquals(expected.outcome(), solver.outcome());
+            assertEquals(expected.solutionWeight(), solver.solutionWeight(), WEIGHT_THRESHOLD);
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                List<Long> path = compact.ids(solver.solutionPath());
+                assertEquals(compact.idAt(start), (long) path.get(0));
+                assertEquals(compact.idAt(end), (long) path.get(path.size() - 1));
+                assertEquals(expected.solutionWeight(), pathWeight(graph, path), WEIGHT_THRESHOLD);
+            }
+        }
+    }
+
+    /** Returns the length of PATH, which must follow edges of G. */
+    private static double pathWeight(AugmentedStreetMapGraph g, List<Long> path) {
+        double weight = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            weight += edgeWeight(g, path.get(i), path.get(i + 1));
+        }
+        return weight;
+    }
+
+    private static double edgeWeight(AugmentedStreetMapGraph g, long from, long to) {
+        for (WeightedEdge<Long> e : g.neighbors(from)) {
+            if (e.to() == to) {
+                return e.weight();
+            }
+        }
+        throw new AssertionError("No edge from " + from + " to " + to);
+    }
+}
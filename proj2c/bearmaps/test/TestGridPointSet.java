@@ -0,0 +1,136 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.GridPointSet;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks GridPointSet's nearest queries, one at a time and in batches, against a
+ * linear scan, and the graph's batch closestAll against closest.
+ */
+public class TestGridPointSet {
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random(21);
+        int n = 20000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            int copy = random.nextInt(10) == 0 && i > 0 ? random.nextInt(i) : i;
+            /* denser in one corner, like a downtown */
+            double spread = random.nextBoolean() ? 0.05 : 0.01;
+            xs[i] = copy == i ? -122.30 + random.nextDouble() * spread : xs[copy];
+            ys[i] = copy == i ? 37.84 + random.nextDouble() * spread : ys[copy];
+            ids[i] = 1000000L + i;
+        }
+        GridPointSet grid = new GridPointSet(xs, ys, ids);
+        assertEquals(n, grid.size());
+        double[] qxs = new double[1000];
+        double[] qys = new double[1000];
+        for (int q = 0; q < qxs.length; q++) {
+            /* some queries fall off the grid */
+            qxs[q] = -122.32 + random.nextDouble() * 0.09;
+            qys[q] = 37.82 + random.nextDouble() * 0.09;
+        }
+        long[] batch = grid.nearestIds(qxs, qys);
+        for (int q = 0; q < qxs.length; q++) {
+            Point target = new Point(qxs[q], qys[q]);
+            double expected = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                expected = Math.min(expected, Point.distance(new Point(xs[i], ys[i]), target));
+            }
+            int i = (int) (grid.nearestId(qxs[q], qys[q]) - 1000000L);
+            assertEquals(expected, Point.distance(new Point(xs[i], ys[i]), target), 0);
+            assertEquals(new Point(xs[i], ys[i]), grid.nearest(qxs[q], qys[q]));
+            assertEquals(ids[i], batch[q]);
+        }
+    }
+
+    @Test
+    public void testSmallGrids() {
+        Random random = new Random(22);
+        GridPointSet empty = new GridPointSet(new double[0], new double[0], null);
+        assertEquals(-1, empty.nearestId(0, 0));
+        assertNull(empty.nearest(0, 0));
+        assertEquals(-1, empty.nearestIds(new double[]{1}, new double[]{2})[0]);
+
+        /* all points in one place, and all on one line */
+        GridPointSet same = new GridPointSet(new double[]{1, 1, 1}, new double[]{2, 2, 2}, null);
+        assertEquals(new Point(1, 2), same.nearest(5, 5));
+        GridPointSet line = new GridPointSet(new double[]{1, 2, 3, 4}, new double[]{2, 2, 2, 2}, null);
+        assertEquals(2, line.nearestId(3.2, 7));
+
+        for (int n = 1; n < 40; n++) {
+            List<Point> points = TestKDTree.randomPoints(random, n);
+            GridPointSet grid = new GridPointSet(points);
+            for (int q = 0; q < 20; q++) {
+                Point target = TestKDTree.randomPoints(random, 1).get(0);
+                int best = 0;
+                for (int i = 1; i < n; i++) {
+                    if (Point.distance(points.get(i), target) < Point.distance(points.get(best), target)) {
+                        best = i;
+                    }
+                }
+                assertEquals(best, grid.nearestId(target.getX(), target.getY()));
+            }
+        }
+    }
+
+    @Test
+    public void testGraphClosest() throws Exception {
+        String map = RandomOsmMaps.write(30, 30, 23);
+        AugmentedStreetMapGraph tree = new AugmentedStreetMapGraph(map);
+        AugmentedStreetMapGraph grid = new AugmentedStreetMapGraph(map);
+        grid.useGridIndex();
+        Random random = new Random(23);
+        for (int q = 0; q < 1000; q++) {
+            double lon = -122.295 + random.nextDouble() * 0.04;
+            double lat = 37.845 + random.nextDouble() * 0.04;
+            Point target = new Point(lon, lat);
+            long expected = tree.closest(lon, lat);
+            long actual = grid.closest(lon, lat);
+            assertEquals(Point.distance(target, new Point(tree.lon(expected), tree.lat(expected))),
+                    Point.distance(target, new Point(grid.lon(actual), grid.lat(actual))), 0);
+        }
+    }
+
+    @Test
+    public void testGraphClosestAll() throws Exception {
+        String map = RandomOsmMaps.write(30, 30, 24);
+        AugmentedStreetMapGraph tree = new AugmentedStreetMapGraph(map);
+        AugmentedStreetMapGraph grid = new AugmentedStreetMapGraph(map);
+        grid.useGridIndex();
+        Random random = new Random(24);
+        /* enough points for the batch to be answered in parallel */
+        int m = 10000;
+        double[] lons = new double[m];
+        double[] lats = new double[m];
+        for (int q = 0; q < m; q++) {
+            lons[q] = -122.295 + random.nextDouble() * 0.04;
+            lats[q] = 37.845 + random.nextDouble() * 0.04;
+        }
+        long[] fromTree = tree.closestAll(lons, lats);
+        long[] fromGrid = grid.closestAll(lons, lats);
+        assertEquals(m, fromTree.length);
+        for (int q = 0; q < m; q++) {
+            assertEquals(tree.closest(lons[q], lats[q]), fromTree[q]);
+            assertEquals(grid.closest(lons[q], lats[q]), fromGrid[q]);
+        }
+        assertEquals(0, grid.closestAll(new double[0], new double[0]).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClosestAllLengthsMustMatch() throws Exception {
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(RandomOsmMaps.write(5, 5, 25));
+        g.closestAll(new double[1], new double[2]);
+    }
+}
@@ -0,0 +1,255 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2ab.KDTree;
+import bearmaps.proj2ab.PackedKDTree;
+import bearmaps.proj2ab.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the KDTree and PackedKDTree queries against a linear scan, and that
+ * KDTree gives the same answers when many threads query one tree at once.
+ */
+public class TestKDTree {
+    private static final String OSM_DB_PATH_SMALL = "../library-sp19/data/proj2c_xml/berkeley-2019-small.osm.xml";
+    /* how much farther than the closest point a projected search may answer, relatively */
+    private static final double PROJECTION_ERROR = 1e-3;
+    private static final int NUM_POINTS = 2000;
+    private static final int NUM_QUERIES = 1000;
+    private static final int NUM_THREADS = 8;
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random(11);
+        List<Point> points = randomPoints(random, NUM_POINTS);
+        KDTree tree = new KDTree(points);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            Point target = randomPoint(random);
+            double expected = Double.POSITIVE_INFINITY;
+            for (Point p : points) {
+                expected = Math.min(expected, Point.distance(p, target));
+            }
+            Point actual = tree.nearest(target.getX(), target.getY());
+            assertEquals(expected, Point.distance(actual, target), 0);
+        }
+    }
+
+    @Test
+    public void testProjectedMatchesLinearScan() {
+        Random random = new Random(17);
+        List<Point> points = randomPoints(random, 20000);
+        KDTree tree = new KDTree(points, true);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            checkProjected(tree, points, randomPoint(random));
+        }
+    }
+
+    @Test
+    public void testProjectedOnBerkeley() {
+        CompactStreetMapGraph g = new StreetMapGraph(OSM_DB_PATH_SMALL).compact();
+        List<Point> points = new ArrayList<>();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < g.numVertices(); i++) {
+            points.add(new Point(g.lonAt(i), g.latAt(i)));
+            minX = Math.min(minX, g.lonAt(i));
+            minY = Math.min(minY, g.latAt(i));
+            maxX = Math.max(maxX, g.lonAt(i));
+            maxY = Math.max(maxY, g.latAt(i));
+        }
+        KDTree projected = new KDTree(points, true);
+        KDTree tree = new KDTree(points);
+        Random random = new Random(18);
+        for (Point p : points) {
+            assertEquals(0, Point.distance(p, projected.nearest(p.getX(), p.getY())), 0);
+        }
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            Point target = new Point(minX + random.nextDouble() * (maxX - minX),
+                    minY + random.nextDouble() * (maxY - minY));
+            checkProjected(projected, points, target);
+            double expected = sortedDistances(points, target)[0];
+            assertEquals(expected, Point.distance(tree.nearest(target.getX(), target.getY()), target), 0);
+        }
+    }
+
+    /**
+     * Checks that the projected TREE over POINTS answers a point no more than
+     * PROJECTION_ERROR farther from TARGET than the closest one.
+     */
+    private static void checkProjected(KDTree tree, List<Point> points, Point target) {
+        double expected = sortedDistances(points, target)[0];
+        Point actual = tree.nearest(target.getX(), target.getY());
+        assertTrue(Point.distance(actual, target) <= expected * (1 + PROJECTION_ERROR));
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        Random random = new Random(12);
+        KDTree tree = new KDTree(randomPoints(random, NUM_POINTS));
+        double[] xs = new double[NUM_QUERIES];
+        double[] ys = new double[NUM_QUERIES];
+        Point[] expected = new Point[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            xs[i] = randomPoint(random).getX();
+            ys[i] = randomPoint(random).getY();
+            expected[i] = tree.nearest(xs[i], ys[i]);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(NUM_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            int offset = t * NUM_QUERIES / NUM_THREADS;
+            results.add(pool.submit(() -> {
+                start.await();
+                int wrong = 0;
+                for (int round = 0; round < 5; round++) {
+                    for (int j = 0; j < NUM_QUERIES; j++) {
+                        int i = (offset + j) % NUM_QUERIES;
+                        if (!expected[i].equals(tree.nearest(xs[i], ys[i]))) {
+                            wrong += 1;
+                        }
+                    }
+                }
+                return wrong;
+            }));
+        }
+        start.countDown();
+        for (Future<Integer> result : results) {
+            assertEquals(0, (int) result.get());
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPackedMatchesLinearScan() {
+        Random random = new Random(13);
+        /* large enough to be built in parallel, with repeated points and longitudes */
+        int n = 50000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            int copy = random.nextInt(10) == 0 && i > 0 ? random.nextInt(i) : i;
+            xs[i] = copy == i ? -122.30 + random.nextInt(500) * 0.0001 : xs[copy];
+            ys[i] = copy == i ? 37.84 + random.nextDouble() * 0.05 : ys[copy];
+            ids[i] = 1000000L + i;
+        }
+        PackedKDTree tree = new PackedKDTree(xs, ys, ids);
+        assertEquals(n, tree.size());
+        for (int q = 0; q < 500; q++) {
+            Point target = randomPoint(random);
+            double expected = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                expected = Math.min(expected, Point.distance(new Point(xs[i], ys[i]), target));
+            }
+            long id = tree.nearestId(target.getX(), target.getY());
+            int i = (int) (id - 1000000L);
+            assertEquals(expected, Point.distance(new Point(xs[i], ys[i]), target), 0);
+            assertEquals(new Point(xs[i], ys[i]), tree.nearest(target.getX(), target.getY()));
+        }
+    }
+
+    @Test
+    public void testPackedSmallTrees() {
+        Random random = new Random(14);
+        assertEquals(-1, new PackedKDTree(new double[0], new double[0], null).nearestId(0, 0));
+        for (int n = 1; n < 40; n++) {
+            List<Point> points = randomPoints(random, n);
+            PackedKDTree tree = new PackedKDTree(points);
+            for (int q = 0; q < 20; q++) {
+                Point target = randomPoint(random);
+                int best = 0;
+                for (int i = 1; i < n; i++) {
+                    if (Point.distance(points.get(i), target) < Point.distance(points.get(best), target)) {
+                        best = i;
+                    }
+                }
+                assertEquals(best, tree.nearestId(target.getX(), target.getY()));
+            }
+        }
+    }
+
+    @Test
+    public void testKNearestMatchesLinearScan() {
+        Random random = new Random(15);
+        List<Point> points = randomPoints(random, 20000);
+        PackedKDTree tree = new PackedKDTree(points);
+        for (int k : new int[]{0, 1, 2, 7, 50}) {
+            for (int q = 0; q < 100; q++) {
+                Point target = randomPoint(random);
+                double[] expected = sortedDistances(points, target);
+                long[] ids = tree.kNearestIds(target.getX(), target.getY(), k);
+                List<Point> nearest = tree.kNearest(target.getX(), target.getY(), k);
+                assertEquals(k, ids.length);
+                assertEquals(k, nearest.size());
+                for (int i = 0; i < k; i++) {
+                    assertEquals(expected[i], Point.distance(points.get((int) ids[i]), target), 0);
+                    assertEquals(points.get((int) ids[i]), nearest.get(i));
+                }
+            }
+        }
+        assertEquals(3, new PackedKDTree(randomPoints(random, 3)).kNearestIds(0, 0, 10).length);
+    }
+
+    @Test
+    public void testWithinRadiusMatchesLinearScan() {
+        Random random = new Random(16);
+        List<Point> points = randomPoints(random, 20000);
+        PackedKDTree tree = new PackedKDTree(points);
+        for (double miles : new double[]{0, 0.01, 0.05, 0.3, 100}) {
+            for (int q = 0; q < 100; q++) {
+                Point target = randomPoint(random);
+                double[] all = sortedDistances(points, target);
+                int expected = 0;
+                while (expected < all.length && all[expected] <= miles) {
+                    expected++;
+                }
+                long[] ids = tree.withinRadiusIds(target.getX(), target.getY(), miles);
+                assertEquals(expected, ids.length);
+                for (int i = 0; i < ids.length; i++) {
+                    assertEquals(all[i], Point.distance(points.get((int) ids[i]), target), 0);
+                }
+                assertEquals(expected, tree.withinRadius(target.getX(), target.getY(), miles).size());
+            }
+        }
+    }
+
+    /** Returns the distances from each of POINTS to TARGET, smallest first. */
+    private static double[] sortedDistances(List<Point> points, Point target) {
+        double[] distances = new double[points.size()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = Point.distance(points.get(i), target);
+        }
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    /** Returns N distinct random points around Berkeley. */
+    static List<Point> randomPoints(Random random, int n) {
+        List<Point> points = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            points.add(randomPoint(random));
+        }
+        return points;
+    }
+
+    private static Point randomPoint(Random random) {
+        return new Point(-122.30 + random.nextDouble() * 0.05, 37.84 + random.nextDouble() * 0.05);
+    }
+}
@@ -0,0 +1,59 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.MetatilePyramid;
+import bearmaps.proj2c.raster.PngEncoder;
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.raster.TileCompositor;
+import bearmaps.proj2c.raster.TilePack;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/** Checks that images cropped from metatiles match those stitched from single tiles. */
+public class TestMetatilePyramid {
+    private static final int TILE = Constants.TILE_SIZE;
+    /* depths packed, kept small so the test is quick; deeper metatiles are rendered */
+    private static final int MAX_DEPTH = 3;
+
+    @Test
+    public void testMatchesTiles() throws Exception {
+        TileCompositor tiles = new TileCompositor(
+                new TileCache(Constants.IMG_ROOT, Constants.TILE_CACHE_BYTES), TILE, 2);
+        PngEncoder encoder = PngEncoder.fast(2);
+        MetatilePyramid pyramid = new MetatilePyramid(tiles, 4, encoder);
+        assertNull(pyramid.read(2, 1, 0));
+        assertNull(pyramid.read(3, 0, 2));
+
+        File file = File.createTempFile("metatiles", ".pack");
+        file.deleteOnExit();
+        TilePack.write(file.getPath(), pyramid, MAX_DEPTH);
+        TileCompositor metatiles = MetatilePyramid.openCompositor(file.getPath(), tiles, 4, encoder,
+                Constants.METATILE_CACHE_BYTES, 2);
+        assertEquals(4, metatiles.metatileSize());
+
+        /* whole depths, blocks inside one metatile and across several, and deeper ones */
+        int[][] blocks = {{0, 0, 0, 1, 1}, {1, 0, 0, 2, 2}, {1, 1, 0, 1, 2}, {2, 0, 0, 4, 4},
+            {3, 1, 2, 2, 2}, {3, 2, 1, 5, 6}, {3, 0, 0, 8, 8}, {5, 6, 9, 5, 4}, {7, 30, 50, 5, 4}};
+        for (int[] b : blocks) {
+            Images.assertSameImage(tiles.composite(b[0], b[1], b[2], b[3], b[4]),
+                    metatiles.composite(b[0], b[1], b[2], b[3], b[4]));
+        }
+        tiles.shutdown();
+        metatiles.shutdown();
+        encoder.shutdown();
+    }
+
+    @Test
+    public void testNoPack() {
+        TileCompositor tiles = new TileCompositor(new TileCache(Constants.IMG_ROOT, 1 << 20), TILE, 1);
+        assertSame(tiles, MetatilePyramid.openCompositor("no such pack", tiles, 4,
+                PngEncoder.fast(1), 1 << 20, 1));
+        assertEquals(1, tiles.metatileSize());
+        tiles.shutdown();
+    }
+}
@@ -0,0 +1,156 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.DaryHeapMinPQ;
+import bearmaps.proj2ab.DoubleMapPQ;
+import bearmaps.proj2ab.ExtrinsicMinPQ;
+import bearmaps.proj2ab.IndexedIntMinPQ;
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the heap-based priority queues through random add/removeSmallest/changePriority
+ * mixes next to DoubleMapPQ and checks that they agree.
+ */
+public class TestMinPQ {
+    private static final int NUM_OPERATIONS = 20000;
+    private static final int NUM_ITEMS = 500;
+
+    @Test
+    public void testDaryHeapMatchesDoubleMapPQ() {
+        for (int arity : new int[]{2, 4, 8}) {
+            Random random = new Random(arity);
+            ExtrinsicMinPQ<Integer> expected = new DoubleMapPQ<>();
+            ExtrinsicMinPQ<Integer> actual = new DaryHeapMinPQ<>(arity, 1);
+
+            for (int i = 0; i < NUM_OPERATIONS; i++) {
+                int item = random.nextInt(NUM_ITEMS);
+                // distinct priorities, so both queues must return the same items
+                double priority = random.nextDouble();
+                int op = random.nextInt(3);
+                if (op == 0 && !expected.contains(item)) {
+                    expected.add(item, priority);
+                    actual.add(item, priority);
+                } else if (op == 1 && expected.contains(item)) {
+                    expected.changePriority(item, priority);
+                    actual.changePriority(item, priority);
+                } else if (expected.size() > 0) {
+                    assertEquals(expected.getSmallest(), actual.getSmallest());
+                    assertEquals(expected.removeSmallest(), actual.removeSmallest());
+                }
+                assertEquals(expected.size(), actual.size());
+                assertEquals(expected.contains(item), actual.contains(item));
+            }
+        }
+    }
+
+    @Test
+    public void testDaryHeapWithEqualPriorities() {
+        DaryHeapMinPQ<Integer> pq = new DaryHeapMinPQ<>(4);
+        for (int item = 0; item < NUM_ITEMS; item++) {
+            pq.add(item, item % 3);
+        }
+        double last = -1;
+        boolean[] removed = new boolean[NUM_ITEMS];
+        while (pq.size() > 0) {
+            int item = pq.removeSmallest();
+            assertTrue(item % 3 >= last);
+            assertFalse(removed[item]);
+            removed[item] = true;
+            last = item % 3;
+        }
+    }
+
+    @Test
+    public void testIndexedIntMatchesDoubleMapPQ() {
+        for (int arity : new int[]{2, 4, 8}) {
+            Random random = new Random(arity);
+            DoubleMapPQ<Integer> expected = new DoubleMapPQ<>();
+            IndexedIntMinPQ actual = new IndexedIntMinPQ(NUM_ITEMS, arity);
+
+            for (int i = 0; i < NUM_OPERATIONS; i++) {
+                int item = random.nextInt(NUM_ITEMS);
+                // distinct priorities, so both queues must return the same items
+                double priority = random.nextDouble();
+                int op = random.nextInt(3);
+                if (op == 0 && !expected.contains(item)) {
+                    expected.add(item, priority);
+                    actual.add(item, priority);
+                } else if (op == 1 && expected.contains(item)) {
+                    expected.changePriority(item, priority);
+                    actual.changePriority(item, priority);
+                    assertEquals(priority, actual.priority(item), 0.0);
+                } else if (expected.size() > 0) {
+                    assertEquals(expected.getSmallest().intValue(), actual.getSmallest());
+                    assertEquals(expected.removeSmallest().intValue(), actual.removeSmallest());
+                }
+                assertEquals(expected.size(), actual.size());
+                assertEquals(expected.contains(item), actual.contains(item));
+            }
+
+            actual.clear();
+            assertEquals(0, actual.size());
+            for (int item = 0; item < NUM_ITEMS; item++) {
+                assertFalse(actual.contains(item));
+            }
+        }
+    }
+
+    @Test
+    public void testExceptions() {
+        DaryHeapMinPQ<String> pq = new DaryHeapMinPQ<>();
+        try {
+            pq.getSmallest();
+            fail();
+        } catch (NoSuchElementException e) {
+            // expected, as in DoubleMapPQ
+        }
+        try {
+            pq.removeSmallest();
+            fail();
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        pq.add("a", 1);
+        try {
+            pq.add("a", 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            pq.changePriority("b", 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertTrue(pq.contains("a"));
+        try {
+            new DaryHeapMinPQ<String>(1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        IndexedIntMinPQ ints = new IndexedIntMinPQ(4, 2);
+        ints.add(0, 1);
+        try {
+            ints.changePriority(1, 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected, as in DaryHeapMinPQ
+        }
+        try {
+            ints.priority(1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that the parallel OSM reader builds the graph GraphBuildingHandler builds. */
+public class TestOsmIngestion {
+    private static final String SMALL = "../library-sp19/data/proj2c_xml/berkeley-2019-small.osm.xml";
+    private static final String TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+
+    @Test
+    public void testBundledMaps() {
+        assertSameGraph(TINY);
+        assertSameGraph(SMALL);
+    }
+
+    @Test
+    public void testLargeRandomMap() throws IOException {
+        /* big enough to be cut into several slices */
+        String xml = RandomOsmMaps.write(150, 150, 10);
+        assertTrue(new File(xml).length() > 3 << 20);
+        assertSameGraph(xml);
+    }
+
+    @Test
+    public void testXMLDetails() throws IOException {
+        String xml = write("<?xml version='1.0' encoding='UTF-8'?>",
+                "<osm version=\"0.6\">",
+                "  <!-- a comment with <node id=\"9\" lat=\"0\" lon=\"0\"/> inside -->",
+                "  <node id=\"1\" lat=\"37.87\" lon=\"-122.26\">",
+                "    <tag k=\"name\" v=\"Caf&#233; &amp; Bar\"/>",
+                "  </node>",
+                "  <node id='2' lat='37.8710' lon='-122.2600'/>",
+                "  <node id=\"3\"  lon=\"-122.2590\" lat=\"3.7872E1\" />",
+                "  <node id=\"3\" lat=\"0\" lon=\"0\"/>",
+                "  <node id=\"4\" lat=\"37.873\" lon=\"-122.258\"><tag k=\"shop\" v=\"x\"/></node>",
+                "  <node id=\"5\" lat=\"37.874\" lon=\"-122.257\"><tag k=\"name\" v=\"Lone &quot;Tree&quot;\"/></node>",
+                "  <way id=\"10\">",
+                "    <nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"99\"/><nd ref=\"2\"/>",
+                "    <tag k=\"name\" v=\"First\n Street\"/>",
+                "    <tag k=\"highway\" v=\"footway\"/>",
+                "    <tag k=\"highway\" v=\"residential\"/>",
+                "  </way>",
+                "  <way id=\"11\"><nd ref=\"3\"/><nd ref=\"4\"/><tag k=\"highway\" v=\"service\"/></way>",
+                "  <way id=\"12\"/>",
+                "  <relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"\"/>",
+                "    <tag k=\"name\" v=\"Relation\"/></relation>",
+                "</osm>");
+        StreetMapGraph graph = assertSameGraph(xml);
+        CompactStreetMapGraph compact = graph.compact();
+        assertEquals(4, compact.numVertices());
+        assertEquals("Caf\u00e9 & Bar", compact.nameAt(compact.index(1)));
+        assertEquals("Lone \"Tree\"", compact.nameAt(compact.index(5)));
+        assertEquals(37.8710, compact.latAt(compact.index(2)), 0);
+        assertEquals(37.872, compact.latAt(compact.index(3)), 0);
+        for (WeightedEdge<Long> e : graph.neighbors(2L)) {
+            assertEquals("First  Street", e.getName());
+        }
+        assertEquals(2, graph.neighbors(2L).size());
+    }
+
+    @Test
+    public void testWayBeforeItsNodes() throws IOException {
+        String xml = write("<osm>",
+                "  <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"highway\" v=\"primary\"/></way>",
+                "  <node id=\"1\" lat=\"37.87\" lon=\"-122.26\"/>",
+                "  <node id=\"2\" lat=\"37.871\" lon=\"-122.26\"/>",
+                "</osm>");
+        StreetMapGraph graph = new StreetMapGraph(xml);
+        assertNotEquals(StreetMapGraph.readFromXMLWithSAX(xml), graph);
+        assertEquals(1, graph.neighbors(1L).size());
+        assertEquals(1, graph.neighbors(2L).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testTruncatedFile() throws IOException {
+        String xml = write("<osm>",
+                "  <node id=\"1\" lat=\"37.87\" lon=\"-122.26\"/>",
+                "  <node id=\"2\" lat=\"37.871\" lon=\"-122.26\"/>",
+                "  <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"highway\" v=\"primary\"/></way>",
+                " </osm");
+        assertEquals(StreetMapGraph.readFromXMLWithSAX(xml), new StreetMapGraph(xml));
+
+        String quote = write("<osm>",
+                "  <node id=\"1\" lat=\"37.87");
+        assertEquals(StreetMapGraph.readFromXMLWithSAX(quote), new StreetMapGraph(quote));
+    }
+
+    /** Asserts both readers build the same graph from XML, down to weights and names. */
+    private static StreetMapGraph assertSameGraph(String xml) {
+        StreetMapGraph expected = StreetMapGraph.readFromXMLWithSAX(xml);
+        StreetMapGraph actual = new StreetMapGraph(xml);
+        assertEquals(expected, actual);
+
+        CompactStreetMapGraph compact = expected.compact();
+        CompactStreetMapGraph actualCompact = actual.compact();
+        assertEquals(compact.numEdges(), actualCompact.numEdges());
+        for (int i = 0; i < compact.numVertices(); i++) {
+            long id = compact.idAt(i);
+            int j = actualCompact.index(id);
+            assertEquals(compact.latAt(i), actualCompact.latAt(j), 0);
+            assertEquals(compact.lonAt(i), actualCompact.lonAt(j), 0);
+            assertEquals(compact.nameAt(i), actualCompact.nameAt(j));
+            assertEquals(edges(expected.neighbors(id)), edges(actual.neighbors(id)));
+        }
+        return actual;
+    }
+
+    /** Returns the target, weight and name of each edge, ignoring their order. */
+    private static HashSet<String> edges(List<WeightedEdge<Long>> edges) {
+        HashSet<String> set = new HashSet<>();
+        for (WeightedEdge<Long> e : edges) {
+            set.add(e.to() + " " + e.weight() + " " + e.getName());
+        }
+        return set;
+    }
+
+    /** Writes LINES to a temporary file and returns its path. */
+    private static String write(String... lines) throws IOException {
+        File file = File.createTempFile("osm-ingestion", ".osm.xml");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            for (String line : lines) {
+                out.println(line);
+            }
+        }
+        return file.getPath();
+    }
+}
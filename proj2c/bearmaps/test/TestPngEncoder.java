@@ -0,0 +1,76 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.PngEncoder;
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.raster.TileCompositor;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks that what PngEncoder writes decodes to the image it was given. */
+public class TestPngEncoder {
+
+    @Test
+    public void testEveryFilterLevelAndStrategy() throws Exception {
+        TileCompositor compositor = new TileCompositor(
+                new TileCache(Constants.IMG_ROOT, Constants.TILE_CACHE_BYTES), Constants.TILE_SIZE, 2);
+        /* tall enough to be cut into several chunks */
+        BufferedImage img = compositor.composite(7, 30, 50, 3, 4);
+        compositor.shutdown();
+        Graphics2D g = img.createGraphics();
+        g.setColor(Constants.ROUTE_STROKE_COLOR);
+        g.drawLine(10, 10, 700, 1000);
+        g.dispose();
+        for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+            for (int level : new int[]{0, 1, 6, 9}) {
+                PngEncoder encoder = new PngEncoder(level, Deflater.DEFAULT_STRATEGY, filter, 3);
+                Images.assertSameImage(img,
+                        ImageIO.read(new ByteArrayInputStream(encoder.encode(img))));
+                encoder.shutdown();
+            }
+        }
+        for (int strategy : new int[]{Deflater.FILTERED, Deflater.HUFFMAN_ONLY}) {
+            PngEncoder encoder = new PngEncoder(6, strategy, PngEncoder.Filter.PAETH, 3);
+            Images.assertSameImage(img,
+                    ImageIO.read(new ByteArrayInputStream(encoder.encode(img))));
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    public void testOddSizesAndTypes() throws Exception {
+        Random random = new Random(61);
+        PngEncoder encoder = PngEncoder.quality(2);
+        for (int[] size : new int[][]{{1, 1}, {3, 2}, {17, 900}, {1000, 1}}) {
+            BufferedImage img = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < size[1]; y++) {
+                for (int x = 0; x < size[0]; x++) {
+                    img.setRGB(x, y, random.nextInt(4) == 0 ? random.nextInt() : Color.ORANGE.getRGB());
+                }
+            }
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoder.encode(img)));
+            assertEquals(size[0], decoded.getWidth());
+            assertEquals(size[1], decoded.getHeight());
+            for (int y = 0; y < size[1]; y++) {
+                for (int x = 0; x < size[0]; x++) {
+                    assertEquals(img.getRGB(x, y) & 0xffffff, decoded.getRGB(x, y) & 0xffffff);
+                }
+            }
+        }
+        encoder.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadLevel() {
+        new PngEncoder(10, Deflater.DEFAULT_STRATEGY, PngEncoder.Filter.NONE, 1);
+    }
+}
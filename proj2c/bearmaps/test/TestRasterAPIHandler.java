@@ -3,6 +3,7 @@ package bearmaps.test;
 import org.junit.Before;
 import org.junit.Test;
 import bearmaps.proj2c.server.handler.impl.RasterAPIHandler;
+import bearmaps.proj2c.utils.Constants;
 
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -18,6 +19,7 @@ import java.util.Arrays;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 /** Test of the rastering part of the assignment.*/
@@ -51,6 +53,34 @@ public class TestRasterAPIHandler {
         }
     }
 
+    @Test
+    public void testImageUrl() throws Exception {
+        Map<String, Double> params = paramsFromFile().get(0);
+        Map<String, Object> withoutUrl = rasterer.processRequest(params, null);
+        assertTrue(!withoutUrl.containsKey("image_url"));
+
+        params.put("image_url", 1.0);
+        Map<String, Object> withUrl = rasterer.processRequest(params, null);
+        String url = (String) withUrl.get("image_url");
+        assertTrue(url.startsWith(RasterAPIHandler.IMAGE_PATH + "?"));
+        for (String param : new String[]{"ullon", "ullat", "lrlon", "lrlat", "w", "h"}) {
+            assertTrue(url.contains(param + "=" + params.get(param)));
+        }
+        Constants.ROUTE_VERSION.incrementAndGet();
+        assertNotEquals(url, rasterer.processRequest(params, null).get("image_url"));
+        String[][] grid = (String[][]) withUrl.get("render_grid");
+        assertEquals(grid[0].length * 256, withUrl.get("raster_width"));
+        assertEquals(grid.length * 256, withUrl.get("raster_height"));
+
+        /* an upside-down box cannot be rastered, and has no size */
+        Map<String, Double> inverted = new HashMap<>(params);
+        inverted.put("ullat", params.get("lrlat"));
+        inverted.put("lrlat", params.get("ullat"));
+        Map<String, Object> failed = rasterer.processRequest(inverted, null);
+        assertTrue(!failed.containsKey("raster_width"));
+        assertTrue(!failed.containsKey("raster_height"));
+    }
+
     private List<Map<String, Double>> paramsFromFile() throws Exception {
         List<String> lines = Files.readAllLines(Paths.get(PARAMS_FILE), Charset.defaultCharset());
         List<Map<String, Double>> testParams = new ArrayList<>();
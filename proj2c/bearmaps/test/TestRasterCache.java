@@ -0,0 +1,60 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.RasterCache;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/** Checks RasterCache's eviction and its invalidation when the route changes. */
+public class TestRasterCache {
+
+    @Test
+    public void testKeysAndEviction() {
+        RasterCache cache = new RasterCache(250);
+        byte[] a = new byte[100];
+        byte[] b = new byte[100];
+        cache.put(7, 10, 20, 14, 23, 0, a);
+        cache.put(7, 10, 20, 14, 24, 0, b);
+        assertSame(a, cache.get(7, 10, 20, 14, 23, 0));
+        assertSame(b, cache.get(7, 10, 20, 14, 24, 0));
+        assertNull(cache.get(6, 10, 20, 14, 23, 0));
+        assertNull(cache.get(7, 11, 20, 14, 23, 0));
+
+        /* b was used last, so a goes */
+        cache.put(7, 0, 0, 1, 1, 0, new byte[100]);
+        assertEquals(1, cache.evictions());
+        assertEquals(200, cache.bytes());
+        assertNull(cache.get(7, 10, 20, 14, 23, 0));
+        assertSame(b, cache.get(7, 10, 20, 14, 24, 0));
+
+        /* too big to keep at all */
+        cache.put(3, 0, 0, 7, 7, 0, new byte[300]);
+        assertNull(cache.get(3, 0, 0, 7, 7, 0));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void testRouteChanges() {
+        RasterCache cache = new RasterCache(1000);
+        byte[] png = {1, 2, 3};
+        cache.put(2, 0, 0, 3, 3, 5, png);
+        assertArrayEquals(png, cache.get(2, 0, 0, 3, 3, 5));
+
+        /* a newer route empties the cache */
+        assertNull(cache.get(2, 0, 0, 3, 3, 6));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.invalidations());
+
+        /* rasters drawn with an older route are not kept, or served */
+        cache.put(2, 0, 0, 3, 3, 5, png);
+        assertNull(cache.get(2, 0, 0, 3, 3, 6));
+        assertNull(cache.get(2, 0, 0, 3, 3, 5));
+        cache.put(2, 0, 0, 3, 3, 6, png);
+        assertSame(png, cache.get(2, 0, 0, 3, 3, 6));
+    }
+}
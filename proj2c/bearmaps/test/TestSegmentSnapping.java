@@ -0,0 +1,238 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.proj2ab.PackedRTree;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks PackedRTree against a linear scan, snapping points onto the edges of a
+ * random street grid, and that routes between snapped points are as short as the
+ * best way through either end of each point's edge.
+ */
+public class TestSegmentSnapping {
+    private static final double WEIGHT_THRESHOLD = 1e-9;
+    private static AugmentedStreetMapGraph plain;
+    private static AugmentedStreetMapGraph compact;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        String map = RandomOsmMaps.write(20, 20, 71);
+        plain = new AugmentedStreetMapGraph(map);
+        compact = new AugmentedStreetMapGraph(map);
+        File file = File.createTempFile("hierarchy", ".ch");
+        file.delete();
+        file.deleteOnExit();
+        compact.useContractionHierarchy(file.getPath());
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random(71);
+        /* large enough to be built in parallel, with repeated and zero-length segments */
+        int n = 30000;
+        double[] x1s = new double[n];
+        double[] y1s = new double[n];
+        double[] x2s = new double[n];
+        double[] y2s = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && random.nextInt(20) == 0) {
+                int copy = random.nextInt(i);
+                x1s[i] = x1s[copy];
+                y1s[i] = y1s[copy];
+                x2s[i] = x2s[copy];
+                y2s[i] = y2s[copy];
+                continue;
+            }
+            x1s[i] = -122.30 + random.nextDouble() * 0.05;
+            y1s[i] = 37.84 + random.nextDouble() * 0.05;
+            boolean point = random.nextInt(50) == 0;
+            x2s[i] = point ? x1s[i] : x1s[i] + (random.nextDouble() - 0.5) * 0.004;
+            y2s[i] = point ? y1s[i] : y1s[i] + (random.nextDouble() - 0.5) * 0.004;
+        }
+        PackedRTree tree = new PackedRTree(x1s, y1s, x2s, y2s);
+        assertEquals(n, tree.size());
+        for (int q = 0; q < 300; q++) {
+            double x = -122.31 + random.nextDouble() * 0.07;
+            double y = 37.83 + random.nextDouble() * 0.07;
+            double expected = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                expected = Math.min(expected, tree.distance(i, x, y));
+            }
+            assertEquals(expected, tree.distance(tree.nearest(x, y), x, y), 0);
+        }
+    }
+
+    @Test
+    public void testSmallTrees() {
+        Random random = new Random(72);
+        double[] none = new double[0];
+        assertEquals(-1, new PackedRTree(none, none, none, none).nearest(0, 0));
+        for (int n = 1; n < 40; n++) {
+            double[] x1s = new double[n];
+            double[] y1s = new double[n];
+            double[] x2s = new double[n];
+            double[] y2s = new double[n];
+            for (int i = 0; i < n; i++) {
+                x1s[i] = random.nextDouble();
+                y1s[i] = random.nextDouble();
+                x2s[i] = random.nextDouble();
+                y2s[i] = random.nextDouble();
+            }
+            PackedRTree tree = new PackedRTree(x1s, y1s, x2s, y2s);
+            for (int q = 0; q < 20; q++) {
+                double x = random.nextDouble();
+                double y = random.nextDouble();
+                int best = 0;
+                for (int i = 1; i < n; i++) {
+                    if (tree.distance(i, x, y) < tree.distance(best, x, y)) {
+                        best = i;
+                    }
+                }
+                assertEquals(tree.distance(best, x, y), tree.distance(tree.nearest(x, y), x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testProjection() {
+        /* a segment along a parallel, and one along a meridian */
+        PackedRTree tree = new PackedRTree(new double[]{-122.29, -122.25}, new double[]{37.87, 37.80},
+                new double[]{-122.27, -122.25}, new double[]{37.87, 37.82});
+        assertEquals(0, tree.nearest(-122.285, 37.871));
+        assertEquals(0.25, tree.fraction(0, -122.285, 37.871), 1e-9);
+        assertEquals(1, tree.nearest(-122.2501, 37.815));
+        assertEquals(0.75, tree.fraction(1, -122.2501, 37.815), 1e-9);
+        assertEquals(0, tree.fraction(1, -122.25, 37.70), 0);
+        assertEquals(1, tree.fraction(0, -122.20, 37.87), 0);
+        double miles = Point.distance(new Point(-122.285, 37.871), new Point(-122.285, 37.87));
+        assertEquals(miles, tree.distance(0, -122.285, 37.871), 1e-6);
+    }
+
+    @Test
+    public void testSnapIsNoFartherThanClosestVertex() {
+        Random random = new Random(73);
+        for (int q = 0; q < 500; q++) {
+            double lon = -122.292 + random.nextDouble() * 0.024;
+            double lat = 37.858 + random.nextDouble() * 0.024;
+            AugmentedStreetMapGraph.Snap snap = plain.snap(lon, lat);
+            assertTrue(snap.from < snap.to);
+            assertTrue(snap.fraction >= 0 && snap.fraction <= 1);
+            assertEquals(snap.weight, edgeWeight(plain, snap.from, snap.to), 0);
+            long closest = plain.closest(lon, lat);
+            Point target = new Point(lon, lat);
+            double toVertex = Point.distance(target, new Point(plain.lon(closest), plain.lat(closest)));
+            assertTrue(Point.distance(target, new Point(snap.lon, snap.lat)) <= toVertex + 1e-6);
+        }
+    }
+
+    @Test
+    public void testSnappedRoutesAreShortest() {
+        Random random = new Random(74);
+        for (int q = 0; q < 60; q++) {
+            double stlon = -122.292 + random.nextDouble() * 0.024;
+            double stlat = 37.858 + random.nextDouble() * 0.024;
+            /* every few queries, end on the same block */
+            double destlon = q % 5 == 0 ? stlon + 0.0002 : -122.292 + random.nextDouble() * 0.024;
+            double destlat = q % 5 == 0 ? stlat : 37.858 + random.nextDouble() * 0.024;
+            AugmentedStreetMapGraph.Snap start = plain.snap(stlon, stlat);
+            AugmentedStreetMapGraph.Snap end = plain.snap(destlon, destlat);
+            double expected = bestWeight(start, end);
+
+            double[] query = {stlon, stlat, destlon, destlat};
+            checkRoute(plain, Router.Algorithm.ASTAR, query, start, end, expected);
+            checkRoute(plain, Router.Algorithm.BIDIRECTIONAL_ASTAR, query, start, end, expected);
+            checkRoute(compact, Router.Algorithm.ASTAR, query, start, end, expected);
+            checkRoute(compact, Router.Algorithm.CONTRACTION_HIERARCHY, query, start, end, expected);
+        }
+    }
+
+    /**
+     * Routes on G between the two points in QUERY, which snap to START and END, and
+     * checks the route's length.
+     */
+    private static void checkRoute(AugmentedStreetMapGraph g, Router.Algorithm algorithm,
+                                   double[] query, AugmentedStreetMapGraph.Snap start,
+                                   AugmentedStreetMapGraph.Snap end, double expected) {
+        Router.RouteOptions options = new Router.RouteOptions();
+        options.algorithm = algorithm;
+        options.snapToSegments = true;
+        List<Long> route = Router.shortestPath(g, query[0], query[1], query[2], query[3], options);
+        if (Double.isInfinite(expected)) {
+            assertTrue(route.isEmpty());
+            return;
+        }
+        assertEquals(algorithm.toString(), expected, routeWeight(start, end, route), WEIGHT_THRESHOLD);
+    }
+
+    /**
+     * Returns the length of the shortest way from START to END, either straight along
+     * their edge if they share one, or through one end of each of their edges.
+     */
+    private static double bestWeight(AugmentedStreetMapGraph.Snap start,
+                                     AugmentedStreetMapGraph.Snap end) {
+        double best = Double.POSITIVE_INFINITY;
+        if (start.segment == end.segment) {
+            best = Math.abs(start.fraction - end.fraction) * start.weight;
+        }
+        for (long s : new long[]{start.from, start.to}) {
+            for (long e : new long[]{end.from, end.to}) {
+                AStarSolver<Long> solver = new AStarSolver<>(plain, s, e, 20);
+                if (solver.outcome() == SolverOutcome.SOLVED) {
+                    best = Math.min(best, offset(start, s) + solver.solutionWeight() + offset(end, e));
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Returns the length of ROUTE from the point START to the point END. */
+    private static double routeWeight(AugmentedStreetMapGraph.Snap start,
+                                      AugmentedStreetMapGraph.Snap end, List<Long> route) {
+        if (start.segment == end.segment && route.size() == 2
+                && route.get(0) == (start.fraction <= end.fraction ? start.from : start.to)
+                && route.get(1) == (start.fraction <= end.fraction ? start.to : start.from)) {
+            return Math.abs(start.fraction - end.fraction) * start.weight;
+        }
+        double weight = offset(start, route.get(0)) + offset(end, route.get(route.size() - 1));
+        for (int i = 1; i < route.size(); i++) {
+            weight += edgeWeight(plain, route.get(i - 1), route.get(i));
+        }
+        return weight;
+    }
+
+    /** Returns the distance along SNAP's edge from its point to the edge's vertex V. */
+    private static double offset(AugmentedStreetMapGraph.Snap snap, long v) {
+        assertTrue(v == snap.from || v == snap.to);
+        return v == snap.from ? snap.distanceToFrom() : snap.distanceToTo();
+    }
+
+    /** Returns the weight of the shortest edge from V to W in G. */
+    private static double edgeWeight(AugmentedStreetMapGraph g, long v, long w) {
+        double weight = Double.POSITIVE_INFINITY;
+        for (WeightedEdge<Long> e : g.neighbors(v)) {
+            if (e.to() == w) {
+                weight = Math.min(weight, e.weight());
+            }
+        }
+        assertTrue(weight < Double.POSITIVE_INFINITY);
+        return weight;
+    }
+}
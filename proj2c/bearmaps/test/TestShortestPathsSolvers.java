@@ -0,0 +1,155 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.IntAStarSolver;
+import bearmaps.hw4.Landmarks;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Checks the alternative solvers against AStarSolver on a random street grid. */
+public class TestShortestPathsSolvers {
+    private static final int NUM_QUERIES = 300;
+    private static final double WEIGHT_THRESHOLD = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static CompactStreetMapGraph compact;
+    private static Landmarks landmarks;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(RandomOsmMaps.write(40, 40, 61));
+        compact = graph.compact();
+        landmarks = Landmarks.select(compact, 8);
+        initialized = true;
+    }
+
+    @Test
+    public void testBidirectionalMatchesAStar() {
+        Random random = new Random(61);
+        long statesAStar = 0;
+        long statesBidirectional = 0;
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = compact.idAt(random.nextInt(compact.numVertices()));
+            long end = compact.idAt(random.nextInt(compact.numVertices()));
+            AStarSolver<Long> expected = new AStarSolver<>(graph, start, end, 20);
+            BidirectionalAStarSolver<Long> actual =
+                    new BidirectionalAStarSolver<>(graph, start, end, 20);
+            checkSameResult(expected, actual, start, end);
+            statesAStar += expected.numStatesExplored();
+            statesBidirectional += actual.numStatesExplored();
+        }
+        assertTrue("Bidirectional A* explored " + statesBidirectional + " states, A* "
+                + statesAStar, statesBidirectional < statesAStar);
+    }
+
+    @Test
+    public void testBidirectionalUnsolvable() {
+        long start = compact.idAt(0);
+        ShortestPathsSolver<Long> solver = new BidirectionalAStarSolver<>(graph, start,
+                RandomOsmMaps.islandId(), 20);
+        assertEquals(SolverOutcome.UNSOLVABLE, solver.outcome());
+        assertEquals(0, solver.solution().size());
+
+        solver = new BidirectionalAStarSolver<>(graph, start, start, 20);
+        assertEquals(SolverOutcome.SOLVED, solver.outcome());
+        assertEquals(List.of(start), solver.solution());
+    }
+
+    @Test
+    public void testLandmarksMatchAStar() {
+        CompactStreetMapGraph alt = compact.withLandmarks(landmarks);
+        IntAStarSolver altSolver = new IntAStarSolver(alt);
+        Random random = new Random(61);
+        long statesGreatCircle = 0;
+        long statesLandmarks = 0;
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            long start = compact.idAt(random.nextInt(compact.numVertices()));
+            long end = compact.idAt(random.nextInt(compact.numVertices()));
+            AStarSolver<Long> expected = new AStarSolver<>(graph, start, end, 20);
+            checkSameResult(expected, new AStarSolver<>(alt, start, end, 20), start, end);
+            checkSameResult(expected, new BidirectionalAStarSolver<>(alt, start, end, 20),
+                    start, end);
+
+            altSolver.solve(compact.index(start), compact.index(end), 20);
+            assertEquals(expected.outcome(), altSolver.outcome());
+            assertEquals(expected.solutionWeight(), altSolver.solutionWeight(), WEIGHT_THRESHOLD);
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertTrue(alt.estimatedDistanceToGoal(start, end)
+                        <= expected.solutionWeight());
+            }
+            statesGreatCircle += expected.numStatesExplored();
+            statesLandmarks += altSolver.numStatesExplored();
+        }
+        assertTrue("Landmarks explored " + statesLandmarks + " states, great circles "
+                + statesGreatCircle, statesLandmarks < statesGreatCircle);
+    }
+
+    @Test
+    public void testLandmarksSaveAndLoad() throws IOException {
+        File file = File.createTempFile("landmarks", ".bin");
+        file.deleteOnExit();
+        landmarks.save(file.getPath(), compact);
+        Landmarks loaded = Landmarks.load(file.getPath(), compact);
+        assertEquals(landmarks.numLandmarks(), loaded.numLandmarks());
+        Random random = new Random(61);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            int v = random.nextInt(compact.numVertices());
+            int goal = random.nextInt(compact.numVertices());
+            assertEquals(landmarks.lowerBound(v, goal), loaded.lowerBound(v, goal), 0);
+        }
+
+        CompactStreetMapGraph other =
+                new AugmentedStreetMapGraph(RandomOsmMaps.write(40, 40, 62)).compact();
+        try {
+            Landmarks.load(file.getPath(), other);
+            fail("Loaded landmarks computed for a different graph.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /** Checks that ACTUAL found a path from START to END as short as EXPECTED's. */
+    private void checkSameResult(ShortestPathsSolver<Long> expected,
+                                 ShortestPathsSolver<Long> actual, long start, long end) {
+        assertEquals(expected.outcome(), actual.outcome());
+        assertEquals(expected.solutionWeight(), actual.solutionWeight(), WEIGHT_THRESHOLD);
+        if (expected.outcome() != SolverOutcome.SOLVED) {
+            return;
+        }
+        List<Long> path = actual.solution();
+        assertEquals(start, (long) path.get(0));
+        assertEquals(end, (long) path.get(path.size() - 1));
+        double weight = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            weight += edgeWeight(path.get(i), path.get(i + 1));
+        }
+        assertEquals(expected.solutionWeight(), weight, WEIGHT_THRESHOLD);
+    }
+
+    private double edgeWeight(long from, long to) {
+        for (WeightedEdge<Long> e : graph.neighbors(from)) {
+            if (e.to() == to) {
+                return e.weight();
+            }
+        }
+        throw new AssertionError("No edge from " + from + " to " + to);
+    }
+}
@@ -0,0 +1,123 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapSnapshot;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that a graph loaded from a snapshot behaves like the one parsed from XML. */
+public class TestStreetMapSnapshot {
+
+    @Test
+    public void testSnapshotMatchesXML() throws IOException {
+        String xml = RandomOsmMaps.write(30, 30, 61);
+        String snapshot = tempPath();
+        AugmentedStreetMapGraph parsed = new AugmentedStreetMapGraph(xml, snapshot);
+        assertTrue(new File(snapshot).exists());
+        assertNotNull(StreetMapSnapshot.read(snapshot, xml));
+        AugmentedStreetMapGraph loaded = new AugmentedStreetMapGraph(xml, snapshot);
+
+        assertEquals(parsed, loaded);
+        /* a loaded graph is packed from the start, so it hands out the same copy */
+        assertSame(loaded.compact(), loaded.compact());
+        CompactStreetMapGraph expected = parsed.compact();
+        CompactStreetMapGraph actual = loaded.compact();
+        assertEquals(expected.numEdges(), actual.numEdges());
+        for (int i = 0; i < expected.numVertices(); i++) {
+            long id = expected.idAt(i);
+            assertEquals(id, actual.idAt(i));
+            assertEquals(expected.latAt(i), actual.latAt(i), 0);
+            assertEquals(expected.lonAt(i), actual.lonAt(i), 0);
+            assertEquals(expected.nameAt(i), actual.nameAt(i));
+            assertEquals(edges(parsed.neighbors(id)), edges(loaded.neighbors(id)));
+        }
+
+        Random random = new Random(61);
+        for (int i = 0; i < 200; i++) {
+            double lon = -122.29 + random.nextDouble() * 0.03;
+            double lat = 37.85 + random.nextDouble() * 0.03;
+            assertEquals(parsed.closest(lon, lat), loaded.closest(lon, lat));
+        }
+        for (String prefix : new String[]{"p", "place 1", "Place 2-", "x"}) {
+            assertEquals(new HashSet<>(parsed.getLocationsByPrefix(prefix)),
+                    new HashSet<>(loaded.getLocationsByPrefix(prefix)));
+        }
+        for (String name : parsed.getLocationsByPrefix("place")) {
+            assertEquals(new HashSet<>(parsed.getLocations(name)),
+                    new HashSet<>(loaded.getLocations(name)));
+        }
+    }
+
+    @Test
+    public void testStaleSnapshotIsIgnored() throws IOException {
+        String xml = RandomOsmMaps.write(5, 5, 61);
+        String snapshot = tempPath();
+        new AugmentedStreetMapGraph(xml, snapshot);
+        assertNotNull(StreetMapSnapshot.read(snapshot, xml));
+
+        try (FileWriter out = new FileWriter(xml, true)) {
+            out.write("<!-- edited -->\n");
+        }
+        assertNull(StreetMapSnapshot.read(snapshot, xml));
+        new AugmentedStreetMapGraph(xml, snapshot);
+        assertNotNull(StreetMapSnapshot.read(snapshot, xml));
+
+        try (FileWriter out = new FileWriter(snapshot)) {
+            out.write("not a snapshot");
+        }
+        assertNull(StreetMapSnapshot.read(snapshot, xml));
+        assertNull(StreetMapSnapshot.read(snapshot + ".missing", xml));
+        assertEquals(new AugmentedStreetMapGraph(xml), new AugmentedStreetMapGraph(xml, snapshot));
+        assertNotNull(StreetMapSnapshot.read(snapshot, xml));
+    }
+
+    @Test
+    public void testCorruptCountsAreIgnored() throws IOException {
+        String snapshot = tempPath();
+        /* a valid header for a source that does not exist, then a bad string count */
+        for (int count : new int[]{-1, Integer.MAX_VALUE}) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(snapshot))) {
+                out.writeInt(0x424d5347);
+                out.writeInt(3);
+                out.writeLong(0);
+                out.writeLong(0);
+                out.writeInt(count);
+                out.writeInt(0);
+            }
+            assertNull(StreetMapSnapshot.read(snapshot, snapshot + ".missing"));
+        }
+    }
+
+    /** Returns a path for a snapshot that does not exist yet. */
+    private static String tempPath() throws IOException {
+        File file = File.createTempFile("snapshot", ".bin");
+        file.delete();
+        file.deleteOnExit();
+        return file.getPath();
+    }
+
+    /** Returns the target, weight and name of each edge, ignoring their order. */
+    private static HashSet<String> edges(List<WeightedEdge<Long>> edges) {
+        HashSet<String> set = new HashSet<>();
+        for (WeightedEdge<Long> e : edges) {
+            set.add(e.to() + " " + e.weight() + " " + e.getName());
+        }
+        return set;
+    }
+}
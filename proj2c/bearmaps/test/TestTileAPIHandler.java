@@ -0,0 +1,94 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.server.handler.impl.TileAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.get;
+import static spark.Spark.port;
+import static spark.Spark.stop;
+
+/** Fetches tiles from a server running TileAPIHandler, with and without their ETags. */
+public class TestTileAPIHandler {
+    private static final int PORT = 4569;
+    private static final String HOST = "http://localhost:" + PORT;
+
+    @BeforeClass
+    public static void startServer() {
+        port(PORT);
+        get("/tiles/:depth/:x/:y", new TileAPIHandler());
+        awaitInitialization();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        stop();
+    }
+
+    @Test
+    public void testServesTileBytes() throws Exception {
+        HttpURLConnection connection = open("/tiles/7/21/98.png", null);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("image/png", connection.getContentType());
+        assertTrue(connection.getHeaderField("Cache-Control").contains("max-age="));
+        byte[] expected = Files.readAllBytes(Paths.get(Constants.IMG_ROOT + TileCache.fileName(7, 21, 98)));
+        assertArrayEquals(expected, body(connection));
+        String etag = connection.getHeaderField("ETag");
+        assertNotNull(etag);
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+
+        /* the same tile always gets the same ETag, and another tile another one */
+        assertEquals(etag, open("/tiles/7/21/98.png", null).getHeaderField("ETag"));
+        assertTrue(!etag.equals(open("/tiles/7/21/99.png", null).getHeaderField("ETag")));
+    }
+
+    @Test
+    public void testConditionalGet() throws Exception {
+        String etag = open("/tiles/3/2/5.png", null).getHeaderField("ETag");
+        HttpURLConnection current = open("/tiles/3/2/5.png", etag);
+        assertEquals(304, current.getResponseCode());
+        assertEquals(etag, current.getHeaderField("ETag"));
+        assertEquals(304, open("/tiles/3/2/5.png", "\"0-0\", W/" + etag).getResponseCode());
+
+        HttpURLConnection stale = open("/tiles/3/2/5.png", "\"0-0\"");
+        assertEquals(200, stale.getResponseCode());
+        assertEquals(etag, stale.getHeaderField("ETag"));
+        assertTrue(body(stale).length > 0);
+    }
+
+    @Test
+    public void testMissingTiles() throws Exception {
+        assertEquals(404, open("/tiles/2/4/4.png", null).getResponseCode());
+        assertEquals(404, open("/tiles/two/1/1.png", null).getResponseCode());
+    }
+
+    private static HttpURLConnection open(String path, String ifNoneMatch) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(HOST + path).openConnection();
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        connection.getResponseCode();
+        return connection;
+    }
+
+    private static byte[] body(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+}
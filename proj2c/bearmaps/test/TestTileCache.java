@@ -0,0 +1,83 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Checks TileCache against reading the tiles straight from disk. */
+public class TestTileCache {
+    /* bytes one cached 256x256 tile takes */
+    private static final long TILE_BYTES = 256 * 256 * 4;
+
+    @Test
+    public void testMatchesDisk() throws Exception {
+        TileCache cache = new TileCache(Constants.IMG_ROOT, 100 * TILE_BYTES);
+        for (int depth = 0; depth <= 7; depth++) {
+            int x = (1 << depth) / 3, y = (1 << depth) / 2;
+            BufferedImage expected = ImageIO.read(new File(Constants.IMG_ROOT
+                    + TileCache.fileName(depth, x, y)));
+            BufferedImage actual = cache.get(depth, x, y);
+            assertEquals(BufferedImage.TYPE_INT_RGB, actual.getType());
+            for (int py = 0; py < expected.getHeight(); py += 7) {
+                for (int px = 0; px < expected.getWidth(); px += 7) {
+                    assertEquals(expected.getRGB(px, py), actual.getRGB(px, py));
+                }
+            }
+            assertSame(actual, cache.get(depth, x, y));
+        }
+        assertEquals(8, cache.hits());
+        assertEquals(8, cache.misses());
+        assertEquals(8 * TILE_BYTES, cache.bytes());
+        assertNull(cache.get(2, 4, 4));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        TileCache cache = new TileCache(Constants.IMG_ROOT, 3 * TILE_BYTES);
+        BufferedImage a = cache.get(1, 0, 0);
+        cache.get(1, 1, 0);
+        cache.get(1, 0, 1);
+        /* touching a makes (1, 1, 0) the least recently used */
+        assertSame(a, cache.get(1, 0, 0));
+        cache.get(1, 1, 1);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.evictions());
+        assertEquals(3 * TILE_BYTES, cache.bytes());
+        assertSame(a, cache.get(1, 0, 0));
+        long misses = cache.misses();
+        cache.get(1, 1, 0);
+        assertEquals(misses + 1, cache.misses());
+    }
+
+    @Test
+    public void testWarmAndConcurrentReads() {
+        TileCache cache = new TileCache(Constants.IMG_ROOT, 1000 * TILE_BYTES);
+        cache.warm(2);
+        assertEquals(1 + 4 + 16, cache.size());
+        assertEquals(0, cache.hits());
+        long[] found = IntStream.range(0, 2000).parallel()
+                .mapToLong(i -> cache.get(2, i % 4, (i / 4) % 4) == null ? 0 : 1).toArray();
+        for (long f : found) {
+            assertEquals(1, f);
+        }
+        assertEquals(2000, cache.hits());
+        assertTrue(cache.toString().contains("2000 hits"));
+    }
+
+    @Test
+    public void testFileNames() {
+        assertEquals("d7_x12_y105.png", TileCache.fileName(7, 12, 105));
+        assertArrayEquals(new int[]{7, 12, 105}, TileCache.parseFileName("d7_x12_y105.png"));
+    }
+}
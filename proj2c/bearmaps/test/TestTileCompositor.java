@@ -0,0 +1,49 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.raster.TileCompositor;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks TileCompositor against drawing the tiles from disk one after another. */
+public class TestTileCompositor {
+    private static final int TILE = Constants.TILE_SIZE;
+
+    @Test
+    public void testMatchesSequentialDrawing() throws Exception {
+        TileCompositor compositor = new TileCompositor(
+                new TileCache(Constants.IMG_ROOT, Constants.TILE_CACHE_BYTES), TILE, 4);
+        int[][] blocks = {{7, 30, 50, 5, 4}, {3, 0, 0, 8, 8}, {0, 0, 0, 1, 1}, {5, 31, 2, 1, 3}};
+        for (int[] b : blocks) {
+            BufferedImage expected = new BufferedImage(b[3] * TILE, b[4] * TILE,
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics g = expected.getGraphics();
+            for (int r = 0; r < b[4]; r++) {
+                for (int c = 0; c < b[3]; c++) {
+                    g.drawImage(ImageIO.read(new File(Constants.IMG_ROOT
+                            + TileCache.fileName(b[0], b[1] + c, b[2] + r))), c * TILE, r * TILE, null);
+                }
+            }
+            Images.assertSameImage(expected, compositor.composite(b[0], b[1], b[2], b[3], b[4]));
+        }
+        compositor.shutdown();
+    }
+
+    @Test
+    public void testMissingTilesAreBlack() {
+        TileCompositor compositor = new TileCompositor(
+                new TileCache(Constants.IMG_ROOT, Constants.TILE_CACHE_BYTES), TILE, 2);
+        /* only (1, 1, 1) exists at depth 1 */
+        BufferedImage img = compositor.composite(1, 1, 1, 2, 2);
+        assertEquals(0, img.getRGB(TILE + 10, 10) & 0xFFFFFF);
+        assertEquals(0, img.getRGB(10, TILE + 10) & 0xFFFFFF);
+        compositor.shutdown();
+    }
+}
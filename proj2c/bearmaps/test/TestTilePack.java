@@ -0,0 +1,113 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.FallbackTileSource;
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.raster.TileDirectory;
+import bearmaps.proj2c.raster.TilePack;
+import bearmaps.proj2c.raster.TileSource;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Checks TilePack against the tile files it is built from. */
+public class TestTilePack {
+    /* depths packed, kept small so the test is quick */
+    private static final int MAX_DEPTH = 3;
+
+    @Test
+    public void testMatchesFiles() throws Exception {
+        File file = File.createTempFile("tiles", ".pack");
+        file.deleteOnExit();
+        TileSource files = new TileDirectory(Constants.IMG_ROOT);
+        TilePack.write(file.getPath(), files, MAX_DEPTH);
+        TilePack pack = TilePack.open(file.getPath());
+        assertEquals(MAX_DEPTH, pack.maxDepth());
+        for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+            for (int y = 0; y < 1 << depth; y++) {
+                for (int x = 0; x < 1 << depth; x++) {
+                    assertEquals(files.read(depth, x, y), pack.read(depth, x, y));
+                }
+            }
+        }
+        /* reads do not disturb each other */
+        ByteBuffer first = pack.read(1, 0, 1);
+        first.get(new byte[first.remaining() / 2]);
+        assertEquals(files.read(1, 0, 1), pack.read(1, 0, 1));
+
+        assertNull(pack.read(MAX_DEPTH + 1, 0, 0));
+        assertNull(pack.read(2, 4, 0));
+        assertNull(pack.read(2, 0, -1));
+    }
+
+    @Test
+    public void testMissingTiles() throws Exception {
+        File file = File.createTempFile("tiles", ".pack");
+        file.deleteOnExit();
+        TileSource files = new TileDirectory(Constants.IMG_ROOT);
+        /* a source missing every tile with x == 1 */
+        TilePack.write(file.getPath(), (depth, x, y) -> x == 1 ? null : files.read(depth, x, y), 2);
+        TilePack pack = TilePack.open(file.getPath());
+        assertNull(pack.read(1, 1, 0));
+        assertNull(pack.read(2, 1, 3));
+        assertNotNull(pack.read(2, 2, 3));
+
+        TileSource fallback = new FallbackTileSource(pack, files);
+        assertEquals(files.read(1, 1, 0), fallback.read(1, 1, 0));
+        assertEquals(files.read(5, 7, 9), fallback.read(5, 7, 9));
+        assertNull(fallback.read(2, 4, 4));
+
+        TileCache cache = new TileCache(fallback, 1 << 20);
+        BufferedImage tile = cache.get(2, 1, 3);
+        assertEquals(Constants.TILE_SIZE, tile.getWidth());
+        assertEquals(BufferedImage.TYPE_INT_RGB, tile.getType());
+    }
+
+    @Test
+    public void testBadPacks() throws Exception {
+        File file = File.createTempFile("tiles", ".pack");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        try {
+            TilePack.open(file.getPath());
+            fail("opened a file that is not a tile pack");
+        } catch (IOException e) {
+            /* expected */
+        }
+        /* a bad pack, or none, falls back to the files alone */
+        TileSource source = TilePack.openWithFallback(file.getPath(), Constants.IMG_ROOT);
+        assertTrue(source instanceof TileDirectory);
+        source = TilePack.openWithFallback(file.getPath() + ".none", Constants.IMG_ROOT);
+        assertTrue(source instanceof TileDirectory);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testCorruptMaxDepth() throws Exception {
+        File file = File.createTempFile("tiles", ".pack");
+        file.deleteOnExit();
+        /* depths whose index size overflows an int, or that are out of range */
+        for (int maxDepth : new int[]{-1, 14, 15, 16, 31, Integer.MAX_VALUE}) {
+            ByteBuffer header = ByteBuffer.allocate(64);
+            header.putInt(0x424d5450).putInt(1).putInt(maxDepth);
+            Files.write(file.toPath(), header.array());
+            try {
+                TilePack.open(file.getPath());
+                fail("opened a pack with maxDepth " + maxDepth);
+            } catch (IOException e) {
+                /* expected */
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.IntAStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times random shortest path queries on the street graph, reporting wall time, states
+ * explored and bytes allocated per query for each solver and way of walking the graph.
+ * Run with an OSM file path as the first argument to use a different map than
+ * Constants.OSM_DB_PATH, and a query count as the second.
+ */
+public class TimeAStarSolver {
+    private static final int WARMUP_ROUNDS = 3;
+
+    /** Hides any forEachNeighbor override, so solvers go through neighbors() lists. */
+    private static class ListOnlyGraph implements AStarGraph<Long> {
+        private final AStarGraph<Long> g;
+
+        ListOnlyGraph(AStarGraph<Long> g) {
+            this.g = g;
+        }
+
+        @Override
+        public List<WeightedEdge<Long>> neighbors(Long v) {
+            return g.neighbors(v);
+        }
+
+        @Override
+        public double estimatedDistanceToGoal(Long s, Long goal) {
+            return g.estimatedDistanceToGoal(s, goal);
+        }
+    }
+
+    /** Builds a solver for one query. */
+    private interface Solvers {
+        ShortestPathsSolver<Long> solve(AStarGraph<Long> g, long start, long end);
+    }
+
+    public static void main(String[] args) {
+        String path = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(path);
+        CompactStreetMapGraph compact = graph.compact();
+        long[][] queries = randomQueries(compact, numQueries);
+
+        System.out.printf("%-28s %12s %12s %14s%n", "graph", "ms/query", "states/q", "bytes/query");
+        Solvers aStar = (g, s, t) -> new AStarSolver<>(g, s, t, 20);
+        Solvers bidirectional = (g, s, t) -> new BidirectionalAStarSolver<>(g, s, t, 20);
+        timeQueries("StreetMapGraph neighbors()", new ListOnlyGraph(graph), aStar, queries);
+        timeQueries("StreetMapGraph forEach", graph, aStar, queries);
+        timeQueries("Compact neighbors()", new ListOnlyGraph(compact), aStar, queries);
+        timeQueries("Compact forEach", compact, aStar, queries);
+        timeIntQueries("IntAStarSolver", compact, queries);
+        timeQueries("Bidirectional, compact", compact, bidirectional, queries);
+    }
+
+    private static long[][] randomQueries(CompactStreetMapGraph g, int numQueries) {
+        Random random = new Random(61);
+        long[][] queries = new long[numQueries][2];
+        for (long[] q : queries) {
+            q[0] = g.idAt(random.nextInt(g.numVertices()));
+            q[1] = g.idAt(random.nextInt(g.numVertices()));
+        }
+        return queries;
+    }
+
+    private static void timeQueries(String label, AStarGraph<Long> g, Solvers solvers,
+                                    long[][] queries) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runQueries(g, solvers, queries);
+        }
+        long bytesBefore = allocatedBytes();
+        Stopwatch sw = new Stopwatch();
+        long states = runQueries(g, solvers, queries);
+        double seconds = sw.elapsedTime();
+        long bytes = allocatedBytes() - bytesBefore;
+
+        System.out.printf("%-28s %12.4f %12.1f %14d%n", label, seconds * 1000 / queries.length,
+                (double) states / queries.length, bytes / queries.length);
+    }
+
+    private static void timeIntQueries(String label, CompactStreetMapGraph g, long[][] queries) {
+        int[][] indexQueries = new int[queries.length][2];
+        for (int i = 0; i < queries.length; i++) {
+            indexQueries[i][0] = g.index(queries[i][0]);
+            indexQueries[i][1] = g.index(queries[i][1]);
+        }
+        IntAStarSolver solver = new IntAStarSolver(g);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runIntQueries(solver, indexQueries);
+        }
+        long bytesBefore = allocatedBytes();
+        Stopwatch sw = new Stopwatch();
+        long states = runIntQueries(solver, indexQueries);
+        double seconds = sw.elapsedTime();
+        long bytes = allocatedBytes() - bytesBefore;
+
+        System.out.printf("%-28s %12.4f %12.1f %14d%n", label, seconds * 1000 / queries.length,
+                (double) states / queries.length, bytes / queries.length);
+    }
+
+    private static long runIntQueries(IntAStarSolver solver, int[][] queries) {
+        long states = 0;
+        for (int[] q : queries) {
+            solver.solve(q[0], q[1], 20);
+            states += solver.numStatesExplored();
+        }
+        return states;
+    }
+
+    private static long runQueries(AStarGraph<Long> g, Solvers solvers, long[][] queries) {
+        long states = 0;
+        for (long[] q : queries) {
+            states += solvers.solve(g, q[0], q[1]).numStatesExplored();
+        }
+        return states;
+    }
+
+    /** Bytes allocated so far by this thread, or 0 if the JVM cannot tell. */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,81 @@
+package bearmaps.test;
+
+import bearmaps.hw4.IntAStarSolver;
+import bearmaps.hw4.Landmarks;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.ch.ContractionHierarchy;
+import bearmaps.hw4.ch.ContractionHierarchySolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.Random;
+
+/**
+ * Times building a contraction hierarchy and answering random queries with it,
+ * next to IntAStarSolver with great-circle and landmark heuristics. Run with an
+ * OSM file path as the first argument to use a different map than
+ * Constants.OSM_DB_PATH, and a query count as the second.
+ */
+public class TimeContractionHierarchy {
+    private static final int WARMUP_ROUNDS = 3;
+
+    /** Solves one query on a reusable solver. */
+    private interface Query {
+        ShortestPathsSolver<Integer> solve(int start, int end);
+    }
+
+    public static void main(String[] args) {
+        String path = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(path);
+        CompactStreetMapGraph compact = graph.compact();
+        Stopwatch sw = new Stopwatch();
+        ContractionHierarchy ch = ContractionHierarchy.build(compact);
+        System.out.printf("Built hierarchy in %.0f ms: %d vertices, %d upward edges, "
+                        + "%d shortcuts%n", sw.elapsedTime() * 1000, ch.numVertices(),
+                ch.numEdges(), ch.numShortcuts());
+
+        Random random = new Random(61);
+        int[][] queries = new int[numQueries][2];
+        for (int[] q : queries) {
+            q[0] = random.nextInt(compact.numVertices());
+            q[1] = random.nextInt(compact.numVertices());
+        }
+
+        IntAStarSolver aStar = new IntAStarSolver(compact);
+        IntAStarSolver alt = new IntAStarSolver(
+                compact.withLandmarks(Landmarks.select(compact, Constants.NUM_LANDMARKS)));
+        ContractionHierarchySolver hierarchy = new ContractionHierarchySolver(ch);
+        System.out.printf("%-24s %12s %12s%n", "solver", "ms/query", "states/q");
+        timeQueries("A*, great circle", (s, t) -> {
+            aStar.solve(s, t, 20);
+            return aStar;
+        }, queries);
+        timeQueries("A*, landmarks", (s, t) -> {
+            alt.solve(s, t, 20);
+            return alt;
+        }, queries);
+        timeQueries("Contraction hierarchy", (s, t) -> {
+            hierarchy.solve(s, t, 20);
+            return hierarchy;
+        }, queries);
+    }
+
+    private static void timeQueries(String label, Query query, int[][] queries) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            for (int[] q : queries) {
+                query.solve(q[0], q[1]);
+            }
+        }
+        long states = 0;
+        Stopwatch sw = new Stopwatch();
+        for (int[] q : queries) {
+            states += query.solve(q[0], q[1]).numStatesExplored();
+        }
+        System.out.printf("%-24s %12.4f %12.1f%n", label,
+                sw.elapsedTime() * 1000 / queries.length, (double) states / queries.length);
+    }
+}
@@ -0,0 +1,95 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.GridPointSet;
+import bearmaps.proj2ab.KDTree;
+import bearmaps.proj2ab.PackedKDTree;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2ab.PointSet;
+import bearmaps.proj2ab.WeirdPointSet;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Times building each PointSet over random points around Berkeley, for several
+ * numbers of points, and the nearest queries per second it then answers on one
+ * thread. GridPointSet and PackedKDTree are also timed answering all the queries
+ * as one batch, as AugmentedStreetMapGraph.closestAll does.
+ */
+public class TimeGridPointSet {
+    private static final int[] SIZES = {1000, 10000, 100000, 1000000};
+    private static final int NUM_QUERIES = 100000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        List<Point> queries = TestKDTree.randomPoints(random, NUM_QUERIES);
+        double[] qxs = new double[NUM_QUERIES];
+        double[] qys = new double[NUM_QUERIES];
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            qxs[q] = queries.get(q).getX();
+            qys[q] = queries.get(q).getY();
+        }
+
+        System.out.printf("%-14s %9s %10s %12s%n", "", "points", "build ms", "queries/s");
+        for (int n : SIZES) {
+            List<Point> points = TestKDTree.randomPoints(random, n);
+            time("GridPointSet", points, GridPointSet::new, queries);
+            time("KDTree", points, KDTree::new, queries);
+            time("Projected", points, p -> new KDTree(p, true), queries);
+            time("PackedKDTree", points, PackedKDTree::new, queries);
+            /* WeirdPointSet shuffles the list it is given */
+            time("WeirdPointSet", points, p -> new WeirdPointSet(new ArrayList<>(p)), queries);
+
+            timeBatch("Grid batch", n, new GridPointSet(points)::nearestIds, qxs, qys);
+            timeBatch("Packed batch", n, new PackedKDTree(points)::nearestIds, qxs, qys);
+            System.out.println();
+        }
+    }
+
+    /** Prints how many of the queries (QXS[i], QYS[i]) per second BATCH answers as one batch. */
+    private static void timeBatch(String name, int n, BiFunction<double[], double[], long[]> batch,
+                                  double[] qxs, double[] qys) {
+        double best = Double.POSITIVE_INFINITY;
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            Stopwatch sw = new Stopwatch();
+            sum += batch.apply(qxs, qys)[0];
+            best = Math.min(best, sw.elapsedTime());
+        }
+        if (sum < 0) {
+            System.out.println(sum);
+        }
+        System.out.printf("%-14s %9d %10s %12.0f%n", name, n, "", qxs.length / best);
+    }
+
+    /** Builds a PointSet over POINTS with BUILD and prints how long that and QUERIES take. */
+    private static void time(String name, List<Point> points, Function<List<Point>, PointSet> build,
+                             List<Point> queries) {
+        double buildTime = Double.POSITIVE_INFINITY;
+        PointSet set = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            Stopwatch sw = new Stopwatch();
+            set = build.apply(points);
+            buildTime = Math.min(buildTime, sw.elapsedTime());
+        }
+        double best = Double.POSITIVE_INFINITY;
+        double sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            Stopwatch sw = new Stopwatch();
+            for (Point q : queries) {
+                sum += set.nearest(q.getX(), q.getY()).getX();
+            }
+            best = Math.min(best, sw.elapsedTime());
+        }
+        if (sum == 0) {
+            System.out.println(sum);
+        }
+        System.out.printf("%-14s %9d %10.0f %12.0f%n", name, points.size(), buildTime * 1000,
+                queries.size() / best);
+    }
+}
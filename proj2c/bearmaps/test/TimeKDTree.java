@@ -0,0 +1,149 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.KDTree;
+import bearmaps.proj2ab.PackedKDTree;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2ab.PointSet;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+
+/**
+ * Times building a KDTree, a projected KDTree and a PackedKDTree over the same
+ * random points, and nearest queries on each from 1, 2, 4, ... threads sharing
+ * one tree, up to the number of cores. Prints the queries per second in total and per thread. Then
+ * times PackedKDTree's kNearest and withinRadius against scanning every point.
+ */
+public class TimeKDTree {
+    private static final int NUM_POINTS = 100000;
+    private static final int NUM_QUERIES = 2000;
+    private static final int ROUNDS = 3;
+    /* the queries are repeated so that each timing runs long enough */
+    private static final int REPEATS = 200;
+    private static final int SCAN_QUERIES = 100;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+        List<Point> points = TestKDTree.randomPoints(random, NUM_POINTS);
+        List<Point> queries = TestKDTree.randomPoints(random, NUM_QUERIES);
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d points, %d cores%n", NUM_POINTS, cores);
+
+        Stopwatch sw = new Stopwatch();
+        KDTree tree = new KDTree(points);
+        System.out.printf("KDTree build:       %8.0f ms%n", sw.elapsedTime() * 1000);
+        sw = new Stopwatch();
+        KDTree projected = new KDTree(points, true);
+        System.out.printf("Projected build:    %8.0f ms%n", sw.elapsedTime() * 1000);
+        sw = new Stopwatch();
+        PackedKDTree packed = new PackedKDTree(points);
+        System.out.printf("PackedKDTree build: %8.0f ms%n", sw.elapsedTime() * 1000);
+
+        System.out.printf("%-14s %8s %16s %16s%n", "", "threads", "queries/s", "queries/s/thread");
+        for (int threads = 1; threads <= Math.max(cores, 2); threads *= 2) {
+            report("KDTree", tree, queries, REPEATS, threads);
+            report("Projected", projected, queries, REPEATS, threads);
+            report("PackedKDTree", packed, queries, REPEATS, threads);
+        }
+
+        /* a scan looks at every point, so it gets fewer queries */
+        List<Point> scanQueries = queries.subList(0, SCAN_QUERIES);
+        System.out.println();
+        System.out.printf("%-28s %16s %16s%n", "one thread", "tree queries/s", "scan queries/s");
+        for (int k : new int[]{1, 8, 64}) {
+            double indexed = perSecond(queries, REPEATS,
+                    q -> packed.kNearestIds(q.getX(), q.getY(), k).length);
+            double scan = perSecond(scanQueries, 1, q -> scanKNearest(points, q, k));
+            System.out.printf("%-28s %16.0f %16.0f%n", "kNearest k = " + k, indexed, scan);
+        }
+        for (double miles : new double[]{0.02, 0.05, 0.2}) {
+            double indexed = perSecond(queries, REPEATS / 10,
+                    q -> packed.withinRadiusIds(q.getX(), q.getY(), miles).length);
+            double scan = perSecond(scanQueries, 1, q -> scanWithinRadius(points, q, miles));
+            System.out.printf("%-28s %16.0f %16.0f%n", "withinRadius " + miles + " miles", indexed, scan);
+        }
+    }
+
+    /** Returns the queries per second one thread answers running QUERIES REPEATS times. */
+    private static double perSecond(List<Point> queries, int repeats, ToIntFunction<Point> query) {
+        double best = Double.POSITIVE_INFINITY;
+        long sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            Stopwatch sw = new Stopwatch();
+            for (int r = 0; r < repeats; r++) {
+                for (Point q : queries) {
+                    sum += query.applyAsInt(q);
+                }
+            }
+            best = Math.min(best, sw.elapsedTime());
+        }
+        if (sum < 0) {
+            System.out.println(sum);
+        }
+        return queries.size() * repeats / best;
+    }
+
+    /** Finds the K points closest to TARGET by sorting all distances; returns how many. */
+    private static int scanKNearest(List<Point> points, Point target, int k) {
+        double[] distances = new double[points.size()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = Point.distance(points.get(i), target);
+        }
+        Arrays.sort(distances);
+        return Math.min(k, distances.length);
+    }
+
+    /** Counts the points at most MILES from TARGET. */
+    private static int scanWithinRadius(List<Point> points, Point target, double miles) {
+        int count = 0;
+        for (Point p : points) {
+            if (Point.distance(p, target) <= miles) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Prints the queries per second when THREADS threads each run QUERIES REPEATS times. */
+    private static void report(String name, PointSet tree, List<Point> queries, int repeats,
+                               int threads) throws Exception {
+        double best = Double.POSITIVE_INFINITY;
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, time(tree, queries, repeats, threads));
+        }
+        double perSecond = (double) queries.size() * repeats * threads / best;
+        System.out.printf("%-14s %8d %16.0f %16.0f%n", name, threads, perSecond, perSecond / threads);
+    }
+
+    /** Returns the seconds THREADS threads take to each run all QUERIES REPEATS times. */
+    private static double time(PointSet tree, List<Point> queries, int repeats, int threads)
+            throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Double>> results = new ArrayList<>();
+        Stopwatch sw = new Stopwatch();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> {
+                double sum = 0;
+                for (int r = 0; r < repeats; r++) {
+                    for (Point q : queries) {
+                        sum += tree.nearest(q.getX(), q.getY()).getX();
+                    }
+                }
+                return sum;
+            }));
+        }
+        for (Future<Double> result : results) {
+            result.get();
+        }
+        double elapsed = sw.elapsedTime();
+        pool.shutdown();
+        return elapsed;
+    }
+}
@@ -0,0 +1,76 @@
+package bearmaps.test;
+
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.IntAStarSolver;
+import bearmaps.hw4.Landmarks;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.Random;
+
+/**
+ * Reports how much the landmark heuristic cuts the number of states explored by
+ * A* and bidirectional A*, compared to the great-circle heuristic, for a few
+ * landmark counts. Also reports how long picking the landmarks takes. Run with an
+ * OSM file path as the first argument to use a different map than
+ * Constants.OSM_DB_PATH, and a query count as the second.
+ */
+public class TimeLandmarks {
+    private static final int[] NUM_LANDMARKS = {4, 8, 16, 32};
+
+    public static void main(String[] args) {
+        String path = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(path);
+        CompactStreetMapGraph compact = graph.compact();
+        Random random = new Random(61);
+        int[][] queries = new int[numQueries][2];
+        for (int[] q : queries) {
+            q[0] = random.nextInt(compact.numVertices());
+            q[1] = random.nextInt(compact.numVertices());
+        }
+
+        System.out.printf("%-16s %10s %12s %12s %12s %12s%n", "heuristic", "select ms",
+                "A* states", "A* ms", "bidir states", "vs great c.");
+        double baseline = timeQueries("great circle", 0, compact, queries, -1);
+        for (int k : NUM_LANDMARKS) {
+            Stopwatch sw = new Stopwatch();
+            Landmarks landmarks = Landmarks.select(compact, k);
+            double selectMillis = sw.elapsedTime() * 1000;
+            timeQueries(k + " landmarks", selectMillis, compact.withLandmarks(landmarks),
+                    queries, baseline);
+        }
+    }
+
+    /** Prints one row and returns the average number of states A* explored. */
+    private static double timeQueries(String label, double selectMillis,
+                                      CompactStreetMapGraph g, int[][] queries,
+                                      double baseline) {
+        IntAStarSolver solver = new IntAStarSolver(g);
+        for (int[] q : queries) {
+            solver.solve(q[0], q[1], 20); // warm up
+        }
+        long states = 0;
+        Stopwatch sw = new Stopwatch();
+        for (int[] q : queries) {
+            solver.solve(q[0], q[1], 20);
+            states += solver.numStatesExplored();
+        }
+        double millis = sw.elapsedTime() * 1000 / queries.length;
+
+        long bidirectionalStates = 0;
+        for (int[] q : queries) {
+            bidirectionalStates += new BidirectionalAStarSolver<>(g, g.idAt(q[0]), g.idAt(q[1]),
+                    20).numStatesExplored();
+        }
+
+        double perQuery = (double) states / queries.length;
+        String reduction = baseline > 0 ? String.format("%.1fx", baseline / perQuery) : "-";
+        System.out.printf("%-16s %10.0f %12.1f %12.4f %12.1f %12s%n", label, selectMillis,
+                perQuery, millis, (double) bidirectionalStates / queries.length, reduction);
+        return perQuery;
+    }
+}
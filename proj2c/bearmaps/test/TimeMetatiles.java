@@ -0,0 +1,75 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.MetatilePyramid;
+import bearmaps.proj2c.raster.RasterServices;
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.raster.TileCompositor;
+import bearmaps.proj2c.utils.Constants;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Times making the base image of rasters of growing blocks of tiles at depth 7,
+ * stitched from single tiles against cropped from the metatiles in
+ * Constants.METATILE_PACK_PATH, and then encoding it. Run MetatilePyramid.main
+ * first. Each block is moved at most a tile from the last, as panning does. Each
+ * row starts with empty caches, timed as cold, and is then timed again, warm.
+ */
+public class TimeMetatiles {
+    private static final int DEPTH = 7;
+    private static final int NUM_BLOCKS = 50;
+    private static final int[][] SIZES = {{1, 1}, {2, 2}, {4, 3}, {5, 4}, {8, 5}, {10, 6}};
+
+    public static void main(String[] args) {
+        System.out.printf("%6s %-10s %10s %10s %10s%n", "tiles", "source", "cold ms", "warm ms",
+                "encode ms");
+        for (int[] size : SIZES) {
+            int[][] blocks = new int[NUM_BLOCKS][];
+            Random random = new Random(1);
+            int x = 40, y = 60;
+            for (int i = 0; i < NUM_BLOCKS; i++) {
+                x = Math.max(0, Math.min((1 << DEPTH) - size[0], x + random.nextInt(3) - 1));
+                y = Math.max(0, Math.min((1 << DEPTH) - size[1], y + random.nextInt(3) - 1));
+                blocks[i] = new int[]{x, y};
+            }
+            TileCompositor tiles = new TileCompositor(new TileCache(RasterServices.TILE_SOURCE,
+                    Constants.TILE_CACHE_BYTES), Constants.TILE_SIZE, Constants.TILE_COMPOSITOR_THREADS);
+            time(tiles, "tiles", size, blocks);
+            TileCompositor metatiles = MetatilePyramid.openCompositor(Constants.METATILE_PACK_PATH,
+                    tiles, Constants.METATILE_SIZE, RasterServices.RASTER_PNG_ENCODER,
+                    Constants.METATILE_CACHE_BYTES, Constants.TILE_COMPOSITOR_THREADS);
+            if (metatiles == tiles) {
+                System.out.println("No metatile pack at " + Constants.METATILE_PACK_PATH
+                        + "; run MetatilePyramid.main first.");
+                return;
+            }
+            time(metatiles, "metatiles", size, blocks);
+            tiles.shutdown();
+            metatiles.shutdown();
+        }
+    }
+
+    /**
+     * Prints the mean time COMPOSITOR takes per block of BLOCKS, of SIZE tiles, cold
+     * and warm, and to encode them.
+     */
+    private static void time(TileCompositor compositor, String name, int[] size, int[][] blocks) {
+        long cold = 0, warm = 0, encode = 0;
+        for (int[] b : blocks) {
+            long start = System.nanoTime();
+            compositor.composite(DEPTH, b[0], b[1], size[0], size[1]);
+            cold += System.nanoTime() - start;
+        }
+        for (int[] b : blocks) {
+            long start = System.nanoTime();
+            BufferedImage img = compositor.composite(DEPTH, b[0], b[1], size[0], size[1]);
+            long stitched = System.nanoTime();
+            RasterServices.RASTER_PNG_ENCODER.encode(img);
+            warm += stitched - start;
+            encode += System.nanoTime() - stitched;
+        }
+        System.out.printf("%6s %-10s %10.2f %10.2f %10.2f%n", size[0] + "x" + size[1], name,
+                cold / 1e6 / blocks.length, warm / 1e6 / blocks.length, encode / 1e6 / blocks.length);
+    }
+}
@@ -0,0 +1,117 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.ArrayHeapMinPQ;
+import bearmaps.proj2ab.DaryHeapMinPQ;
+import bearmaps.proj2ab.DoubleMapPQ;
+import bearmaps.proj2ab.ExtrinsicMinPQ;
+import bearmaps.proj2ab.IndexedIntMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Times the priority queues on a mix of operations shaped like a shortest paths
+ * search: every round removes the smallest item, then adds a few new items and
+ * lowers the priority of a few that are already queued.
+ */
+public class TimeMinPQ {
+    private static final int[] SIZES = {1000, 10000, 100000, 1000000};
+    private static final int ADDS_PER_ROUND = 3;
+    private static final int DECREASES_PER_ROUND = 2;
+
+    public static void main(String[] args) {
+        System.out.printf("%-22s", "PQ \\ items");
+        for (int n : SIZES) {
+            System.out.printf("%12d", n);
+        }
+        System.out.println("   (ms)");
+
+        timePQ("DoubleMapPQ", DoubleMapPQ::new);
+        timePQ("ArrayHeapMinPQ", ArrayHeapMinPQ::new);
+        for (int arity : new int[]{2, 4, 8}) {
+            timePQ("DaryHeapMinPQ d=" + arity, () -> new DaryHeapMinPQ<>(arity));
+        }
+        for (int arity : new int[]{2, 4, 8}) {
+            timeIntPQ("IndexedIntMinPQ d=" + arity, arity);
+        }
+    }
+
+    private static void timePQ(String label, Supplier<ExtrinsicMinPQ<Integer>> pqs) {
+        System.out.printf("%-22s", label);
+        for (int n : SIZES) {
+            runMix(pqs.get(), n); // warm up
+            Stopwatch sw = new Stopwatch();
+            runMix(pqs.get(), n);
+            System.out.printf("%12.1f", sw.elapsedTime() * 1000);
+        }
+        System.out.println();
+    }
+
+    private static void timeIntPQ(String label, int arity) {
+        System.out.printf("%-22s", label);
+        for (int n : SIZES) {
+            runIntMix(new IndexedIntMinPQ(n, arity), n); // warm up
+            Stopwatch sw = new Stopwatch();
+            runIntMix(new IndexedIntMinPQ(n, arity), n);
+            System.out.printf("%12.1f", sw.elapsedTime() * 1000);
+        }
+        System.out.println();
+    }
+
+    /** Pushes N items through PQ, returning a checksum so the work is not optimized away. */
+    private static long runMix(ExtrinsicMinPQ<Integer> pq, int n) {
+        Random random = new Random(61);
+        int next = 0;
+        long checksum = 0;
+        double[] priority = new double[n];
+        pq.add(next, 0);
+        next += 1;
+        while (pq.size() > 0) {
+            int smallest = pq.removeSmallest();
+            checksum += smallest;
+            double base = priority[smallest];
+            for (int i = 0; i < ADDS_PER_ROUND && next < n; i++) {
+                priority[next] = base + random.nextDouble();
+                pq.add(next, priority[next]);
+                next += 1;
+            }
+            for (int i = 0; i < DECREASES_PER_ROUND && next > 1; i++) {
+                int item = next - 1 - random.nextInt(Math.min(next - 1, 64));
+                if (pq.contains(item)) {
+                    priority[item] = Math.max(base, priority[item] - random.nextDouble() / 2);
+                    pq.changePriority(item, priority[item]);
+                }
+            }
+        }
+        return checksum;
+    }
+
+    /** Same workload as runMix, on an IndexedIntMinPQ. */
+    private static long runIntMix(IndexedIntMinPQ pq, int n) {
+        Random random = new Random(61);
+        int next = 0;
+        long checksum = 0;
+        double[] priority = new double[n];
+        pq.add(next, 0);
+        next += 1;
+        while (pq.size() > 0) {
+            int smallest = pq.removeSmallest();
+            checksum += smallest;
+            double base = priority[smallest];
+            for (int i = 0; i < ADDS_PER_ROUND && next < n; i++) {
+                priority[next] = base + random.nextDouble();
+                pq.add(next, priority[next]);
+                next += 1;
+            }
+            for (int i = 0; i < DECREASES_PER_ROUND && next > 1; i++) {
+                int item = next - 1 - random.nextInt(Math.min(next - 1, 64));
+                if (pq.contains(item)) {
+                    priority[item] = Math.max(base, priority[item] - random.nextDouble() / 2);
+                    pq.changePriority(item, priority[item]);
+                }
+            }
+        }
+        return checksum;
+    }
+}
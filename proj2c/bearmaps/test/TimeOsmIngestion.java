@@ -0,0 +1,43 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times parsing an OSM file into a StreetMapGraph with GraphBuildingHandler and
+ * with the parallel reader, and checks that both build the same graph. Run with an
+ * OSM file path as the first argument to use a different map than
+ * Constants.OSM_DB_PATH. Set -Djava.util.concurrent.ForkJoinPool.common.parallelism
+ * to see how the parallel reader scales with threads.
+ */
+public class TimeOsmIngestion {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        String path = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        StreetMapGraph sax = StreetMapGraph.readFromXMLWithSAX(path);
+        StreetMapGraph parallel = new StreetMapGraph(path);
+        if (!sax.equals(parallel)) {
+            throw new IllegalStateException("The readers built different graphs");
+        }
+
+        double saxTime = Double.POSITIVE_INFINITY;
+        double parallelTime = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < ROUNDS; i++) {
+            Stopwatch sw = new Stopwatch();
+            StreetMapGraph.readFromXMLWithSAX(path);
+            saxTime = Math.min(saxTime, sw.elapsedTime());
+            sw = new Stopwatch();
+            new StreetMapGraph(path);
+            parallelTime = Math.min(parallelTime, sw.elapsedTime());
+        }
+        System.out.printf("XML file:               %10d bytes%n", new File(path).length());
+        System.out.printf("Threads:                %10d%n", ForkJoinPool.getCommonPoolParallelism());
+        System.out.printf("GraphBuildingHandler:   %10.0f ms%n", saxTime * 1000);
+        System.out.printf("Parallel reader:        %10.0f ms%n", parallelTime * 1000);
+    }
+}
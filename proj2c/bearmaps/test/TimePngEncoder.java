@@ -0,0 +1,83 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.PngEncoder;
+import bearmaps.proj2c.raster.RasterServices;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Prints encode time against PNG size for 1024x768 rasters, 4 x 3 tiles, of a
+ * zoomed out, a middle and a zoomed in view, for ImageIO and for PngEncoder at
+ * each deflate level and row filter, with the other deflate strategies at level
+ * 6, on one thread and on every processor. Times
+ * are the best of ROUNDS, and sizes the total over the three views.
+ */
+public class TimePngEncoder {
+    private static final int ROUNDS = 5;
+    private static final int[][] VIEWS = {{3, 2, 3}, {5, 10, 14}, {7, 40, 60}};
+    private static final int[] LEVELS = {1, 3, 6, 9};
+
+    public static void main(String[] args) throws IOException {
+        BufferedImage[] images = new BufferedImage[VIEWS.length];
+        for (int i = 0; i < VIEWS.length; i++) {
+            images[i] = RasterServices.TILE_COMPOSITOR.composite(VIEWS[i][0], VIEWS[i][1], VIEWS[i][2], 4, 3);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%-36s %10s %10s%n", "encoder", "ms", "KB");
+        double best = Double.POSITIVE_INFINITY;
+        long bytes = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            bytes = 0;
+            for (BufferedImage img : images) {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                try (ImageOutputStream ios = new MemoryCacheImageOutputStream(os)) {
+                    ImageIO.write(img, "png", ios);
+                }
+                bytes += os.size();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("%-36s %10.1f %10d%n", "ImageIO", best / images.length, bytes >> 10);
+
+        for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+            for (int level : LEVELS) {
+                time(new PngEncoder(level, Deflater.DEFAULT_STRATEGY, filter, 1), images);
+            }
+        }
+        for (int strategy : new int[]{Deflater.FILTERED, Deflater.HUFFMAN_ONLY}) {
+            for (PngEncoder.Filter filter : new PngEncoder.Filter[]{PngEncoder.Filter.NONE,
+                PngEncoder.Filter.PAETH}) {
+                time(new PngEncoder(6, strategy, filter, 1), images);
+            }
+        }
+        time(PngEncoder.fast(1), images);
+        time(PngEncoder.quality(1), images);
+        time(PngEncoder.fast(threads), images);
+        time(PngEncoder.quality(threads), images);
+    }
+
+    /** Prints the time ENCODER takes per image of IMAGES, and their total size. */
+    private static void time(PngEncoder encoder, BufferedImage[] images) {
+        double best = Double.POSITIVE_INFINITY;
+        long bytes = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            bytes = 0;
+            for (BufferedImage img : images) {
+                bytes += encoder.encode(img).length;
+            }
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("%-36s %10.1f %10d%n", encoder.toString().replace(" strategy", ""),
+                best / images.length, bytes >> 10);
+        encoder.shutdown();
+    }
+}
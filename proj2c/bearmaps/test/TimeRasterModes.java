@@ -0,0 +1,134 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.server.handler.impl.RasterAPIHandler;
+import bearmaps.proj2c.server.handler.impl.RasterImageAPIHandler;
+import bearmaps.proj2c.server.handler.impl.TileAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.get;
+import static spark.Spark.port;
+import static spark.Spark.stop;
+
+/**
+ * Starts a server with the raster handlers and compares, for viewports of growing
+ * size, getting the rastered image Base64 encoded in the JSON against getting the
+ * JSON with an image_url and then the PNG from it: bytes sent, bytes the server
+ * allocated on the heap, and time taken, per request. Both are timed drawing every
+ * raster anew, by changing the route version each time, and the url mode also
+ * taking the PNG from the raster cache. Last, the same tiles are fetched one by one
+ * from TileAPIHandler, and then again with the ETags of those copies, as a browser
+ * revalidating its cache would.
+ */
+public class TimeRasterModes {
+    private static final int PORT = 4568;
+    private static final int ROUNDS = 10;
+    /* viewport sizes in pixels, all at depth 7 */
+    private static final int[][] VIEWPORTS = {{512, 384}, {1024, 768}, {1920, 1080}, {2560, 1440}};
+
+    public static void main(String[] args) throws Exception {
+        port(PORT);
+        get("/raster", new RasterAPIHandler());
+        get(RasterAPIHandler.IMAGE_PATH, new RasterImageAPIHandler());
+        get("/tiles/:depth/:x/:y", new TileAPIHandler());
+        awaitInitialization();
+        String host = "http://localhost:" + PORT;
+
+        System.out.printf("%10s %-9s %12s %14s %10s%n", "viewport", "mode", "bytes sent",
+                "heap bytes", "ms");
+        for (int[] viewport : VIEWPORTS) {
+            double lonDPP = (Constants.ROOT_LRLON - Constants.ROOT_ULLON) / Constants.TILE_SIZE / 128;
+            double latDPP = (Constants.ROOT_ULLAT - Constants.ROOT_LRLAT) / Constants.TILE_SIZE / 128;
+            double ullon = -122.27, ullat = 37.87;
+            String query = "/raster?ullon=" + ullon + "&ullat=" + ullat
+                    + "&lrlon=" + (ullon + viewport[0] * lonDPP * 0.99)
+                    + "&lrlat=" + (ullat - viewport[1] * latDPP * 0.99)
+                    + "&w=" + viewport[0] + "&h=" + viewport[1];
+            String size = viewport[0] + "x" + viewport[1];
+            String json = new String(fetch(host + query, null), "UTF-8");
+            List<String> tiles = new ArrayList<>();
+            Matcher m = Pattern.compile("d(\\d+)_x(\\d+)_y(\\d+)\\.png").matcher(json);
+            while (m.find()) {
+                tiles.add("/tiles/" + m.group(1) + "/" + m.group(2) + "/" + m.group(3) + ".png");
+            }
+            Map<String, String> etags = new HashMap<>();
+            for (int mode = 0; mode < 5; mode++) {
+                long bytes = 0, heap = Long.MAX_VALUE;
+                double time = Double.POSITIVE_INFINITY;
+                for (int round = 0; round < ROUNDS; round++) {
+                    if (mode < 2) {
+                        Constants.ROUTE_VERSION.incrementAndGet();
+                    }
+                    long allocatedBefore = allocatedBytes();
+                    long start = System.nanoTime();
+                    if (mode == 0) {
+                        bytes = fetch(host + query, null).length;
+                    } else if (mode < 3) {
+                        String withUrl = new String(fetch(host + query + "&image_url=1", null), "UTF-8");
+                        String url = withUrl.replaceAll(".*\"image_url\":\"([^\"]*)\".*", "$1")
+                                .replace("\\u003d", "=").replace("\\u0026", "&");
+                        bytes = withUrl.length() + fetch(host + url, null).length;
+                    } else {
+                        bytes = 0;
+                        for (String tile : tiles) {
+                            bytes += fetch(host + tile, mode == 4 ? etags : null).length;
+                        }
+                    }
+                    time = Math.min(time, (System.nanoTime() - start) / 1e6);
+                    heap = Math.min(heap, allocatedBytes() - allocatedBefore);
+                }
+                System.out.printf("%10s %-9s %12d %14d %10.1f%n", size,
+                        new String[]{"base64", "url", "cached", "tiles", "tiles 304"}[mode], bytes, heap, time);
+            }
+        }
+        stop();
+    }
+
+    /**
+     * Returns the body of the response to a GET of URL. If ETAGS is not null, sends
+     * the ETag it has for URL, if any, in If-None-Match and records the one that
+     * comes back.
+     */
+    private static byte[] fetch(String url, Map<String, String> etags) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (etags != null && etags.containsKey(url)) {
+            connection.setRequestProperty("If-None-Match", etags.get(url));
+        }
+        if (etags != null) {
+            etags.put(url, connection.getHeaderField("ETag"));
+        }
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return new byte[0];
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by the threads alive now, which include the
+     * server's request threads. The bytes read by fetch are counted too, the same in
+     * both modes apart from the JSON of the url mode.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(allocated, 0);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,95 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2ab.PackedRTree;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times building a PackedRTree over the edges of a street map, and snapping points
+ * to the closest edge with AugmentedStreetMapGraph.snap against finding the closest
+ * vertex with closest. Run with an OSM file path as the first argument; without one
+ * a random 300 x 300 grid is used.
+ */
+public class TimeSegmentSnapping {
+    private static final int ROUNDS = 5;
+    private static final int NUM_QUERIES = 100000;
+
+    public static void main(String[] args) throws Exception {
+        String path = args.length > 0 ? args[0] : RandomOsmMaps.write(300, 300, 1);
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(path);
+
+        List<double[]> segments = new ArrayList<>();
+        double minLon = Double.POSITIVE_INFINITY, minLat = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        CompactStreetMapGraph compact = g.compact();
+        for (int i = 0; i < compact.numVertices(); i++) {
+            long v = compact.idAt(i);
+            for (WeightedEdge<Long> e : compact.neighbors(v)) {
+                if (v < e.to()) {
+                    segments.add(new double[]{g.lon(v), g.lat(v), g.lon(e.to()), g.lat(e.to())});
+                }
+            }
+            minLon = Math.min(minLon, g.lon(v));
+            minLat = Math.min(minLat, g.lat(v));
+            maxLon = Math.max(maxLon, g.lon(v));
+            maxLat = Math.max(maxLat, g.lat(v));
+        }
+        int n = segments.size();
+        double[] x1s = new double[n];
+        double[] y1s = new double[n];
+        double[] x2s = new double[n];
+        double[] y2s = new double[n];
+        for (int i = 0; i < n; i++) {
+            x1s[i] = segments.get(i)[0];
+            y1s[i] = segments.get(i)[1];
+            x2s[i] = segments.get(i)[2];
+            y2s[i] = segments.get(i)[3];
+        }
+
+        double build = Double.POSITIVE_INFINITY;
+        for (int round = 0; round < ROUNDS; round++) {
+            Stopwatch sw = new Stopwatch();
+            new PackedRTree(x1s, y1s, x2s, y2s);
+            build = Math.min(build, sw.elapsedTime());
+        }
+
+        Random random = new Random(1);
+        double[] lons = new double[NUM_QUERIES];
+        double[] lats = new double[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            lons[i] = minLon + random.nextDouble() * (maxLon - minLon);
+            lats[i] = minLat + random.nextDouble() * (maxLat - minLat);
+        }
+        double snap = Double.POSITIVE_INFINITY;
+        double closest = Double.POSITIVE_INFINITY;
+        double sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            Stopwatch sw = new Stopwatch();
+            for (int i = 0; i < NUM_QUERIES; i++) {
+                sum += g.snap(lons[i], lats[i]).fraction;
+            }
+            snap = Math.min(snap, sw.elapsedTime());
+            sw = new Stopwatch();
+            for (int i = 0; i < NUM_QUERIES; i++) {
+                sum += g.closest(lons[i], lats[i]);
+            }
+            closest = Math.min(closest, sw.elapsedTime());
+        }
+        if (sum == 0) {
+            System.out.println(sum);
+        }
+
+        System.out.printf("Segments:               %10d%n", n);
+        System.out.printf("Threads:                %10d%n", ForkJoinPool.getCommonPoolParallelism());
+        System.out.printf("PackedRTree build:      %10.0f ms%n", build * 1000);
+        System.out.printf("snap:                   %10.2f us/query%n", snap * 1e6 / NUM_QUERIES);
+        System.out.printf("closest:                %10.2f us/query%n", closest * 1e6 / NUM_QUERIES);
+    }
+}
@@ -0,0 +1,43 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.File;
+
+/**
+ * Times building the AugmentedStreetMapGraph from the OSM XML and from a binary
+ * snapshot of it. Run with an OSM file path as the first argument to use a
+ * different map than Constants.OSM_DB_PATH.
+ */
+public class TimeStartup {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        String path = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        File snapshot = File.createTempFile("snapshot", ".bin");
+        snapshot.delete();
+        snapshot.deleteOnExit();
+
+        Stopwatch sw = new Stopwatch();
+        new AugmentedStreetMapGraph(path, snapshot.getPath());
+        double firstStart = sw.elapsedTime();
+
+        double xml = Double.POSITIVE_INFINITY;
+        double binary = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < ROUNDS; i++) {
+            sw = new Stopwatch();
+            new AugmentedStreetMapGraph(path);
+            xml = Math.min(xml, sw.elapsedTime());
+            sw = new Stopwatch();
+            new AugmentedStreetMapGraph(path, snapshot.getPath());
+            binary = Math.min(binary, sw.elapsedTime());
+        }
+        System.out.printf("XML file:               %10d bytes%n", new File(path).length());
+        System.out.printf("Snapshot file:          %10d bytes%n", snapshot.length());
+        System.out.printf("Parse XML and write:    %10.0f ms%n", firstStart * 1000);
+        System.out.printf("Parse XML:              %10.0f ms%n", xml * 1000);
+        System.out.printf("Load snapshot:          %10.0f ms%n", binary * 1000);
+    }
+}
@@ -0,0 +1,71 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.utils.Constants;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Times stitching the tiles of random 5 x 4 tile windows at depth 7 the way
+ * RasterAPIHandler does, reading every tile from disk against going through a
+ * TileCache. Panning is modeled by moving each window at most a tile from the last.
+ */
+public class TimeTileCache {
+    private static final int DEPTH = 7;
+    private static final int COLS = 5, ROWS = 4;
+    private static final int NUM_WINDOWS = 200;
+
+    public static void main(String[] args) throws IOException {
+        int[][] windows = new int[NUM_WINDOWS][];
+        Random random = new Random(1);
+        int x = 40, y = 60;
+        for (int i = 0; i < NUM_WINDOWS; i++) {
+            x = Math.max(0, Math.min((1 << DEPTH) - COLS, x + random.nextInt(3) - 1));
+            y = Math.max(0, Math.min((1 << DEPTH) - ROWS, y + random.nextInt(3) - 1));
+            windows[i] = new int[]{x, y};
+        }
+
+        Stopwatch sw = new Stopwatch();
+        for (int[] w : windows) {
+            BufferedImage img = canvas();
+            Graphics g = img.getGraphics();
+            for (int r = 0; r < ROWS; r++) {
+                for (int c = 0; c < COLS; c++) {
+                    g.drawImage(ImageIO.read(new File(Constants.IMG_ROOT
+                            + TileCache.fileName(DEPTH, w[0] + c, w[1] + r))),
+                            c * Constants.TILE_SIZE, r * Constants.TILE_SIZE, null);
+                }
+            }
+        }
+        double disk = sw.elapsedTime();
+
+        TileCache cache = new TileCache(Constants.IMG_ROOT, Constants.TILE_CACHE_BYTES);
+        sw = new Stopwatch();
+        for (int[] w : windows) {
+            BufferedImage img = canvas();
+            Graphics g = img.getGraphics();
+            for (int r = 0; r < ROWS; r++) {
+                for (int c = 0; c < COLS; c++) {
+                    g.drawImage(cache.get(DEPTH, w[0] + c, w[1] + r),
+                            c * Constants.TILE_SIZE, r * Constants.TILE_SIZE, null);
+                }
+            }
+        }
+        double cached = sw.elapsedTime();
+
+        System.out.printf("ImageIO.read:  %8.2f ms/window%n", disk * 1000 / NUM_WINDOWS);
+        System.out.printf("TileCache:     %8.2f ms/window%n", cached * 1000 / NUM_WINDOWS);
+        System.out.println("Cache: " + cache);
+    }
+
+    private static BufferedImage canvas() {
+        return new BufferedImage(COLS * Constants.TILE_SIZE, ROWS * Constants.TILE_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+    }
+}
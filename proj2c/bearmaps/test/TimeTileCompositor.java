@@ -0,0 +1,65 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.TileCache;
+import bearmaps.proj2c.raster.TileCompositor;
+import bearmaps.proj2c.utils.Constants;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times stitching square blocks of depth 7 tiles of growing size, drawing them one
+ * after another on one Graphics as RasterAPIHandler used to against a
+ * TileCompositor. Cold runs start from an empty TileCache, so every tile is read
+ * from disk; warm runs find every tile cached.
+ */
+public class TimeTileCompositor {
+    private static final int DEPTH = 7;
+    private static final int[] SIDES = {1, 2, 3, 4, 6, 8};
+    private static final int ROUNDS = 6;
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        System.out.println("Threads: " + threads + " of "
+                + ForkJoinPool.getCommonPoolParallelism() + " cores in use");
+        System.out.printf("%6s %6s %12s %12s %12s %12s%n", "grid", "tiles",
+                "cold seq ms", "cold par ms", "warm seq ms", "warm par ms");
+        for (int side : SIDES) {
+            double[] best = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+            for (int round = 0; round < ROUNDS; round++) {
+                /* a different block each round, so the OS file cache is equally warm */
+                int x = 10 + round * 20, y = 20 + round * 15;
+                TileCache seqCache = new TileCache(Constants.IMG_ROOT, Constants.TILE_CACHE_BYTES);
+                TileCache parCache = new TileCache(Constants.IMG_ROOT, Constants.TILE_CACHE_BYTES);
+                TileCompositor compositor = new TileCompositor(parCache, Constants.TILE_SIZE, threads);
+                for (int warm = 0; warm < 2; warm++) {
+                    long start = System.nanoTime();
+                    sequential(seqCache, x, y, side);
+                    best[2 * warm] = Math.min(best[2 * warm], (System.nanoTime() - start) / 1e6);
+                    start = System.nanoTime();
+                    compositor.composite(DEPTH, x, y, side, side);
+                    best[2 * warm + 1] = Math.min(best[2 * warm + 1], (System.nanoTime() - start) / 1e6);
+                }
+                compositor.shutdown();
+            }
+            System.out.printf("%6s %6d %12.2f %12.2f %12.2f %12.2f%n", side + "x" + side,
+                    side * side, best[0], best[1], best[2], best[3]);
+        }
+    }
+
+    private static BufferedImage sequential(TileCache cache, int x, int y, int side) {
+        BufferedImage img = new BufferedImage(side * Constants.TILE_SIZE, side * Constants.TILE_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics g = img.getGraphics();
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                g.drawImage(cache.get(DEPTH, x + c, y + r), c * Constants.TILE_SIZE,
+                        r * Constants.TILE_SIZE, null);
+            }
+        }
+        return img;
+    }
+}
@@ -0,0 +1,69 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.raster.TileDirectory;
+import bearmaps.proj2c.raster.TilePack;
+import bearmaps.proj2c.raster.TileSource;
+import bearmaps.proj2c.utils.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Builds a tile pack of the tiles in Constants.IMG_ROOT and times reading random
+ * tiles at depths 0 through Constants.TILE_PACK_MAX_DEPTH from it against reading
+ * them from their own files. Every tile's bytes are summed, so the pack's pages
+ * are actually touched. The files are read once first so both come from the page
+ * cache; on a cold or networked disk the files fare worse still.
+ */
+public class TimeTilePack {
+    private static final int NUM_READS = 20000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        File file = File.createTempFile("tiles", ".pack");
+        file.deleteOnExit();
+        TileSource files = new TileDirectory(Constants.IMG_ROOT);
+        long start = System.nanoTime();
+        TilePack.write(file.getPath(), files, Constants.TILE_PACK_MAX_DEPTH);
+        System.out.printf("Packed %d MB in %.1f s.%n", file.length() >> 20,
+                (System.nanoTime() - start) / 1e9);
+        TileSource pack = TilePack.open(file.getPath());
+
+        int[][] tiles = new int[NUM_READS][];
+        Random random = new Random(1);
+        for (int i = 0; i < NUM_READS; i++) {
+            int depth = random.nextInt(Constants.TILE_PACK_MAX_DEPTH + 1);
+            tiles[i] = new int[]{depth, random.nextInt(1 << depth), random.nextInt(1 << depth)};
+        }
+        read(files, tiles);
+        read(pack, tiles);
+
+        System.out.printf("%6s %12s %12s%n", "source", "us per tile", "checksum");
+        TileSource[] sources = {files, pack};
+        String[] names = {"files", "pack"};
+        for (int s = 0; s < sources.length; s++) {
+            double best = Double.POSITIVE_INFINITY;
+            long sum = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                start = System.nanoTime();
+                sum = read(sources[s], tiles);
+                best = Math.min(best, (System.nanoTime() - start) / 1e3 / NUM_READS);
+            }
+            System.out.printf("%6s %12.2f %12d%n", names[s], best, sum);
+        }
+    }
+
+    /** Reads every tile of TILES from SOURCE and returns the sum of their bytes. */
+    private static long read(TileSource source, int[][] tiles) {
+        long sum = 0;
+        for (int[] t : tiles) {
+            ByteBuffer tile = source.read(t[0], t[1], t[2]);
+            for (int i = tile.position(); i < tile.limit(); i++) {
+                sum += tile.get(i);
+            }
+        }
+        return sum;
+    }
+}
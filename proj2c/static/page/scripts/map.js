@@ -92,19 +92,26 @@ $(function() {
         var params = get_view_bounds();
         params.w = w;
         params.h = h;
+        params.image_url = 1;
         console.log(params);
         $warningsContainer.empty();
         $.get({
             async: true,
+            cache: false,
             url: raster_server,
             data: params,
             success: function(data) {
                 console.log(data);
                 if (data.query_success) {
                     $loadingStatus.hide();
-                    map.src = 'data:image/png;base64,' + data.b64_encoded_image_data;
-                    console.log('Updating map with image length: ' +
-                                data.b64_encoded_image_data.length);
+                    if (data.image_url) {
+                        map.src = host + data.image_url;
+                        console.log('Updating map with image at: ' + data.image_url);
+                    } else {
+                        map.src = 'data:image/png;base64,' + data.b64_encoded_image_data;
+                        console.log('Updating map with image length: ' +
+                                    data.b64_encoded_image_data.length);
+                    }
                     ullon_bound = data.raster_ul_lon;
                     ullat_bound = data.raster_ul_lat;
                     lrlon_bound = data.raster_lr_lon;